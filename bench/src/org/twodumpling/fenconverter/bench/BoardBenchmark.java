@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.twodumpling.fenconverter.core.BoardSnapshot;
+import org.twodumpling.fenconverter.core.FenCodec;
+import org.twodumpling.fenconverter.core.IncrementalFen;
+import org.twodumpling.fenconverter.core.Position;
+import org.twodumpling.fenconverter.core.PositionValidator;
+
+/**
+ * Throughput of the board-side paths: {@code charToFen} and the copy made by
+ * {@code getPieces()}, in both the original and the current form, the FEN
+ * string kept up to date edit by edit, next to the
+ * {@link Position} equivalents, and the legality check run on import and
+ * export.
+ *
+ * @author Istvan Chung
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+	@Param({ "opening", "middlegame", "endgame" })
+	public String corpus;
+
+	private char[][][] boards;
+	private boolean[] whiteToMove;
+	private Position[] positions;
+	private StringBuilder fenBuilder;
+	private IncrementalFen[] incrementalFens;
+	private BoardSnapshot[] snapshots;
+
+	@Setup
+	public void setUp() {
+		String[] fens = Corpus.get(corpus);
+		boards = new char[fens.length][][];
+		whiteToMove = new boolean[fens.length];
+		positions = new Position[fens.length];
+		for (int i = 0; i < fens.length; i++) {
+			boards[i] = new char[8][8];
+			FenCodec.parseBoard(fens[i], boards[i]);
+			whiteToMove[i] = FenCodec.parseWhiteToMove(fens[i]);
+			positions[i] = Position.fromFen(fens[i]);
+		}
+		fenBuilder = new StringBuilder(90);
+		incrementalFens = new IncrementalFen[fens.length];
+		snapshots = new BoardSnapshot[fens.length];
+		for (int i = 0; i < fens.length; i++) {
+			incrementalFens[i] = new IncrementalFen();
+			incrementalFens[i].setBoard(boards[i]);
+			snapshots[i] = BoardSnapshot.fromFen(fens[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void legacyCharToFen(Blackhole blackhole) {
+		for (int i = 0; i < boards.length; i++) {
+			blackhole.consume(LegacyFenCodec.charToFen(boards[i],
+					whiteToMove[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void charToFen(Blackhole blackhole) {
+		for (int i = 0; i < boards.length; i++) {
+			blackhole.consume(FenCodec.formatBoard(boards[i], whiteToMove[i]));
+		}
+	}
+
+	/**
+	 * What {@code MainActivity} does after an edit: encode the row that
+	 * changed again and join the rows.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void incrementalFen(Blackhole blackhole) {
+		for (int i = 0; i < boards.length; i++) {
+			incrementalFens[i].updateRow(boards[i], i & 7);
+			blackhole.consume(incrementalFens[i].format(boards[i],
+					whiteToMove[i], 0, Position.NO_SQUARE, 0, 1));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void positionAppendFen(Blackhole blackhole) {
+		for (Position position : positions) {
+			fenBuilder.setLength(0);
+			position.appendFen(fenBuilder);
+			blackhole.consume(fenBuilder);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void legacyGetPieces(Blackhole blackhole) {
+		for (char[][] board : boards) {
+			blackhole.consume(LegacyFenCodec.getPieces(board));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void getPieces(Blackhole blackhole) {
+		for (char[][] board : boards) {
+			blackhole.consume(FenCodec.copyBoard(board));
+		}
+	}
+
+	/**
+	 * What an edit in {@code MainActivity} costs now that the board is
+	 * shared rather than copied by {@code getPieces()}: a new snapshot with
+	 * one row copied.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void snapshotEdit(Blackhole blackhole) {
+		for (int i = 0; i < snapshots.length; i++) {
+			BoardSnapshot snapshot = snapshots[i];
+			blackhole.consume(snapshot.withPiece(i & 7, i >>> 3 & 7,
+					snapshot.getPiece(i & 7, i >>> 3 & 7) == 'Q' ? 'q' : 'Q'));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void positionCopy(Blackhole blackhole) {
+		for (Position position : positions) {
+			blackhole.consume(new Position(position));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void validate(Blackhole blackhole) {
+		for (Position position : positions) {
+			blackhole.consume(PositionValidator.check(position));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.bench;
+
+/**
+ * FEN strings used as benchmark input, grouped by the kind of position.
+ *
+ * @author Istvan Chung
+ */
+public final class Corpus {
+	private Corpus() {
+	}
+
+	/**
+	 * Number of positions in each corpus.
+	 */
+	public static final int SIZE = 8;
+
+	/**
+	 * Full or nearly full boards from the first few moves.
+	 */
+	public static final String[] OPENING = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+			"rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq c6 0 2",
+			"rnbqkbnr/pp1ppppp/8/2p5/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2",
+			"rnbqkb1r/pppppppp/5n2/8/3P4/8/PPP1PPPP/RNBQKBNR w KQkq - 1 2",
+			"rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w KQkq - 1 5",
+			"r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3",
+			"rnbqk2r/pppp1ppp/4pn2/8/1bPP4/2N5/PP2PPPP/R1BQKBNR w KQkq - 2 4" };
+
+	/**
+	 * Positions with most pieces still on the board.
+	 */
+	public static final String[] MIDDLEGAME = {
+			"r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 9",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+			"2rq1rk1/pb1nbppp/1p2pn2/2pp4/2PP4/1PN1PN2/PB2BPPP/2RQ1RK1 w - - 2 11",
+			"r1b2rk1/2q1bppp/p2ppn2/1p6/3BPP2/2N2B2/PPP1Q1PP/2KR3R w - - 4 14",
+			"3r1rk1/pp3ppp/2n1b3/q1bpP3/8/2N1BN2/PP2QPPP/3R1RK1 b - - 5 16" };
+
+	/**
+	 * Sparse boards, where most of each row is run-length encoded.
+	 */
+	public static final String[] ENDGAME = {
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"8/8/3k4/8/8/2K5/1P6/8 w - - 0 1",
+			"8/8/8/4k3/8/8/3RK3/8 b - - 0 1",
+			"8/5k2/8/8/8/8/1R3K2/8 w - - 0 1",
+			"6k1/5ppp/8/8/8/8/5PPP/6K1 w - - 0 1",
+			"8/8/1p6/1P6/8/5k2/8/5K2 w - - 0 1",
+			"4k3/8/8/8/8/8/4P3/4K3 w - - 0 1",
+			"8/8/8/8/8/8/6k1/4K2R w K - 0 1" };
+
+	/**
+	 * Input rejected by the parser, covering each error it reports.
+	 */
+	public static final String[] MALFORMED = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1",
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR/8 w KQkq - 0 1",
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX w KQkq - 0 1",
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBN w KQkq - 0 1",
+			"rnbqkbnr/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"8/8/8/8/8/8/8/7 w - - 0 1",
+			"8/8/3k4/8/8/2K5/1P6/8/ w - - 0 1x",
+			"8/8/3k4/8/8/2K5/1P6/8" };
+
+	/**
+	 * @return the corpus with the given name: {@code opening},
+	 *         {@code middlegame}, {@code endgame} or {@code malformed}
+	 */
+	public static String[] get(String name) {
+		if (name.equals("opening")) {
+			return OPENING;
+		}
+		if (name.equals("middlegame")) {
+			return MIDDLEGAME;
+		}
+		if (name.equals("endgame")) {
+			return ENDGAME;
+		}
+		if (name.equals("malformed")) {
+			return MALFORMED;
+		}
+		throw new IllegalArgumentException("Unknown corpus " + name);
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.twodumpling.fenconverter.core.FenCache;
+import org.twodumpling.fenconverter.core.FenCodec;
+import org.twodumpling.fenconverter.core.Position;
+
+/**
+ * Parsing throughput of the original {@code fenToCharArr} and
+ * {@code fenToMove} against {@link FenCodec}, one corpus at a time.
+ *
+ * Every benchmark handles each position of the corpus once per invocation,
+ * so scores are in positions per microsecond.
+ *
+ * @author Istvan Chung
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FenCodecBenchmark {
+	@Param({ "opening", "middlegame", "endgame", "malformed" })
+	public String corpus;
+
+	private String[] fens;
+	private char[][] board;
+	private Position position;
+	private FenCache cache;
+
+	@Setup
+	public void setUp() {
+		fens = Corpus.get(corpus);
+		board = new char[8][8];
+		position = new Position();
+		cache = new FenCache(Corpus.SIZE);
+		for (String fen : fens) {
+			try {
+				cache.get(fen);
+			}
+			catch (IllegalArgumentException e) {
+				// Malformed strings are not cached.
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void legacyFenToCharArr(Blackhole blackhole) {
+		for (String fen : fens) {
+			try {
+				blackhole.consume(LegacyFenCodec.fenToCharArr(fen));
+			}
+			catch (RuntimeException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	/**
+	 * What {@code MainActivity.fenToCharArr} does now: a fresh board per
+	 * call, filled by {@link FenCodec}.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void fenToCharArr(Blackhole blackhole) {
+		for (String fen : fens) {
+			try {
+				char[][] board = new char[8][8];
+				FenCodec.parseBoard(fen, board);
+				blackhole.consume(board);
+			}
+			catch (IllegalArgumentException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void parseBoardReused(Blackhole blackhole) {
+		for (String fen : fens) {
+			try {
+				blackhole.consume(FenCodec.parseBoard(fen, board));
+			}
+			catch (IllegalArgumentException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void parsePositionReused(Blackhole blackhole) {
+		for (String fen : fens) {
+			try {
+				blackhole.consume(FenCodec.parsePosition(fen, 0, fen.length(),
+						position));
+			}
+			catch (IllegalArgumentException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	/**
+	 * What {@code MainActivity.loadFEN} does for a string it has loaded
+	 * before.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void cachedSnapshot(Blackhole blackhole) {
+		for (String fen : fens) {
+			try {
+				blackhole.consume(cache.get(fen));
+			}
+			catch (IllegalArgumentException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void legacyFenToMove(Blackhole blackhole) {
+		for (String fen : fens) {
+			try {
+				blackhole.consume(LegacyFenCodec.fenToMove(fen));
+			}
+			catch (RuntimeException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void fenToMove(Blackhole blackhole) {
+		for (String fen : fens) {
+			blackhole.consume(FenCodec.parseWhiteToMove(fen));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.bench;
+
+/**
+ * The original codec from {@code MainActivity}, kept unchanged as the
+ * baseline that {@code FenCodec} is measured against.
+ *
+ * @author Istvan Chung
+ */
+final class LegacyFenCodec {
+	private LegacyFenCodec() {
+	}
+
+	static char[][] fenToCharArr(String fen) {
+		char[][] board = new char[8][8];
+		String fenStringRows = fen.substring(0, fen.indexOf(" "));
+		String[] rows = fenStringRows.split("/");
+		if (rows.length != 8) {
+			throw new IllegalArgumentException("Wrong number of rows");
+		}
+		for (int i = 0; i < rows.length; i++) {
+			int column = 0;
+			for (int y = 0; y < rows[i].length(); y++) {
+				char c = rows[i].charAt(y);
+				if (c >= '0' && c <= '9') {
+					for (int z = 0; z < c - '0'; z++) {
+						board[i][column] = '0';
+						column++;
+					}
+				}
+				else if ("KQRBNPkqrbnp".indexOf(c) != -1) {
+					board[i][column] = rows[i].charAt(y);
+					column++;
+				}
+				else {
+					throw new IllegalArgumentException("Invalid character");
+				}
+			}
+			if (column != 8) {
+				throw new IllegalArgumentException("Row wrong length");
+			}
+		}
+		return board;
+	}
+
+	static String charToFen(char[][] board, boolean whiteToMove) {
+		StringBuilder fenBuilder = new StringBuilder();
+		for (int i = 0; i < board.length; i++) {
+			int blank = 0;
+			for (int y = 0; y < board[0].length; y++) {
+				if (board[i][y] == '0') {
+					blank++;
+				}
+				else {
+					if (blank > 0) {
+						fenBuilder.append(blank);
+						fenBuilder.append(board[i][y]);
+					}
+					else {
+						fenBuilder.append(board[i][y]);
+					}
+					blank = 0;
+				}
+			}
+			if (blank > 0) {
+				fenBuilder.append(blank);
+			}
+			if (i != board.length - 1) {
+				fenBuilder.append("/");
+			}
+		}
+		fenBuilder.append(" ");
+		fenBuilder.append(whiteToMove ? "w" : "b");
+		fenBuilder.append(" - - 0 1");
+		return fenBuilder.toString();
+	}
+
+	static boolean fenToMove(String fen) {
+		return (fen.substring(fen.indexOf(" "), fen.length() - 1)).substring(1,
+				2).equals("w");
+	}
+
+	static char[][] getPieces(char[][] board) {
+		char[][] pieces = new char[board.length][];
+		for (int i = 0; i < pieces.length; i++) {
+			pieces[i] = board[i].clone();
+		}
+
+		return pieces;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.twodumpling.fenconverter.core.FenCodec;
+import org.twodumpling.fenconverter.core.Metrics;
+
+/**
+ * The cost of timing each parse with {@link Metrics}: not at all, with
+ * recording disabled, and with recording enabled with and without counting
+ * allocations.
+ *
+ * @author Istvan Chung
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+	private static final Metrics.Timer parseTimer = Metrics.timer("parse");
+
+	/**
+	 * HotSpot's count of the bytes allocated by the current thread.
+	 */
+	private static final Metrics.AllocationCounter threadAllocations = new Metrics.AllocationCounter() {
+		private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory
+				.getThreadMXBean();
+
+		@Override
+		public long getAllocatedBytes() {
+			return threads.getThreadAllocatedBytes(Thread.currentThread()
+					.getId());
+		}
+	};
+
+	@Param({ "disabled", "enabled", "allocations" })
+	public String recording;
+
+	private String[] fens;
+	private char[][] board;
+
+	@Setup
+	public void setUp() {
+		fens = Corpus.get("middlegame");
+		board = new char[8][8];
+		Metrics.setEnabled(!recording.equals("disabled"));
+		Metrics.setAllocationCounter(recording.equals("allocations") ? threadAllocations
+				: null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Metrics.setEnabled(false);
+		Metrics.setAllocationCounter(null);
+		Metrics.reset();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void parseBoard(Blackhole blackhole) {
+		for (String fen : fens) {
+			blackhole.consume(FenCodec.parseBoard(fen, board));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Corpus.SIZE)
+	public void parseBoardTimed(Blackhole blackhole) {
+		for (String fen : fens) {
+			long start = parseTimer.start();
+			blackhole.consume(FenCodec.parseBoard(fen, board));
+			parseTimer.stop(start);
+		}
+	}
+}
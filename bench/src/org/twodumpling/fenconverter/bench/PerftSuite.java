@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.twodumpling.fenconverter.core.Perft;
+import org.twodumpling.fenconverter.core.Position;
+
+/**
+ * Runs perft over the standard test positions, checking every count against
+ * the published figures and reporting nodes per second on one thread and on
+ * all cores. Exits with status 1 if any count is wrong.
+ *
+ * Takes an optional maximum depth, to shorten the run on slow devices.
+ *
+ * @author Istvan Chung
+ */
+public final class PerftSuite {
+	private PerftSuite() {
+	}
+
+	private static final String[] NAMES = { "start", "kiwipete",
+			"position 3", "position 4", "position 5", "position 6" };
+
+	private static final String[] FENS = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10" };
+
+	/**
+	 * Published node counts, from depth 1 up to the depth run by default.
+	 */
+	private static final long[][] COUNTS = {
+			{ 20, 400, 8902, 197281, 4865609 },
+			{ 48, 2039, 97862, 4085603 },
+			{ 14, 191, 2812, 43238, 674624 },
+			{ 6, 264, 9467, 422333 },
+			{ 44, 1486, 62379, 2103487 },
+			{ 46, 2079, 89890, 3894594 } };
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxDepth = args.length > 0 ? Integer.parseInt(args[0])
+				: Integer.MAX_VALUE;
+		int cores = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(cores);
+		boolean failed = false;
+		long singleNodes = 0, singleNanos = 0;
+		long parallelNodes = 0, parallelNanos = 0;
+
+		// Run the smallest position once so that the first timing does not
+		// include class loading and interpretation.
+		Perft.count(Position.fromFen(FENS[2]), 4);
+
+		for (int i = 0; i < FENS.length; i++) {
+			Position position = Position.fromFen(FENS[i]);
+			int depth = Math.min(maxDepth, COUNTS[i].length);
+			long expected = COUNTS[i][depth - 1];
+
+			long start = System.nanoTime();
+			long nodes = Perft.count(position, depth);
+			long single = System.nanoTime() - start;
+			start = System.nanoTime();
+			long parallelCount = Perft.count(position, depth, pool);
+			long parallel = System.nanoTime() - start;
+
+			boolean ok = nodes == expected && parallelCount == expected;
+			failed |= !ok;
+			singleNodes += nodes;
+			singleNanos += single;
+			parallelNodes += parallelCount;
+			parallelNanos += parallel;
+			System.out.printf("%-11s depth %d %,12d nodes %s  1 core %,12d n/s"
+					+ "  %d cores %,12d n/s%n", NAMES[i], depth, nodes,
+					ok ? "ok      " : "EXPECTED " + expected, rate(nodes, single),
+					cores, rate(parallelCount, parallel));
+		}
+		System.out.printf("%-19s %,12d nodes %-8s  1 core %,12d n/s"
+				+ "  %d cores %,12d n/s%n", "total", singleNodes, "",
+				rate(singleNodes, singleNanos), cores,
+				rate(parallelNodes, parallelNanos));
+		pool.shutdown();
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static long rate(long nodes, long nanos) {
+		return nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Precomputed attack tables for each piece on each square.
+ *
+ * Knight, king and pawn attacks are looked up directly. Sliding attacks
+ * start from the full ray in each direction and cut it off behind the
+ * nearest blocker, found with a single bit scan, so no loop over squares
+ * is needed at run time.
+ *
+ * @author Istvan Chung
+ */
+final class Attacks {
+	private Attacks() {
+	}
+
+	static final long[] KNIGHT = new long[64];
+	static final long[] KING = new long[64];
+	/**
+	 * Squares attacked by a white pawn on each square.
+	 */
+	static final long[] WHITE_PAWN = new long[64];
+	/**
+	 * Squares attacked by a black pawn on each square.
+	 */
+	static final long[] BLACK_PAWN = new long[64];
+
+	/**
+	 * Directions, as rank and file steps. The first four are rook
+	 * directions and the last four bishop directions; directions 0, 1, 4 and
+	 * 7 go towards higher square numbers.
+	 */
+	private static final int[] RANK_STEP = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] FILE_STEP = { 0, 1, 0, -1, 1, 1, -1, -1 };
+	/**
+	 * Every square in each direction from each square, up to the edge.
+	 */
+	private static final long[][] RAYS = new long[8][64];
+
+	static {
+		int[][] knightSteps = { { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 },
+				{ -1, -2 }, { -2, -1 }, { -2, 1 }, { -1, 2 } };
+		for (int square = 0; square < 64; square++) {
+			int rank = square >>> 3, file = square & 7;
+			for (int[] step : knightSteps) {
+				KNIGHT[square] |= bit(rank + step[0], file + step[1]);
+			}
+			for (int dir = 0; dir < 8; dir++) {
+				KING[square] |= bit(rank + RANK_STEP[dir], file
+						+ FILE_STEP[dir]);
+				int r = rank + RANK_STEP[dir], f = file + FILE_STEP[dir];
+				while (bit(r, f) != 0) {
+					RAYS[dir][square] |= bit(r, f);
+					r += RANK_STEP[dir];
+					f += FILE_STEP[dir];
+				}
+			}
+			WHITE_PAWN[square] = bit(rank + 1, file - 1)
+					| bit(rank + 1, file + 1);
+			BLACK_PAWN[square] = bit(rank - 1, file - 1)
+					| bit(rank - 1, file + 1);
+		}
+	}
+
+	/**
+	 * @return the bit for a square, or 0 if it is off the board
+	 */
+	private static long bit(int rank, int file) {
+		if (rank < 0 || rank > 7 || file < 0 || file > 7) {
+			return 0;
+		}
+		return 1L << (rank * 8 + file);
+	}
+
+	private static long ray(int dir, int square, long occupied) {
+		long attacks = RAYS[dir][square];
+		long blockers = attacks & occupied;
+		if (blockers != 0) {
+			int nearest = dir == 0 || dir == 1 || dir == 4 || dir == 7 ? Long
+					.numberOfTrailingZeros(blockers) : 63 - Long
+					.numberOfLeadingZeros(blockers);
+			attacks ^= RAYS[dir][nearest];
+		}
+		return attacks;
+	}
+
+	static long rook(int square, long occupied) {
+		return ray(0, square, occupied) | ray(1, square, occupied)
+				| ray(2, square, occupied) | ray(3, square, occupied);
+	}
+
+	static long bishop(int square, long occupied) {
+		return ray(4, square, occupied) | ray(5, square, occupied)
+				| ray(6, square, occupied) | ray(7, square, occupied);
+	}
+
+	static long queen(int square, long occupied) {
+		return rook(square, occupied) | bishop(square, occupied);
+	}
+
+	/**
+	 * @return whether a side attacks a square in a position
+	 */
+	static boolean isAttacked(Position position, int square, boolean byWhite) {
+		int base = byWhite ? Position.WHITE_KING : Position.BLACK_KING;
+		long occupied = position.getOccupancy();
+		long[] pawnAttacks = byWhite ? BLACK_PAWN : WHITE_PAWN;
+		if ((pawnAttacks[square] & position.getBitboard(base + 5)) != 0
+				|| (KNIGHT[square] & position.getBitboard(base + 4)) != 0
+				|| (KING[square] & position.getBitboard(base)) != 0) {
+			return true;
+		}
+		long queens = position.getBitboard(base + 1);
+		long straight = queens | position.getBitboard(base + 2);
+		long diagonal = queens | position.getBitboard(base + 3);
+		return (straight != 0 && (rook(square, occupied) & straight) != 0)
+				|| (diagonal != 0 && (bishop(square, occupied) & diagonal) != 0);
+	}
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Validates and normalizes files of FEN (or EPD) positions, one per line, as
+ * written by the app's export.
+ *
+ * The input is memory-mapped one window at a time. Each window is cut into
+ * chunks on line boundaries, and the chunks are parsed and re-encoded in
+ * parallel on a fixed pool of threads. Their output is then written in input
+ * order, so memory use is bounded by the window size, not the file size.
+ *
+ * Accepted lines are written in the form produced by
+ * {@link Position#toFen()}, keeping all six fields; the operations of EPD
+ * lines, such as {@code bm e5;}, follow unchanged. Rejected lines go to a
+ * separate file as {@code line number <TAB> reason <TAB> line}, where the
+ * reason is the message of the {@link IllegalArgumentException} thrown by
+ * {@link FenCodec}, or of the problem found by {@link PositionValidator} for
+ * well-formed positions that could not arise in a game. The line is copied
+ * byte for byte, so text in any encoding survives. Blank lines are skipped,
+ * and lines longer than {@link #MAX_LINE_LENGTH} are rejected unparsed, with
+ * only their start copied.
+ *
+ * @author Istvan Chung
+ */
+public final class BatchConverter {
+	/**
+	 * Default number of bytes mapped at a time.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 32 << 20;
+
+	/**
+	 * The longest line accepted, in bytes, counting its line break. The
+	 * window grows to hold a line up to this long, but no further, so a
+	 * file without line breaks is not mapped whole.
+	 */
+	public static final int MAX_LINE_LENGTH = 1 << 16;
+
+	/**
+	 * Number of chunks per worker thread in each window, so that a few slow
+	 * chunks don't leave the other workers idle.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Line counts of a finished conversion.
+	 */
+	public static final class Result {
+		private final long accepted;
+		private final long rejected;
+
+		Result(long accepted, long rejected) {
+			this.accepted = accepted;
+			this.rejected = rejected;
+		}
+
+		public long getAccepted() {
+			return accepted;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		@Override
+		public String toString() {
+			return accepted + " accepted, " + rejected + " rejected";
+		}
+	}
+
+	private final int threads;
+	private final int windowSize;
+
+	/**
+	 * Create a converter using every available core.
+	 */
+	public BatchConverter() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param threads
+	 *            the number of threads to parse chunks on
+	 * @param windowSize
+	 *            the number of bytes of input to map at a time; a window
+	 *            grows beyond this only if a single line is longer
+	 */
+	public BatchConverter(int threads, int windowSize) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive");
+		}
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be positive");
+		}
+		this.threads = threads;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Convert a file.
+	 *
+	 * @param input
+	 *            a file with one FEN string per line
+	 * @param output
+	 *            receives the normalized FEN strings of all valid lines, in
+	 *            input order
+	 * @param rejects
+	 *            receives every line that failed to parse or validate, with
+	 *            its line number and the reason
+	 * @throws IOException
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for a window
+	 *             to be converted
+	 */
+	public Result convert(File input, File output, File rejects)
+			throws IOException, InterruptedException {
+		long accepted = 0, rejected = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		RandomAccessFile in = new RandomAccessFile(input, "r");
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					output), 1 << 16);
+			try {
+				OutputStream rejectOut = new BufferedOutputStream(
+						new FileOutputStream(rejects));
+				try {
+					FileChannel channel = in.getChannel();
+					long size = channel.size();
+					long position = 0, line = 1;
+					int window = windowSize;
+					while (position < size) {
+						long remaining = size - position;
+						int mapped = (int) Math.min(window, remaining);
+						MappedByteBuffer buffer = channel.map(
+								FileChannel.MapMode.READ_ONLY, position, mapped);
+						int limit = lastLineEnd(buffer, mapped);
+						if (limit < 0) {
+							if (mapped < remaining) {
+								// A single line longer than the window.
+								if (window < MAX_LINE_LENGTH) {
+									window = Math.min(window * 2,
+											MAX_LINE_LENGTH);
+									continue;
+								}
+								writeReject(rejectOut, line, "Line too long",
+										buffer, 0, mapped);
+								rejected++;
+								line++;
+								position = nextLineStart(channel, position
+										+ mapped, size);
+								window = windowSize;
+								continue;
+							}
+							limit = mapped;
+						}
+
+						List<Chunk> chunks = split(buffer, limit);
+						for (Future<Void> done : executor.invokeAll(chunks)) {
+							try {
+								done.get();
+							}
+							catch (ExecutionException e) {
+								throw new RuntimeException(e.getCause());
+							}
+						}
+						for (Chunk chunk : chunks) {
+							chunk.output.writeTo(out);
+							chunk.writeRejects(rejectOut, line);
+							accepted += chunk.accepted;
+							rejected += chunk.rejectedLines.size();
+							line += chunk.lines;
+						}
+
+						position += limit;
+						window = windowSize;
+					}
+				}
+				finally {
+					rejectOut.close();
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+			executor.shutdown();
+		}
+		return new Result(accepted, rejected);
+	}
+
+	/**
+	 * @return the offset just past the first newline at or after
+	 *         {@code from}, or {@code size} if there is none
+	 */
+	private long nextLineStart(FileChannel channel, long from, long size)
+			throws IOException {
+		while (from < size) {
+			int mapped = (int) Math.min(windowSize, size - from);
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, from, mapped);
+			for (int i = 0; i < mapped; i++) {
+				if (buffer.get(i) == '\n') {
+					return from + i + 1;
+				}
+			}
+			from += mapped;
+		}
+		return size;
+	}
+
+	/**
+	 * Write an entry of the rejects file, copying the text of the line from
+	 * the input as it is. Only the first {@link #MAX_LINE_LENGTH} bytes of a
+	 * longer line are copied, cut before any UTF-8 sequence they would split.
+	 */
+	private static void writeReject(OutputStream out, long line,
+			String reason, ByteBuffer buffer, int start, int length)
+			throws IOException {
+		out.write((line + "\t" + reason + "\t").getBytes("UTF-8"));
+		int end = start + length;
+		if (length > MAX_LINE_LENGTH) {
+			end = start + MAX_LINE_LENGTH;
+			while (end > start && (buffer.get(end) & 0xc0) == 0x80) {
+				end--;
+			}
+		}
+		for (int i = start; i < end; i++) {
+			out.write(buffer.get(i));
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * @return the index just past the last newline among the first
+	 *         {@code length} bytes, or -1 if there is none
+	 */
+	private static int lastLineEnd(MappedByteBuffer buffer, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Cut the first {@code limit} bytes of a window into chunks that each
+	 * end on a line boundary.
+	 */
+	private List<Chunk> split(MappedByteBuffer buffer, int limit) {
+		int count = threads * CHUNKS_PER_THREAD;
+		int target = Math.max(1, limit / count);
+		List<Chunk> chunks = new ArrayList<Chunk>(count + 1);
+		int start = 0;
+		while (start < limit) {
+			int end = Math.min(limit, start + target);
+			while (end < limit && buffer.get(end - 1) != '\n') {
+				end++;
+			}
+			chunks.add(new Chunk(buffer, start, end));
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Parses and re-encodes the lines in one range of a window.
+	 */
+	private static final class Chunk implements Callable<Void> {
+		private final MappedByteBuffer buffer;
+		private final int start, end;
+
+		final ByteArrayOutputStream output;
+		int lines, accepted;
+		/**
+		 * Line numbers of rejected lines, relative to the start of the
+		 * chunk; the reasons, and where the text is in the window, are at
+		 * the same index of {@link #reasons}, {@link #textStarts} and
+		 * {@link #textLengths}.
+		 */
+		final List<Integer> rejectedLines = new ArrayList<Integer>(0);
+		private final List<String> reasons = new ArrayList<String>(0);
+		private final List<Integer> textStarts = new ArrayList<Integer>(0);
+		private final List<Integer> textLengths = new ArrayList<Integer>(0);
+
+		Chunk(MappedByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			// Normalized FEN strings are about as long as the input.
+			output = new ByteArrayOutputStream(end - start + 64);
+		}
+
+		@Override
+		public Void call() {
+			ByteSequence sequence = new ByteSequence();
+			Position position = new Position();
+			StringBuilder fenBuilder = new StringBuilder(90);
+			int lineStart = start;
+			while (lineStart < end) {
+				int lineEnd = lineStart;
+				while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+					lineEnd++;
+				}
+				int next = lineEnd + 1;
+				if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+					lineEnd--;
+				}
+
+				int length = lineEnd - lineStart;
+				if (next - lineStart > MAX_LINE_LENGTH) {
+					reject("Line too long", lineStart, length);
+				}
+				else if (length > 0) {
+					sequence.reset(buffer, lineStart, length);
+					try {
+						int operations = FenCodec.parseEpd(sequence, 0, length,
+								position);
+						PositionValidator.validate(position);
+						fenBuilder.setLength(0);
+						position.appendFen(fenBuilder);
+						for (int i = 0; i < fenBuilder.length(); i++) {
+							output.write(fenBuilder.charAt(i));
+						}
+						int operationsEnd = length;
+						while (operationsEnd > operations
+								&& sequence.charAt(operationsEnd - 1) == ' ') {
+							operationsEnd--;
+						}
+						if (operations < operationsEnd) {
+							output.write(' ');
+							for (int i = operations; i < operationsEnd; i++) {
+								output.write(sequence.charAt(i));
+							}
+						}
+						output.write('\n');
+						accepted++;
+					}
+					catch (IllegalArgumentException e) {
+						reject(e.getMessage(), lineStart, length);
+					}
+				}
+
+				lines++;
+				lineStart = next;
+			}
+			return null;
+		}
+
+		private void reject(String reason, int textStart, int textLength) {
+			rejectedLines.add(lines);
+			reasons.add(reason);
+			textStarts.add(textStart);
+			textLengths.add(textLength);
+		}
+
+		/**
+		 * @param firstLine
+		 *            the line number of the first line of this chunk
+		 */
+		void writeRejects(OutputStream out, long firstLine)
+				throws IOException {
+			for (int i = 0; i < rejectedLines.size(); i++) {
+				writeReject(out, firstLine + rejectedLines.get(i),
+						reasons.get(i), buffer, textStarts.get(i),
+						textLengths.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Convert a file from the command line.
+	 *
+	 * @param args
+	 *            input file, output file and rejects file
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length != 3) {
+			System.err.println("Usage: BatchConverter <input> <output> <rejects>");
+			System.exit(2);
+		}
+		long start = System.nanoTime();
+		Result result = new BatchConverter().convert(new File(args[0]),
+				new File(args[1]), new File(args[2]));
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.err.println(result + " in " + millis + " ms");
+	}
+}
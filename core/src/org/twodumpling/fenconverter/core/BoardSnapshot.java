@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * An immutable parsed FEN string: the board in the array representation
+ * described in {@link FenCodec}, and the other five fields. Being immutable,
+ * one snapshot can be handed out any number of times, such as from a
+ * {@link FenCache}, and read from any thread without copying or locking.
+ *
+ * Editing a snapshot makes a new one. Changing a square copies only the
+ * row it is in; the other rows are shared with the old snapshot.
+ *
+ * @author Istvan Chung
+ */
+public final class BoardSnapshot {
+	/**
+	 * An empty board with white to move, no castling rights or en passant
+	 * square, at the first move.
+	 */
+	public static final BoardSnapshot EMPTY = new BoardSnapshot(
+			new Position());
+
+	/**
+	 * Rows may be shared with other snapshots, so they are never changed.
+	 */
+	private final char[][] board;
+	private final boolean whiteToMove;
+	private final int castling;
+	private final int enPassant;
+	private final int halfmoveClock;
+	private final int fullmoveNumber;
+
+	private BoardSnapshot(Position position) {
+		board = position.toCharArray();
+		whiteToMove = position.isWhiteToMove();
+		castling = position.getCastling();
+		enPassant = position.getEnPassant();
+		halfmoveClock = position.getHalfmoveClock();
+		fullmoveNumber = position.getFullmoveNumber();
+	}
+
+	private BoardSnapshot(char[][] board, boolean whiteToMove, int castling,
+			int enPassant, int halfmoveClock, int fullmoveNumber) {
+		this.board = board;
+		this.whiteToMove = whiteToMove;
+		this.castling = castling;
+		this.enPassant = enPassant;
+		this.halfmoveClock = halfmoveClock;
+		this.fullmoveNumber = fullmoveNumber;
+	}
+
+	/**
+	 * Decode an FEN string.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 */
+	public static BoardSnapshot fromFen(CharSequence fen) {
+		return new BoardSnapshot(Position.fromFen(fen));
+	}
+
+	/**
+	 * @param piece
+	 *            a piece, as in {@link FenCodec}
+	 * @return a snapshot with one square changed, or this one if the piece
+	 *         is already there
+	 */
+	public BoardSnapshot withPiece(int row, int column, char piece) {
+		if (board[row][column] == piece) {
+			return this;
+		}
+		char[][] edited = board.clone();
+		edited[row] = board[row].clone();
+		edited[row][column] = piece;
+		return new BoardSnapshot(edited, whiteToMove, castling, enPassant,
+				halfmoveClock, fullmoveNumber);
+	}
+
+	/**
+	 * @return a snapshot with the given side to move, or this one if it is
+	 *         already to move
+	 */
+	public BoardSnapshot withWhiteToMove(boolean whiteToMove) {
+		if (this.whiteToMove == whiteToMove) {
+			return this;
+		}
+		return new BoardSnapshot(board, whiteToMove, castling, enPassant,
+				halfmoveClock, fullmoveNumber);
+	}
+
+	/**
+	 * @return the board and side to move as a new {@link Position}; the
+	 *         castling rights, en passant square and clocks are left out,
+	 *         since edits may have made them invalid
+	 */
+	public Position toPosition() {
+		return Position.fromCharArray(board, whiteToMove);
+	}
+
+	/**
+	 * @return the board itself, which must not be changed
+	 */
+	char[][] rows() {
+		return board;
+	}
+
+	/**
+	 * @return the piece on a square, as in {@link FenCodec}; row 0 is the
+	 *         eighth rank
+	 */
+	public char getPiece(int row, int column) {
+		return board[row][column];
+	}
+
+	/**
+	 * @return a new copy of the board, which the caller may change
+	 */
+	public char[][] toCharArray() {
+		return FenCodec.copyBoard(board);
+	}
+
+	public boolean isWhiteToMove() {
+		return whiteToMove;
+	}
+
+	/**
+	 * @return the castling rights, as in {@link Position#getCastling()}
+	 */
+	public int getCastling() {
+		return castling;
+	}
+
+	/**
+	 * @return the en passant square, or {@link Position#NO_SQUARE}
+	 */
+	public int getEnPassant() {
+		return enPassant;
+	}
+
+	public int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+
+	public int getFullmoveNumber() {
+		return fullmoveNumber;
+	}
+}
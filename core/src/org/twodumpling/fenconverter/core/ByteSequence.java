@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable view of a range of ASCII bytes as a {@link CharSequence}, so
+ * that {@link FenCodec} can parse straight out of a file buffer without
+ * decoding each line into a {@link String}.
+ *
+ * @author Istvan Chung
+ */
+final class ByteSequence implements CharSequence {
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+
+	/**
+	 * Point this sequence at {@code length} bytes of {@code buffer} starting
+	 * at absolute index {@code offset}.
+	 */
+	ByteSequence reset(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().substring(start, end);
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) (buffer.get(offset + i) & 0xff);
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.util.Arrays;
+
+/**
+ * An unbounded undo and redo history of board edits.
+ *
+ * Each change is stored as a single {@code int}, not as a copy of the
+ * board:
+ *
+ * <pre>
+ * bits  0-5   square, numbered as in {@link Position}
+ * bits  6-9   piece index before the change, plus 1, so 0 is empty
+ * bits 10-13  piece index after the change, plus 1
+ * bit  14     the side to move was switched
+ * bit  15     part of the same edit as the change before it
+ * </pre>
+ *
+ * An edit is one change or, between {@link #beginGroup()} and
+ * {@link #endGroup()}, any number of them, such as the squares emptied by
+ * clearing the board. The history grows by four bytes per change, and
+ * undoing or redoing an edit costs one step per change in it, however long
+ * the history is.
+ *
+ * @author Istvan Chung
+ */
+public final class EditHistory {
+	/**
+	 * Applies changes being undone or redone.
+	 */
+	public interface Target {
+		/**
+		 * @param piece
+		 *            a piece index, or {@link Position#EMPTY}
+		 */
+		void setPiece(int square, int piece);
+
+		void switchSideToMove();
+	}
+
+	private static final int SIDE_TO_MOVE = 1 << 14;
+	private static final int CONTINUES = 1 << 15;
+
+	private int[] changes;
+	/**
+	 * Number of changes recorded, including those that have been undone.
+	 */
+	private int size;
+	/**
+	 * Number of changes currently applied; those from here to {@link #size}
+	 * can be redone.
+	 */
+	private int applied;
+	private boolean grouping;
+	/**
+	 * Whether the next change recorded in a group is its first.
+	 */
+	private boolean groupStart;
+
+	/**
+	 * Create an empty history.
+	 */
+	public EditHistory() {
+		changes = new int[64];
+	}
+
+	/**
+	 * Restore a history from the output of {@link #save()}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if {@code saved} did not come from {@link #save()}
+	 */
+	public EditHistory(int[] saved) {
+		if (saved.length == 0 || saved[saved.length - 1] < 0
+				|| saved[saved.length - 1] > saved.length - 1) {
+			throw new IllegalArgumentException("Invalid saved history");
+		}
+		size = saved.length - 1;
+		applied = saved[size];
+		changes = Arrays.copyOf(saved, Math.max(64, size));
+	}
+
+	/**
+	 * @return the whole history, including what can be redone, as an array
+	 *         that can be kept across restarts of the app
+	 */
+	public int[] save() {
+		int[] saved = Arrays.copyOf(changes, size + 1);
+		saved[size] = applied;
+		return saved;
+	}
+
+	/**
+	 * Record a piece being placed on or removed from a square. Anything that
+	 * had been undone can no longer be redone.
+	 *
+	 * @param oldPiece
+	 *            the piece index before, or {@link Position#EMPTY}
+	 * @param newPiece
+	 *            the piece index after, or {@link Position#EMPTY}
+	 */
+	public void recordPiece(int square, int oldPiece, int newPiece) {
+		record(square | (oldPiece + 1) << 6 | (newPiece + 1) << 10);
+	}
+
+	/**
+	 * Record the side to move being switched. Anything that had been undone
+	 * can no longer be redone.
+	 */
+	public void recordSideToMove() {
+		record(SIDE_TO_MOVE);
+	}
+
+	private void record(int change) {
+		if (grouping) {
+			if (groupStart) {
+				groupStart = false;
+			}
+			else {
+				change |= CONTINUES;
+			}
+		}
+		if (applied == changes.length) {
+			changes = Arrays.copyOf(changes, changes.length * 2);
+		}
+		changes[applied++] = change;
+		size = applied;
+	}
+
+	/**
+	 * Make the changes recorded until {@link #endGroup()} a single edit.
+	 */
+	public void beginGroup() {
+		grouping = true;
+		groupStart = true;
+	}
+
+	public void endGroup() {
+		grouping = false;
+	}
+
+	public boolean canUndo() {
+		return applied > 0;
+	}
+
+	public boolean canRedo() {
+		return applied < size;
+	}
+
+	/**
+	 * Undo the last edit, reversing its changes in reverse order.
+	 *
+	 * @return whether there was an edit to undo
+	 */
+	public boolean undo(Target target) {
+		if (applied == 0) {
+			return false;
+		}
+		int change;
+		do {
+			change = changes[--applied];
+			apply(target, change, (change >>> 6 & 15) - 1);
+		} while ((change & CONTINUES) != 0 && applied > 0);
+		return true;
+	}
+
+	/**
+	 * Redo the last edit undone.
+	 *
+	 * @return whether there was an edit to redo
+	 */
+	public boolean redo(Target target) {
+		if (applied == size) {
+			return false;
+		}
+		do {
+			int change = changes[applied++];
+			apply(target, change, (change >>> 10 & 15) - 1);
+		} while (applied < size && (changes[applied] & CONTINUES) != 0);
+		return true;
+	}
+
+	private static void apply(Target target, int change, int piece) {
+		if ((change & SIDE_TO_MOVE) != 0) {
+			target.switchSideToMove();
+		}
+		else {
+			target.setPiece(change & 63, piece);
+		}
+	}
+}
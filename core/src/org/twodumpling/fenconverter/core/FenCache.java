@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of parsed FEN strings, so that loading a string that was
+ * loaded recently, such as the starting position or the same FEN pasted
+ * again, does not parse it again.
+ *
+ * When full, the least recently used entry is evicted. Malformed strings
+ * are not cached. Hits, misses and evictions are counted by each cache,
+ * and for all caches together in {@link Metrics} while it is recording,
+ * which also times the parsing done on a miss.
+ *
+ * @author Istvan Chung
+ */
+public final class FenCache {
+	private static final Metrics.Counter hitCounter = Metrics
+			.counter("fen.cache.hits");
+	private static final Metrics.Counter missCounter = Metrics
+			.counter("fen.cache.misses");
+	private static final Metrics.Counter evictionCounter = Metrics
+			.counter("fen.cache.evictions");
+	private static final Metrics.Timer parseTimer = Metrics
+			.timer("fen.cache.parse");
+
+	private final int capacity;
+	private final Map<String, BoardSnapshot> entries;
+	private long hits, misses, evictions;
+
+	/**
+	 * @param capacity
+	 *            the greatest number of FEN strings kept
+	 */
+	public FenCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+		// In access order, so the eldest entry is the least recently used.
+		entries = new LinkedHashMap<String, BoardSnapshot>(
+				capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, BoardSnapshot> eldest) {
+				if (size() <= FenCache.this.capacity) {
+					return false;
+				}
+				evictions++;
+				evictionCounter.increment();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Get the parsed form of an FEN string, parsing it only if it is not
+	 * cached.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 */
+	public synchronized BoardSnapshot get(String fen) {
+		BoardSnapshot snapshot = entries.get(fen);
+		if (snapshot != null) {
+			hits++;
+			hitCounter.increment();
+			return snapshot;
+		}
+		misses++;
+		missCounter.increment();
+		long start = parseTimer.start();
+		try {
+			snapshot = BoardSnapshot.fromFen(fen);
+		}
+		finally {
+			parseTimer.stop(start);
+		}
+		entries.put(fen, snapshot);
+		return snapshot;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Remove every entry. The counts are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
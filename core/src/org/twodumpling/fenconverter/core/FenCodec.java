@@ -0,0 +1,566 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Allocation-free FEN parsing, and the matching FEN and board helpers.
+ *
+ * Boards are two-dimensional row-major order arrays of {@code char}s, using
+ * the same representation as FEN for pieces and {@code '0'} for a blank
+ * square. Row 0 is the eighth rank.
+ *
+ * The parser makes a single pass over the piece placement field of a
+ * {@link CharSequence} and writes directly into a caller-supplied board or
+ * {@link Position}, so no intermediate strings or arrays are created unless
+ * the input is malformed. When parsing into a {@link Position}, the castling,
+ * en passant and clock fields are read as well; any of them may be left
+ * off the end, as in FEN strings written by earlier versions, in which case
+ * they take their default values. EPD lines, which may have operations in
+ * place of the clocks, are read by
+ * {@link #parseEpd(CharSequence, int, int, Position)}.
+ *
+ * @author Istvan Chung
+ */
+public final class FenCodec {
+	private FenCodec() {
+	}
+
+	/**
+	 * Parse the piece placement field of an FEN string into an existing
+	 * board.
+	 *
+	 * @param fen
+	 *            the FEN string
+	 * @param board
+	 *            an 8x8 board, see {@link FenCodec}; its contents are
+	 *            undefined if parsing fails
+	 * @return the index of the space terminating the piece placement field
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 */
+	public static int parseBoard(CharSequence fen, char[][] board) {
+		return parseBoard(fen, 0, fen.length(), board);
+	}
+
+	/**
+	 * Parse the piece placement field of an FEN string held in a slice of a
+	 * larger character sequence.
+	 *
+	 * @param fen
+	 *            the characters containing the FEN string
+	 * @param offset
+	 *            the index of the first character of the FEN string
+	 * @param length
+	 *            the number of characters belonging to the FEN string
+	 * @param board
+	 *            an 8x8 board, see {@link FenCodec}; its contents are
+	 *            undefined if parsing fails
+	 * @return the index of the space terminating the piece placement field
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 */
+	public static int parseBoard(CharSequence fen, int offset, int length,
+			char[][] board) {
+		return parsePlacement(fen, offset, length, board, null);
+	}
+
+	/**
+	 * Parse an FEN string held in a slice of a larger character sequence into
+	 * a {@link Position}.
+	 *
+	 * @param fen
+	 *            the characters containing the FEN string
+	 * @param offset
+	 *            the index of the first character of the FEN string
+	 * @param length
+	 *            the number of characters belonging to the FEN string
+	 * @param position
+	 *            the position to fill in; it is cleared first, and its
+	 *            contents are undefined if parsing fails
+	 * @return the index of the space terminating the piece placement field
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 */
+	public static int parsePosition(CharSequence fen, int offset, int length,
+			Position position) {
+		position.clear();
+		int space = parsePlacement(fen, offset, length, null, position);
+		parseFields(fen, space, offset + length, position, false);
+		return space;
+	}
+
+	/**
+	 * Parse an EPD line held in a slice of a larger character sequence into
+	 * a {@link Position}.
+	 *
+	 * An EPD line is an FEN string whose clock fields are left off or
+	 * followed by operations such as {@code bm e5; id "x";}. The first field
+	 * after the en passant square that is not a number starts the
+	 * operations; they are not interpreted, but their place is returned so
+	 * that the caller can keep them.
+	 *
+	 * @param fen
+	 *            the characters containing the EPD line
+	 * @param offset
+	 *            the index of the first character of the line
+	 * @param length
+	 *            the number of characters belonging to the line
+	 * @param position
+	 *            the position to fill in; it is cleared first, and its
+	 *            contents are undefined if parsing fails
+	 * @return the index of the first operation, or {@code offset + length}
+	 *         if there are none
+	 * @throws IllegalArgumentException
+	 *             if the position fields are malformed
+	 */
+	public static int parseEpd(CharSequence fen, int offset, int length,
+			Position position) {
+		position.clear();
+		int space = parsePlacement(fen, offset, length, null, position);
+		return parseFields(fen, space, offset + length, position, true);
+	}
+
+	/**
+	 * Parse the fields after the piece placement.
+	 *
+	 * @param space
+	 *            the index of the space terminating the piece placement
+	 * @param epd
+	 *            whether a field that is not a number may start EPD
+	 *            operations in place of a clock
+	 * @return the index of the first EPD operation, or {@code end}
+	 */
+	private static int parseFields(CharSequence fen, int space, int end,
+			Position position, boolean epd) {
+		// Side to move
+		int i = skipField(fen, space + 1, end);
+		char side = i == space + 2 ? fen.charAt(space + 1) : ' ';
+		if (side != 'w' && side != 'b') {
+			throw new IllegalArgumentException("Invalid side to move");
+		}
+		position.setWhiteToMove(side == 'w');
+		// Castling rights
+		i = skipSpaces(fen, i, end);
+		if (i == end) {
+			return end;
+		}
+		int castling = 0;
+		if (fen.charAt(i) == '-') {
+			i++;
+		}
+		else {
+			for (; i < end && fen.charAt(i) != ' '; i++) {
+				int right = castlingRight(fen.charAt(i));
+				if (right == 0) {
+					throw new IllegalArgumentException("Invalid castling");
+				}
+				castling |= right;
+			}
+		}
+		position.setCastling(castling);
+		// En passant square
+		i = skipSpaces(fen, i, end);
+		if (i == end) {
+			return end;
+		}
+		if (fen.charAt(i) == '-') {
+			i++;
+		}
+		else {
+			if (i + 1 >= end) {
+				throw new IllegalArgumentException("Invalid en passant square");
+			}
+			char file = fen.charAt(i), rank = fen.charAt(i + 1);
+			if (file < 'a' || file > 'h' || (rank != '3' && rank != '6')) {
+				throw new IllegalArgumentException("Invalid en passant square");
+			}
+			position.setEnPassant((rank - '1') * 8 + file - 'a');
+			i += 2;
+		}
+		// Halfmove clock
+		i = skipSpaces(fen, i, end);
+		if (i == end) {
+			return end;
+		}
+		int clockEnd = skipField(fen, i, end);
+		if (epd && !isNumber(fen, i, clockEnd)) {
+			return i;
+		}
+		position.setHalfmoveClock(parseCount(fen, i, clockEnd));
+		// Fullmove number
+		i = skipSpaces(fen, clockEnd, end);
+		if (i == end) {
+			return end;
+		}
+		clockEnd = skipField(fen, i, end);
+		if (epd && !isNumber(fen, i, clockEnd)) {
+			return i;
+		}
+		// Some programs write 0 for the first move; read it as 1.
+		position.setFullmoveNumber(Math.max(parseCount(fen, i, clockEnd), 1));
+		i = skipSpaces(fen, clockEnd, end);
+		if (i != end && !epd) {
+			throw new IllegalArgumentException("Too many fields");
+		}
+		return i;
+	}
+
+	/**
+	 * @return the {@link Position} castling flag for an FEN castling letter,
+	 *         or 0 if it is not one
+	 */
+	private static int castlingRight(char c) {
+		switch (c) {
+			case 'K':
+				return Position.WHITE_KINGSIDE;
+			case 'Q':
+				return Position.WHITE_QUEENSIDE;
+			case 'k':
+				return Position.BLACK_KINGSIDE;
+			case 'q':
+				return Position.BLACK_QUEENSIDE;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Parse a non-negative decimal number of at most nine digits.
+	 */
+	private static int parseCount(CharSequence s, int from, int to) {
+		if (to == from || to - from > 9) {
+			throw new IllegalArgumentException("Invalid clock");
+		}
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IllegalArgumentException("Invalid clock");
+			}
+			n = n * 10 + c - '0';
+		}
+		return n;
+	}
+
+	/**
+	 * @return whether a field is all digits
+	 */
+	private static boolean isNumber(CharSequence s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return to > from;
+	}
+
+	private static int skipSpaces(CharSequence s, int from, int end) {
+		while (from < end && s.charAt(from) == ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	private static int skipField(CharSequence s, int from, int end) {
+		while (from < end && s.charAt(from) != ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Shared by {@link #parseBoard(CharSequence, int, int, char[][])},
+	 * {@link #parsePosition(CharSequence, int, int, Position)} and
+	 * {@link #parseEpd(CharSequence, int, int, Position)}; exactly one of
+	 * {@code board} and {@code position} is non-null.
+	 */
+	private static int parsePlacement(CharSequence fen, int offset,
+			int length, char[][] board, Position position) {
+		int end = offset + length;
+		int space = indexOfSpace(fen, offset, end);
+		if (space < 0) {
+			throw new IllegalArgumentException("Missing side to move");
+		}
+
+		// Check the row count before the contents, as String.split("/")
+		// did; trailing empty rows are ignored in the same way.
+		int last = space;
+		while (last > offset && fen.charAt(last - 1) == '/') {
+			last--;
+		}
+		int rows = 1;
+		for (int i = offset; i < last; i++) {
+			if (fen.charAt(i) == '/') {
+				rows++;
+			}
+		}
+		if (rows != 8) {
+			throw new IllegalArgumentException("Wrong number of rows");
+		}
+
+		int row = 0, column = 0;
+		for (int i = offset; i < last; i++) {
+			char c = fen.charAt(i);
+			if (c == '/') {
+				if (column != 8) {
+					throw new IllegalArgumentException("Row wrong length");
+				}
+				row++;
+				column = 0;
+			}
+			else if (c >= '0' && c <= '9') {
+				int blank = c - '0';
+				if (column + blank > 8) {
+					throw new IllegalArgumentException("Row wrong length");
+				}
+				if (board != null) {
+					for (int z = 0; z < blank; z++) {
+						board[row][column + z] = '0';
+					}
+				}
+				column += blank;
+			}
+			else {
+				int piece = Position.pieceIndex(c);
+				if (piece == Position.EMPTY) {
+					throw new IllegalArgumentException("Invalid character");
+				}
+				if (column == 8) {
+					throw new IllegalArgumentException("Row wrong length");
+				}
+				if (board != null) {
+					board[row][column] = c;
+				}
+				else {
+					position.addPiece(piece, Position.square(row, column));
+				}
+				column++;
+			}
+		}
+		if (column != 8) {
+			throw new IllegalArgumentException("Row wrong length");
+		}
+		return space;
+	}
+
+	/**
+	 * Determine who is to move from an FEN string without allocating.
+	 *
+	 * @param fen
+	 *            the FEN string
+	 * @return {@code true} if white is to move, {@code false} otherwise.
+	 */
+	public static boolean parseWhiteToMove(CharSequence fen) {
+		return parseWhiteToMove(fen, 0, fen.length());
+	}
+
+	/**
+	 * Determine who is to move from an FEN string held in a slice of a larger
+	 * character sequence.
+	 *
+	 * @param fen
+	 *            the characters containing the FEN string
+	 * @param offset
+	 *            the index of the first character of the FEN string
+	 * @param length
+	 *            the number of characters belonging to the FEN string
+	 * @return {@code true} if white is to move, {@code false} otherwise.
+	 */
+	public static boolean parseWhiteToMove(CharSequence fen, int offset,
+			int length) {
+		int end = offset + length;
+		int space = indexOfSpace(fen, offset, end);
+		return space >= 0 && space + 1 < end && fen.charAt(space + 1) == 'w';
+	}
+
+	/**
+	 * Create an FEN string with no castling rights or en passant square.
+	 *
+	 * @param board
+	 *            an array representation, described in {@link FenCodec}
+	 * @param whiteToMove
+	 *            whether white is to move
+	 * @return an FEN string with the specified position and to-move color
+	 */
+	public static String formatBoard(char[][] board, boolean whiteToMove) {
+		return formatBoard(board, whiteToMove, 0, Position.NO_SQUARE, 0, 1);
+	}
+
+	/**
+	 * Create an FEN string with all six fields. Castling rights and an en
+	 * passant square that the board no longer allows, because the king, rook
+	 * or pawn involved has been moved, are left out.
+	 *
+	 * @param board
+	 *            an array representation, described in {@link FenCodec}
+	 * @param whiteToMove
+	 *            whether white is to move
+	 * @param castling
+	 *            castling rights, as in {@link Position#getCastling()}
+	 * @param enPassant
+	 *            en passant square, or {@link Position#NO_SQUARE}
+	 * @return an FEN string with the specified position and state
+	 */
+	public static String formatBoard(char[][] board, boolean whiteToMove,
+			int castling, int enPassant, int halfmoveClock, int fullmoveNumber) {
+		StringBuilder fenBuilder = new StringBuilder(90);
+		for (int i = 0; i < board.length; i++) {
+			int blank = 0;
+			for (int y = 0; y < board[i].length; y++) {
+				char c = board[i][y];
+				if (c == '0') {
+					blank++;
+				}
+				else {
+					if (blank > 0) {
+						fenBuilder.append((char) ('0' + blank));
+						blank = 0;
+					}
+					fenBuilder.append(c);
+				}
+			}
+			if (blank > 0) {
+				fenBuilder.append((char) ('0' + blank));
+			}
+			if (i != board.length - 1) {
+				fenBuilder.append('/');
+			}
+		}
+		appendState(fenBuilder, whiteToMove, validCastling(board, castling),
+				validEnPassant(board, whiteToMove, enPassant), halfmoveClock,
+				fullmoveNumber);
+		return fenBuilder.toString();
+	}
+
+	/**
+	 * Append the five FEN fields after the piece placement, with the space
+	 * before them.
+	 */
+	static void appendState(StringBuilder fenBuilder, boolean whiteToMove,
+			int castling, int enPassant, int halfmoveClock, int fullmoveNumber) {
+		fenBuilder.append(' ');
+		fenBuilder.append(whiteToMove ? 'w' : 'b');
+		fenBuilder.append(' ');
+		if (castling == 0) {
+			fenBuilder.append('-');
+		}
+		else {
+			for (int i = 0; i < 4; i++) {
+				if ((castling & (1 << i)) != 0) {
+					fenBuilder.append("KQkq".charAt(i));
+				}
+			}
+		}
+		fenBuilder.append(' ');
+		if (enPassant == Position.NO_SQUARE) {
+			fenBuilder.append('-');
+		}
+		else {
+			fenBuilder.append((char) ('a' + (enPassant & 7)));
+			fenBuilder.append((char) ('1' + (enPassant >>> 3)));
+		}
+		fenBuilder.append(' ');
+		fenBuilder.append(halfmoveClock);
+		fenBuilder.append(' ');
+		fenBuilder.append(fullmoveNumber);
+	}
+
+	/**
+	 * @return the castling rights whose king and rook are still on their
+	 *         starting squares
+	 */
+	public static int validCastling(char[][] board, int castling) {
+		if (board[7][4] != 'K') {
+			castling &= ~(Position.WHITE_KINGSIDE | Position.WHITE_QUEENSIDE);
+		}
+		if (board[7][7] != 'R') {
+			castling &= ~Position.WHITE_KINGSIDE;
+		}
+		if (board[7][0] != 'R') {
+			castling &= ~Position.WHITE_QUEENSIDE;
+		}
+		if (board[0][4] != 'k') {
+			castling &= ~(Position.BLACK_KINGSIDE | Position.BLACK_QUEENSIDE);
+		}
+		if (board[0][7] != 'r') {
+			castling &= ~Position.BLACK_KINGSIDE;
+		}
+		if (board[0][0] != 'r') {
+			castling &= ~Position.BLACK_QUEENSIDE;
+		}
+		return castling;
+	}
+
+	/**
+	 * @return the en passant square if it is empty and the pawn that has
+	 *         just moved past it is in front of it, otherwise
+	 *         {@link Position#NO_SQUARE}
+	 */
+	public static int validEnPassant(char[][] board, boolean whiteToMove,
+			int enPassant) {
+		if (enPassant == Position.NO_SQUARE) {
+			return enPassant;
+		}
+		int row = 7 - (enPassant >>> 3), column = enPassant & 7;
+		// The pawn moved by the side not to move, to the row after the
+		// square in its direction of travel.
+		int expectedRow = whiteToMove ? 2 : 5;
+		int pawnRow = whiteToMove ? 3 : 4;
+		char pawn = whiteToMove ? 'p' : 'P';
+		if (row != expectedRow || board[row][column] != '0'
+				|| board[pawnRow][column] != pawn) {
+			return Position.NO_SQUARE;
+		}
+		return enPassant;
+	}
+
+	/**
+	 * Copy a board row by row.
+	 *
+	 * @param board
+	 *            an array representation, described in {@link FenCodec}
+	 * @return a deep copy of {@code board}
+	 */
+	public static char[][] copyBoard(char[][] board) {
+		char[][] copy = new char[board.length][];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = board[i].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * @return whether {@code c} is one of the FEN piece letters
+	 *         {@code KQRBNPkqrbnp}
+	 */
+	public static boolean isPiece(char c) {
+		return Position.pieceIndex(c) != Position.EMPTY;
+	}
+
+	private static int indexOfSpace(CharSequence s, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (s.charAt(i) == ' ') {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * The FEN string of a board that is edited one square at a time.
+ *
+ * The piece placement of each rank is kept already encoded. After an edit
+ * only the rank it touched is encoded again, with {@link #updateRow(char[][],
+ * int)}, and the FEN string is made by joining the eight encoded ranks, so
+ * keeping a live FEN string costs one rank per edit rather than the whole
+ * board.
+ *
+ * It is not safe for use by more than one thread at a time.
+ *
+ * @author Istvan Chung
+ */
+public final class IncrementalFen {
+	/**
+	 * The piece placement of each row, row 0 being the eighth rank; no more
+	 * than eight characters each.
+	 */
+	private final char[][] rows = new char[8][8];
+	private final int[] rowLengths = new int[8];
+	private final StringBuilder fenBuilder = new StringBuilder(90);
+
+	/**
+	 * Start with an empty board.
+	 */
+	public IncrementalFen() {
+		for (int row = 0; row < 8; row++) {
+			rows[row][0] = '8';
+			rowLengths[row] = 1;
+		}
+	}
+
+	/**
+	 * Encode every row of a board, after it has been replaced as a whole.
+	 *
+	 * @param board
+	 *            an 8x8 board, see {@link FenCodec}
+	 */
+	public void setBoard(char[][] board) {
+		for (int row = 0; row < 8; row++) {
+			updateRow(board, row);
+		}
+	}
+
+	/**
+	 * Encode one row of a board again after squares in it have changed.
+	 *
+	 * @param board
+	 *            an 8x8 board, see {@link FenCodec}
+	 */
+	public void updateRow(char[][] board, int row) {
+		char[] encoded = rows[row];
+		int length = 0;
+		int blank = 0;
+		for (int column = 0; column < 8; column++) {
+			char c = board[row][column];
+			if (c == '0') {
+				blank++;
+			}
+			else {
+				if (blank > 0) {
+					encoded[length++] = (char) ('0' + blank);
+					blank = 0;
+				}
+				encoded[length++] = c;
+			}
+		}
+		if (blank > 0) {
+			encoded[length++] = (char) ('0' + blank);
+		}
+		rowLengths[row] = length;
+	}
+
+	/**
+	 * Encode every row of a snapshot, after the board has been replaced as a
+	 * whole.
+	 */
+	public void setBoard(BoardSnapshot board) {
+		setBoard(board.rows());
+	}
+
+	/**
+	 * Encode one row of a snapshot again after squares in it have changed.
+	 */
+	public void updateRow(BoardSnapshot board, int row) {
+		updateRow(board.rows(), row);
+	}
+
+	/**
+	 * Append the piece placement field, as last encoded.
+	 */
+	public void appendPlacement(StringBuilder out) {
+		for (int row = 0; row < 8; row++) {
+			if (row != 0) {
+				out.append('/');
+			}
+			out.append(rows[row], 0, rowLengths[row]);
+		}
+	}
+
+	/**
+	 * Create an FEN string with all six fields from the encoded rows, as
+	 * {@link FenCodec#formatBoard(char[][], boolean, int, int, int, int)}
+	 * does from the whole board.
+	 *
+	 * @param board
+	 *            the board the rows were encoded from; only read to check
+	 *            the castling rights and en passant square
+	 */
+	public String format(char[][] board, boolean whiteToMove, int castling,
+			int enPassant, int halfmoveClock, int fullmoveNumber) {
+		fenBuilder.setLength(0);
+		appendPlacement(fenBuilder);
+		FenCodec.appendState(fenBuilder, whiteToMove,
+				FenCodec.validCastling(board, castling),
+				FenCodec.validEnPassant(board, whiteToMove, enPassant),
+				halfmoveClock, fullmoveNumber);
+		return fenBuilder.toString();
+	}
+
+	/**
+	 * Create the FEN string of a snapshot from the encoded rows.
+	 *
+	 * @param board
+	 *            the snapshot the rows were encoded from
+	 */
+	public String format(BoardSnapshot board) {
+		return format(board.rows(), board.isWhiteToMove(),
+				board.getCastling(), board.getEnPassant(),
+				board.getHalfmoveClock(), board.getFullmoveNumber());
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of named positions by what is on the board, so that
+ * questions such as "which positions are KRP v KR" or "which have a white
+ * pawn on the seventh rank" are answered without reading any position.
+ *
+ * Positions are indexed two ways: by their material signature, the number
+ * of each kind of piece packed into a {@code long}, and by a posting list
+ * for every piece on every square, holding the ids of the positions with
+ * that piece there.
+ *
+ * @author Istvan Chung
+ */
+public final class MaterialIndex {
+	/**
+	 * Squares of each rank, indexed from 0 for the first rank.
+	 */
+	public static final long[] RANKS = new long[8];
+	/**
+	 * Squares of each file, indexed from 0 for the a-file.
+	 */
+	public static final long[] FILES = new long[8];
+
+	static {
+		for (int i = 0; i < 8; i++) {
+			RANKS[i] = 0xffL << (i * 8);
+			FILES[i] = 0x0101010101010101L << i;
+		}
+	}
+
+	private static final int PIECE_COUNT = Position.PIECES.length();
+
+	/**
+	 * Bits used for the count of one kind of piece in a signature.
+	 */
+	private static final int COUNT_BITS = 4;
+	private static final int MAX_COUNT = (1 << COUNT_BITS) - 1;
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] names = new String[16];
+	/**
+	 * Bitboards of each indexed position, {@link #PIECE_COUNT} per id.
+	 */
+	private long[] boards = new long[16 * PIECE_COUNT];
+	private long[] signatures = new long[16];
+	private int[] freeIds = new int[16];
+	private int freeCount = 0;
+	private int nextId = 0;
+
+	private final Map<Long, Set<String>> namesBySignature = new HashMap<Long, Set<String>>();
+	/**
+	 * Ids of the positions with each piece on each square, indexed by
+	 * {@code piece * 64 + square}; {@code null} if there are none.
+	 */
+	private final BitSet[] postings = new BitSet[PIECE_COUNT * 64];
+
+	/**
+	 * The material signature of a position: how many of each piece there are,
+	 * {@value #COUNT_BITS} bits per piece in the order of
+	 * {@link Position#PIECES}. Counts above {@value #MAX_COUNT} are stored as
+	 * {@value #MAX_COUNT}.
+	 */
+	public static long signature(Position position) {
+		long signature = 0;
+		for (int piece = 0; piece < PIECE_COUNT; piece++) {
+			long count = Math.min(position.count(piece), MAX_COUNT);
+			signature |= count << (piece * COUNT_BITS);
+		}
+		return signature;
+	}
+
+	/**
+	 * Parse a material signature written as the white pieces, {@code 'v'}, then
+	 * the black pieces, such as {@code "KRPvKR"}. Letters may be in either
+	 * case.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the signature is malformed
+	 */
+	public static long parseSignature(CharSequence text) {
+		long signature = 0;
+		int side = -1;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == 'v' || c == 'V') {
+				if (side == 6) {
+					throw new IllegalArgumentException("More than one 'v'");
+				}
+				side = 6;
+				continue;
+			}
+			int piece = Position.pieceIndex(Character.toUpperCase(c));
+			if (piece == Position.EMPTY) {
+				throw new IllegalArgumentException("Invalid character");
+			}
+			piece += Math.max(side, 0);
+			int shift = piece * COUNT_BITS;
+			if (((signature >>> shift) & MAX_COUNT) == MAX_COUNT) {
+				throw new IllegalArgumentException("Too many pieces");
+			}
+			signature += 1L << shift;
+		}
+		if (side != 6) {
+			throw new IllegalArgumentException("Missing 'v'");
+		}
+		return signature;
+	}
+
+	/**
+	 * Write a material signature as read by {@link #parseSignature}, with the
+	 * pieces of each side from most to least valuable.
+	 */
+	public static String formatSignature(long signature) {
+		StringBuilder text = new StringBuilder();
+		for (int piece = 0; piece < PIECE_COUNT; piece++) {
+			if (piece == 6) {
+				text.append('v');
+			}
+			long count = (signature >>> (piece * COUNT_BITS)) & MAX_COUNT;
+			for (int i = 0; i < count; i++) {
+				text.append(Character.toUpperCase(Position.PIECES.charAt(piece)));
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Index a position under a name, replacing any position indexed under it.
+	 * The position is not kept.
+	 */
+	public void add(String name, Position position) {
+		remove(name);
+		int id = allocateId();
+		ids.put(name, id);
+		names[id] = name;
+
+		long signature = signature(position);
+		signatures[id] = signature;
+		Set<String> same = namesBySignature.get(signature);
+		if (same == null) {
+			same = new HashSet<String>();
+			namesBySignature.put(signature, same);
+		}
+		same.add(name);
+
+		for (int piece = 0; piece < PIECE_COUNT; piece++) {
+			long bitboard = position.getBitboard(piece);
+			boards[id * PIECE_COUNT + piece] = bitboard;
+			for (long b = bitboard; b != 0; b &= b - 1) {
+				int slot = piece * 64 + Long.numberOfTrailingZeros(b);
+				if (postings[slot] == null) {
+					postings[slot] = new BitSet();
+				}
+				postings[slot].set(id);
+			}
+		}
+	}
+
+	private int allocateId() {
+		if (freeCount > 0) {
+			return freeIds[--freeCount];
+		}
+		if (nextId == names.length) {
+			names = Arrays.copyOf(names, nextId * 2);
+			signatures = Arrays.copyOf(signatures, nextId * 2);
+			boards = Arrays.copyOf(boards, nextId * 2 * PIECE_COUNT);
+		}
+		return nextId++;
+	}
+
+	/**
+	 * Stop indexing a name.
+	 *
+	 * @return whether it was indexed
+	 */
+	public boolean remove(String name) {
+		Integer boxed = ids.remove(name);
+		if (boxed == null) {
+			return false;
+		}
+		int id = boxed;
+		names[id] = null;
+
+		Set<String> same = namesBySignature.get(signatures[id]);
+		same.remove(name);
+		if (same.isEmpty()) {
+			namesBySignature.remove(signatures[id]);
+		}
+
+		for (int piece = 0; piece < PIECE_COUNT; piece++) {
+			long bitboard = boards[id * PIECE_COUNT + piece];
+			for (long b = bitboard; b != 0; b &= b - 1) {
+				postings[piece * 64 + Long.numberOfTrailingZeros(b)].clear(id);
+			}
+			boards[id * PIECE_COUNT + piece] = 0;
+		}
+
+		if (freeCount == freeIds.length) {
+			freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+		}
+		freeIds[freeCount++] = id;
+		return true;
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * @return the names of the positions with exactly this material, sorted
+	 *         by {@link NameIndex#ORDER}
+	 */
+	public List<String> withMaterial(long signature) {
+		Set<String> same = namesBySignature.get(signature);
+		if (same == null) {
+			return Collections.emptyList();
+		}
+		List<String> sorted = new ArrayList<String>(same);
+		Collections.sort(sorted, NameIndex.ORDER);
+		return sorted;
+	}
+
+	/**
+	 * Find the positions with pieces on given squares.
+	 *
+	 * @param masks
+	 *            squares for each piece, indexed as {@link Position#PIECES}.
+	 *            For each non-zero mask, a position matches only if at least
+	 *            one of those pieces stands on one of the squares; for
+	 *            example {@code masks[5] = RANKS[6]} asks for a white pawn on
+	 *            the seventh rank.
+	 * @return the names of the matching positions, sorted by
+	 *         {@link NameIndex#ORDER}
+	 */
+	public List<String> matching(long[] masks) {
+		if (masks.length != PIECE_COUNT) {
+			throw new IllegalArgumentException("Need one mask per piece");
+		}
+		BitSet matches = null;
+		for (int piece = 0; piece < PIECE_COUNT; piece++) {
+			if (masks[piece] == 0) {
+				continue;
+			}
+			BitSet any = new BitSet();
+			for (long b = masks[piece]; b != 0; b &= b - 1) {
+				BitSet posting = postings[piece * 64
+						+ Long.numberOfTrailingZeros(b)];
+				if (posting != null) {
+					any.or(posting);
+				}
+			}
+			if (matches == null) {
+				matches = any;
+			}
+			else {
+				matches.and(any);
+			}
+		}
+
+		List<String> found = new ArrayList<String>();
+		if (matches == null) {
+			found.addAll(ids.keySet());
+		}
+		else {
+			for (int id = matches.nextSetBit(0); id >= 0; id = matches
+					.nextSetBit(id + 1)) {
+				found.add(names[id]);
+			}
+		}
+		Collections.sort(found, NameIndex.ORDER);
+		return found;
+	}
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the paths whose speed matters, such
+ * as the FEN codec, drawing the board and the position index.
+ *
+ * Metrics are created once, usually as {@code static final} fields, and
+ * are recorded without locks: each update is a few atomic adds. While
+ * recording is disabled, which is the default, an update is a single read of
+ * a volatile flag, so instrumented code can be left in release builds.
+ *
+ * A timer measures an operation between {@link Timer#start()} and
+ * {@link Timer#stop(long)}. Durations go into power-of-two buckets, from
+ * which approximate percentiles are reported. If an
+ * {@link AllocationCounter} is installed, a timer also records how many
+ * bytes the thread allocated during the operation.
+ *
+ * @author Istvan Chung
+ */
+public final class Metrics {
+	private Metrics() {
+	}
+
+	/**
+	 * Tells how many bytes the calling thread has allocated so far. The
+	 * platform provides this in different ways, so it is plugged in with
+	 * {@link Metrics#setAllocationCounter(AllocationCounter)}.
+	 */
+	public interface AllocationCounter {
+		/**
+		 * @return the bytes allocated by the current thread since some fixed
+		 *         point; only differences between calls are used
+		 */
+		long getAllocatedBytes();
+	}
+
+	private static volatile boolean enabled;
+	private static volatile AllocationCounter allocationCounter;
+
+	/**
+	 * Every metric created, in the order they were created. Written only
+	 * when a metric is created, so iterating it needs no lock.
+	 */
+	private static final List<Metric> metrics = new CopyOnWriteArrayList<Metric>();
+
+	private static abstract class Metric {
+		final String name;
+
+		Metric(String name) {
+			this.name = name;
+		}
+
+		abstract void reset();
+
+		abstract void report(Appendable out) throws IOException;
+	}
+
+	/**
+	 * Counts events, such as cache misses or positions imported.
+	 */
+	public static final class Counter extends Metric {
+		private final AtomicLong count = new AtomicLong();
+
+		Counter(String name) {
+			super(name);
+		}
+
+		public void increment() {
+			if (enabled) {
+				count.incrementAndGet();
+			}
+		}
+
+		public void add(long n) {
+			if (enabled) {
+				count.addAndGet(n);
+			}
+		}
+
+		public long get() {
+			return count.get();
+		}
+
+		@Override
+		void reset() {
+			count.set(0);
+		}
+
+		@Override
+		void report(Appendable out) throws IOException {
+			out.append(String.format(Locale.US, "%-20s %10d%n", name,
+					count.get()));
+		}
+	}
+
+	/**
+	 * Counts an operation and records how long it takes, and optionally how
+	 * much it allocates.
+	 */
+	public static final class Timer extends Metric {
+		/**
+		 * Bucket {@code i} counts the durations of {@code i} significant
+		 * bits, that is from 2<sup>i-1</sup> to 2<sup>i</sup> - 1 ns.
+		 */
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLong allocated = new AtomicLong();
+		/**
+		 * Number of operations for which {@link #allocated} was measured.
+		 */
+		private final AtomicLong allocationSamples = new AtomicLong();
+		/**
+		 * Allocation count of each thread when it started the operation.
+		 * Only one operation per thread can be measured at a time, so a
+		 * timer should not be started again before it is stopped.
+		 */
+		private final ThreadLocal<long[]> allocationStart = new ThreadLocal<long[]>() {
+			@Override
+			protected long[] initialValue() {
+				return new long[1];
+			}
+		};
+
+		Timer(String name) {
+			super(name);
+		}
+
+		/**
+		 * Begin timing an operation.
+		 *
+		 * @return the value to pass to {@link #stop(long)}, or 0 if recording
+		 *         is disabled
+		 */
+		public long start() {
+			if (!enabled) {
+				return 0;
+			}
+			AllocationCounter counter = allocationCounter;
+			if (counter != null) {
+				allocationStart.get()[0] = counter.getAllocatedBytes();
+			}
+			// 0 means not started.
+			return System.nanoTime() | 1;
+		}
+
+		/**
+		 * Finish timing an operation.
+		 *
+		 * @param start
+		 *            the value returned by {@link #start()}
+		 */
+		public void stop(long start) {
+			if (start == 0) {
+				return;
+			}
+			record(System.nanoTime() - start);
+			AllocationCounter counter = allocationCounter;
+			if (counter != null) {
+				long bytes = counter.getAllocatedBytes()
+						- allocationStart.get()[0];
+				// Negative if the counter was replaced or wrapped around.
+				if (bytes >= 0) {
+					allocated.addAndGet(bytes);
+					allocationSamples.incrementAndGet();
+				}
+			}
+		}
+
+		/**
+		 * Record a duration measured some other way.
+		 */
+		public void record(long nanos) {
+			if (!enabled) {
+				return;
+			}
+			if (nanos < 0) {
+				nanos = 0;
+			}
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return the mean duration in nanoseconds, or 0 if nothing has been
+		 *         recorded
+		 */
+		public long getMeanNanos() {
+			long n = count.get();
+			return n == 0 ? 0 : totalNanos.get() / n;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * @return an upper bound, within a factor of two, on the duration
+		 *         below which a fraction of the operations finished, or 0 if
+		 *         nothing has been recorded
+		 */
+		public long getPercentileNanos(double fraction) {
+			long[] counts = new long[64];
+			long n = 0;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+				n += counts[i];
+			}
+			long rank = (long) Math.ceil(fraction * n);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					return i == 0 ? 0 : Math.min((1L << i) - 1, maxNanos.get());
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @return the mean bytes allocated per operation, or -1 if no
+		 *         {@link AllocationCounter} was installed while recording
+		 */
+		public long getMeanAllocatedBytes() {
+			long n = allocationSamples.get();
+			return n == 0 ? -1 : allocated.get() / n;
+		}
+
+		@Override
+		void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+			count.set(0);
+			totalNanos.set(0);
+			maxNanos.set(0);
+			allocated.set(0);
+			allocationSamples.set(0);
+		}
+
+		@Override
+		void report(Appendable out) throws IOException {
+			long bytes = getMeanAllocatedBytes();
+			out.append(String.format(Locale.US,
+					"%-20s %10d %9.1f %9.1f %9.1f %9.1f %9.1f %9s%n", name,
+					getCount(), micros(getMeanNanos()),
+					micros(getPercentileNanos(0.5)),
+					micros(getPercentileNanos(0.9)),
+					micros(getPercentileNanos(0.99)), micros(getMaxNanos()),
+					bytes < 0 ? "-" : Long.toString(bytes)));
+		}
+
+		private static double micros(long nanos) {
+			return nanos / 1000.0;
+		}
+	}
+
+	/**
+	 * Create a counter. Names are only used in reports and need not be
+	 * unique.
+	 */
+	public static Counter counter(String name) {
+		Counter counter = new Counter(name);
+		metrics.add(counter);
+		return counter;
+	}
+
+	/**
+	 * Create a timer. Names are only used in reports and need not be unique.
+	 */
+	public static Timer timer(String name) {
+		Timer timer = new Timer(name);
+		metrics.add(timer);
+		return timer;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Start or stop recording. Recorded values are kept until
+	 * {@link #reset()}.
+	 */
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	/**
+	 * Install a source of allocation counts, or remove it with {@code null}.
+	 * Counting allocations may itself slow allocation down, so it is best
+	 * only installed while recording.
+	 */
+	public static void setAllocationCounter(AllocationCounter counter) {
+		allocationCounter = counter;
+	}
+
+	/**
+	 * Clear every metric. Operations in progress may still be recorded
+	 * afterwards.
+	 */
+	public static void reset() {
+		for (Metric metric : metrics) {
+			metric.reset();
+		}
+	}
+
+	/**
+	 * Write a table of every metric: timers with their count, mean,
+	 * percentiles and maximum in microseconds and their mean bytes allocated
+	 * per operation, followed by counters. The values of a metric being
+	 * updated meanwhile may be slightly inconsistent with each other.
+	 *
+	 * @throws IOException
+	 */
+	public static void report(Appendable out) throws IOException {
+		out.append(String.format(Locale.US,
+				"%-20s %10s %9s %9s %9s %9s %9s %9s%n", "timer", "count",
+				"mean us", "p50 us", "p90 us", "p99 us", "max us", "B/op"));
+		for (Metric metric : metrics) {
+			if (metric instanceof Timer) {
+				metric.report(out);
+			}
+		}
+		out.append(String.format(Locale.US, "%n%-20s %10s%n", "counter",
+				"count"));
+		for (Metric metric : metrics) {
+			if (metric instanceof Counter) {
+				metric.report(out);
+			}
+		}
+	}
+
+	/**
+	 * @return the table written by {@link #report(Appendable)}
+	 */
+	public static String report() {
+		StringBuilder out = new StringBuilder(1024);
+		try {
+			report(out);
+		}
+		catch (IOException e) {
+			// A StringBuilder does not throw.
+			throw new AssertionError(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Write the table of {@link #report(Appendable)} to a file, replacing
+	 * it.
+	 *
+	 * @throws IOException
+	 */
+	public static void dump(File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			report(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Moves packed into an {@code int}, so that move lists are plain arrays.
+ *
+ * <pre>
+ * bits  0-5   from square
+ * bits  6-11  to square
+ * bits 12-15  promotion piece index for the white pieces, 0 if none
+ * bit  16     en passant capture
+ * bit  17     castling, encoded as the king's move
+ * bit  18     pawn double step
+ * </pre>
+ *
+ * @author Istvan Chung
+ */
+public final class Move {
+	private Move() {
+	}
+
+	public static final int EN_PASSANT = 1 << 16;
+	public static final int CASTLING = 1 << 17;
+	public static final int DOUBLE_PUSH = 1 << 18;
+
+	/**
+	 * Not a move; returned where no move was found.
+	 */
+	public static final int NONE = 0;
+
+	/**
+	 * @param promotion
+	 *            the index of the white piece promoted to, whichever side is
+	 *            moving, or 0
+	 * @param flags
+	 *            any of {@link #EN_PASSANT}, {@link #CASTLING} and
+	 *            {@link #DOUBLE_PUSH}
+	 */
+	public static int create(int from, int to, int promotion, int flags) {
+		return from | to << 6 | promotion << 12 | flags;
+	}
+
+	public static int from(int move) {
+		return move & 63;
+	}
+
+	public static int to(int move) {
+		return move >>> 6 & 63;
+	}
+
+	/**
+	 * @return the index of the white piece promoted to, or 0 if the move is
+	 *         not a promotion
+	 */
+	public static int promotion(int move) {
+		return move >>> 12 & 15;
+	}
+
+	public static boolean isEnPassant(int move) {
+		return (move & EN_PASSANT) != 0;
+	}
+
+	public static boolean isCastling(int move) {
+		return (move & CASTLING) != 0;
+	}
+
+	public static boolean isDoublePush(int move) {
+		return (move & DOUBLE_PUSH) != 0;
+	}
+
+	/**
+	 * Write a move in long algebraic notation as used by UCI, such as
+	 * {@code "e2e4"} or {@code "e7e8q"}.
+	 */
+	public static String toUci(int move) {
+		StringBuilder uci = new StringBuilder(5);
+		appendSquare(uci, from(move));
+		appendSquare(uci, to(move));
+		if (promotion(move) != 0) {
+			uci.append(Position.PIECES.charAt(promotion(move) + 6));
+		}
+		return uci.toString();
+	}
+
+	private static void appendSquare(StringBuilder out, int square) {
+		out.append((char) ('a' + (square & 7)));
+		out.append((char) ('1' + (square >>> 3)));
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Legal move generation on a {@link Position}, and making and unmaking
+ * moves in place.
+ *
+ * Moves are generated a piece type at a time from the {@link Attacks}
+ * tables, then each is made, kept if it does not leave the mover's king
+ * attacked, and unmade. Nothing is allocated: moves are written to a
+ * caller-supplied array and the state needed to unmake a move is returned
+ * packed into a {@code long}.
+ *
+ * To set up a position edited as a {@code char[][]}, convert it with
+ * {@link Position#fromCharArray(char[][], boolean)}.
+ *
+ * @author Istvan Chung
+ */
+public final class MoveGenerator {
+	private MoveGenerator() {
+	}
+
+	/**
+	 * Enough room for the moves of any position. The most known in a legal
+	 * position is 218.
+	 */
+	public static final int MAX_MOVES = 256;
+
+	private static final long RANK_1 = 0xffL;
+	private static final long RANK_3 = 0xffL << 16;
+	private static final long RANK_6 = 0xffL << 40;
+	private static final long RANK_8 = 0xffL << 56;
+
+	private static final int E1 = 4, E8 = 60;
+
+	/**
+	 * Set in the state returned by {@link #makeMove(Position, int)} when the
+	 * fullmove number was already {@link Position#MAX_CLOCK} and was not
+	 * incremented.
+	 */
+	private static final long FULLMOVE_KEPT = 1L << 15;
+
+	/**
+	 * Castling rights kept when a piece moves from or to each square, so that
+	 * moving a king or rook, or capturing a rook, clears the right.
+	 */
+	private static final int[] CASTLING_KEPT = new int[64];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			CASTLING_KEPT[square] = Position.ALL_CASTLING;
+		}
+		CASTLING_KEPT[0] &= ~Position.WHITE_QUEENSIDE;
+		CASTLING_KEPT[7] &= ~Position.WHITE_KINGSIDE;
+		CASTLING_KEPT[E1] &= ~(Position.WHITE_KINGSIDE | Position.WHITE_QUEENSIDE);
+		CASTLING_KEPT[56] &= ~Position.BLACK_QUEENSIDE;
+		CASTLING_KEPT[63] &= ~Position.BLACK_KINGSIDE;
+		CASTLING_KEPT[E8] &= ~(Position.BLACK_KINGSIDE | Position.BLACK_QUEENSIDE);
+	}
+
+	/**
+	 * Generate the legal moves in a position.
+	 *
+	 * @param moves
+	 *            receives the moves; {@link #MAX_MOVES} long is always
+	 *            enough
+	 * @return the number of moves
+	 */
+	public static int generate(Position position, int[] moves) {
+		int count = generatePseudoLegal(position, moves);
+		boolean white = position.isWhiteToMove();
+		int legal = 0;
+		for (int i = 0; i < count; i++) {
+			int move = moves[i];
+			long undo = makeMove(position, move);
+			if (!isKingAttacked(position, white)) {
+				moves[legal++] = move;
+			}
+			unmakeMove(position, move, undo);
+		}
+		return legal;
+	}
+
+	/**
+	 * @return whether the side to move is in check
+	 */
+	public static boolean inCheck(Position position) {
+		return isKingAttacked(position, position.isWhiteToMove());
+	}
+
+	/**
+	 * @return whether a king of the given side stands on an attacked square
+	 */
+	static boolean isKingAttacked(Position position, boolean white) {
+		long kings = position.getBitboard(white ? Position.WHITE_KING
+				: Position.BLACK_KING);
+		for (; kings != 0; kings &= kings - 1) {
+			if (Attacks.isAttacked(position,
+					Long.numberOfTrailingZeros(kings), !white)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Generate the moves that follow the rules for how each piece moves,
+	 * including that castling may not start from or pass through check, but
+	 * may leave the mover in check.
+	 */
+	private static int generatePseudoLegal(Position position, int[] moves) {
+		boolean white = position.isWhiteToMove();
+		int base = white ? Position.WHITE_KING : Position.BLACK_KING;
+		long own = white ? position.getWhiteOccupancy() : position
+				.getBlackOccupancy();
+		long enemy = white ? position.getBlackOccupancy() : position
+				.getWhiteOccupancy();
+		long occupied = own | enemy;
+		long empty = ~occupied;
+		int count = 0;
+
+		// Pawns
+		long pawns = position.getBitboard(base + 5);
+		long promotionRank = white ? RANK_8 : RANK_1;
+		int forward = white ? 8 : -8;
+		long single = (white ? pawns << 8 : pawns >>> 8) & empty;
+		long twice = white ? (single & RANK_3) << 8 & empty
+				: (single & RANK_6) >>> 8 & empty;
+		for (long b = single; b != 0; b &= b - 1) {
+			int to = Long.numberOfTrailingZeros(b);
+			count = addPawnMove(moves, count, to - forward, to, promotionRank);
+		}
+		for (long b = twice; b != 0; b &= b - 1) {
+			int to = Long.numberOfTrailingZeros(b);
+			moves[count++] = Move.create(to - 2 * forward, to, 0,
+					Move.DOUBLE_PUSH);
+		}
+		long[] pawnAttacks = white ? Attacks.WHITE_PAWN : Attacks.BLACK_PAWN;
+		for (long b = pawns; b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			for (long t = pawnAttacks[from] & enemy; t != 0; t &= t - 1) {
+				count = addPawnMove(moves, count, from,
+						Long.numberOfTrailingZeros(t), promotionRank);
+			}
+		}
+		int enPassant = position.getEnPassant();
+		if (enPassant != Position.NO_SQUARE && (occupied & 1L << enPassant) == 0) {
+			long[] reverse = white ? Attacks.BLACK_PAWN : Attacks.WHITE_PAWN;
+			for (long b = reverse[enPassant] & pawns; b != 0; b &= b - 1) {
+				moves[count++] = Move.create(Long.numberOfTrailingZeros(b),
+						enPassant, 0, Move.EN_PASSANT);
+			}
+		}
+
+		// Pieces
+		long targets = ~own;
+		for (long b = position.getBitboard(base + 4); b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			count = addMoves(moves, count, from, Attacks.KNIGHT[from] & targets);
+		}
+		for (long b = position.getBitboard(base + 3); b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			count = addMoves(moves, count, from, Attacks.bishop(from, occupied)
+					& targets);
+		}
+		for (long b = position.getBitboard(base + 2); b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			count = addMoves(moves, count, from, Attacks.rook(from, occupied)
+					& targets);
+		}
+		for (long b = position.getBitboard(base + 1); b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			count = addMoves(moves, count, from, Attacks.queen(from, occupied)
+					& targets);
+		}
+		for (long b = position.getBitboard(base); b != 0; b &= b - 1) {
+			int from = Long.numberOfTrailingZeros(b);
+			count = addMoves(moves, count, from, Attacks.KING[from] & targets);
+		}
+
+		// Castling
+		int castling = position.getCastling();
+		int king = white ? E1 : E8;
+		int rooks = base + 2;
+		if ((castling & (white ? Position.WHITE_KINGSIDE
+				| Position.WHITE_QUEENSIDE : Position.BLACK_KINGSIDE
+				| Position.BLACK_QUEENSIDE)) != 0
+				&& (position.getBitboard(base) & 1L << king) != 0
+				&& !Attacks.isAttacked(position, king, !white)) {
+			if ((castling & (white ? Position.WHITE_KINGSIDE
+					: Position.BLACK_KINGSIDE)) != 0
+					&& (position.getBitboard(rooks) & 1L << (king + 3)) != 0
+					&& (occupied & (3L << (king + 1))) == 0
+					&& !Attacks.isAttacked(position, king + 1, !white)) {
+				moves[count++] = Move.create(king, king + 2, 0, Move.CASTLING);
+			}
+			if ((castling & (white ? Position.WHITE_QUEENSIDE
+					: Position.BLACK_QUEENSIDE)) != 0
+					&& (position.getBitboard(rooks) & 1L << (king - 4)) != 0
+					&& (occupied & (7L << (king - 3))) == 0
+					&& !Attacks.isAttacked(position, king - 1, !white)) {
+				moves[count++] = Move.create(king, king - 2, 0, Move.CASTLING);
+			}
+		}
+		return count;
+	}
+
+	private static int addMoves(int[] moves, int count, int from, long targets) {
+		for (; targets != 0; targets &= targets - 1) {
+			moves[count++] = Move.create(from,
+					Long.numberOfTrailingZeros(targets), 0, 0);
+		}
+		return count;
+	}
+
+	private static int addPawnMove(int[] moves, int count, int from, int to,
+			long promotionRank) {
+		if ((promotionRank & 1L << to) == 0) {
+			moves[count++] = Move.create(from, to, 0, 0);
+		}
+		else {
+			for (int piece = Position.WHITE_QUEEN; piece <= Position.WHITE_KNIGHT; piece++) {
+				moves[count++] = Move.create(from, to, piece, 0);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Make a move generated for a position.
+	 *
+	 * @return the state needed by {@link #unmakeMove(Position, int, long)}
+	 */
+	public static long makeMove(Position position, int move) {
+		boolean white = position.isWhiteToMove();
+		int base = white ? Position.WHITE_KING : Position.BLACK_KING;
+		int from = Move.from(move), to = Move.to(move);
+		int piece = position.getPieceIndex(from);
+
+		int captured;
+		if (Move.isEnPassant(move)) {
+			captured = Position.BLACK_PAWN - base;
+			position.removePiece(captured, white ? to - 8 : to + 8);
+		}
+		else {
+			captured = position.getPieceIndex(to);
+			if (captured != Position.EMPTY) {
+				position.removePiece(captured, to);
+			}
+		}
+		long undo = position.getCastling()
+				| (long) (position.getEnPassant() + 1) << 4
+				| (long) (captured + 1) << 11
+				| (long) position.getHalfmoveClock() << 16;
+
+		position.removePiece(piece, from);
+		int promotion = Move.promotion(move);
+		position.addPiece(promotion != 0 ? base + promotion : piece, to);
+		if (Move.isCastling(move)) {
+			int rook = base + 2;
+			if (to > from) {
+				position.removePiece(rook, from + 3);
+				position.addPiece(rook, from + 1);
+			}
+			else {
+				position.removePiece(rook, from - 4);
+				position.addPiece(rook, from - 1);
+			}
+		}
+
+		position.setCastling(position.getCastling() & CASTLING_KEPT[from]
+				& CASTLING_KEPT[to]);
+		position.setEnPassant(Move.isDoublePush(move) ? (from + to) >>> 1
+				: Position.NO_SQUARE);
+		position.setHalfmoveClock(piece == base + 5
+				|| captured != Position.EMPTY ? 0 : Math.min(
+				position.getHalfmoveClock() + 1, Position.MAX_CLOCK));
+		if (!white) {
+			if (position.getFullmoveNumber() < Position.MAX_CLOCK) {
+				position.setFullmoveNumber(position.getFullmoveNumber() + 1);
+			}
+			else {
+				undo |= FULLMOVE_KEPT;
+			}
+		}
+		position.setWhiteToMove(!white);
+		return undo;
+	}
+
+	/**
+	 * Take back the last move made with {@link #makeMove(Position, int)}.
+	 *
+	 * @param undo
+	 *            the value it returned
+	 */
+	public static void unmakeMove(Position position, int move, long undo) {
+		boolean white = !position.isWhiteToMove();
+		int base = white ? Position.WHITE_KING : Position.BLACK_KING;
+		int from = Move.from(move), to = Move.to(move);
+		position.setWhiteToMove(white);
+		if (!white && (undo & FULLMOVE_KEPT) == 0) {
+			position.setFullmoveNumber(position.getFullmoveNumber() - 1);
+		}
+
+		int piece = Move.promotion(move) != 0 ? base + 5 : position
+				.getPieceIndex(to);
+		position.removePiece(position.getPieceIndex(to), to);
+		position.addPiece(piece, from);
+		if (Move.isCastling(move)) {
+			int rook = base + 2;
+			if (to > from) {
+				position.removePiece(rook, from + 1);
+				position.addPiece(rook, from + 3);
+			}
+			else {
+				position.removePiece(rook, from - 1);
+				position.addPiece(rook, from - 4);
+			}
+		}
+
+		int captured = (int) (undo >>> 11 & 15) - 1;
+		if (captured != Position.EMPTY) {
+			position.addPiece(captured, Move.isEnPassant(move) ? (white ? to - 8
+					: to + 8) : to);
+		}
+		position.setCastling((int) (undo & 15));
+		position.setEnPassant((int) (undo >>> 4 & 127) - 1);
+		position.setHalfmoveClock((int) (undo >>> 16));
+	}
+}
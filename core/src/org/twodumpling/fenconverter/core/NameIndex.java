@@ -0,0 +1,254 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A set of names kept in a sorted array, so that all names starting with a
+ * prefix form one range found by binary search. Names are ordered and
+ * matched ignoring case.
+ *
+ * Adding or removing a name shifts the names after it, which is cheap next
+ * to the disk write that goes with it; a whole set of names is loaded at
+ * once with {@link #addAll(Collection)}.
+ *
+ * @author Istvan Chung
+ */
+public final class NameIndex {
+	/**
+	 * The order of the names: case-insensitive, with names differing only in
+	 * case in their natural order.
+	 */
+	public static final Comparator<String> ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String a, String b) {
+			int n = Math.min(a.length(), b.length());
+			for (int i = 0; i < n; i++) {
+				int c = fold(a.charAt(i)) - fold(b.charAt(i));
+				if (c != 0) {
+					return c;
+				}
+			}
+			if (a.length() != b.length()) {
+				return a.length() - b.length();
+			}
+			return a.compareTo(b);
+		}
+	};
+
+	private String[] names = new String[16];
+	private int size = 0;
+
+	/**
+	 * Fold case the same way as {@link String#CASE_INSENSITIVE_ORDER}.
+	 */
+	private static char fold(char c) {
+		if (c < 128) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Compare the start of a name with a prefix.
+	 *
+	 * @return zero if the name starts with the prefix, otherwise the sign of
+	 *         the comparison of the name with the prefix
+	 */
+	private static int comparePrefix(String name, String prefix) {
+		int n = Math.min(name.length(), prefix.length());
+		for (int i = 0; i < n; i++) {
+			int c = fold(name.charAt(i)) - fold(prefix.charAt(i));
+			if (c != 0) {
+				return c;
+			}
+		}
+		return name.length() < prefix.length() ? -1 : 0;
+	}
+
+	/**
+	 * @return the index of {@code name}, or {@code -(insertion point) - 1}
+	 */
+	private int find(String name) {
+		return Arrays.binarySearch(names, 0, size, name, ORDER);
+	}
+
+	/**
+	 * Add a name if it is not already present.
+	 *
+	 * @return whether the name was added
+	 */
+	public boolean add(String name) {
+		int i = find(name);
+		if (i >= 0) {
+			return false;
+		}
+		i = -i - 1;
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+		}
+		System.arraycopy(names, i, names, i + 1, size - i);
+		names[i] = name;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Add many names at once: the new names are sorted among themselves and
+	 * merged in, rather than shifting the array for each, so adding a batch
+	 * takes a binary search per name and one pass of copying.
+	 */
+	public void addAll(Collection<String> toAdd) {
+		String[] added = toAdd.toArray(new String[toAdd.size()]);
+		Arrays.sort(added, ORDER);
+		if (size + added.length > names.length) {
+			names = Arrays.copyOf(names,
+					Math.max(names.length * 2, size + added.length));
+		}
+		// Merge from the back, so that nothing is overwritten before it
+		// has been moved, moving each run of old names in one copy.
+		boolean duplicates = false;
+		int i = size - 1, j = added.length - 1, k = size + added.length - 1;
+		while (j >= 0) {
+			int at = Arrays.binarySearch(names, 0, i + 1, added[j], ORDER);
+			if (at >= 0) {
+				duplicates = true;
+				at++;
+			}
+			else {
+				at = -at - 1;
+			}
+			int count = i + 1 - at;
+			System.arraycopy(names, at, names, k - count + 1, count);
+			k -= count;
+			i = at - 1;
+			duplicates |= j > 0 && added[j].equals(added[j - 1]);
+			names[k--] = added[j--];
+		}
+		size += added.length;
+		if (duplicates) {
+			int kept = 0;
+			for (i = 0; i < size; i++) {
+				if (kept == 0 || !names[kept - 1].equals(names[i])) {
+					names[kept++] = names[i];
+				}
+			}
+			Arrays.fill(names, kept, size, null);
+			size = kept;
+		}
+	}
+
+	/**
+	 * Remove a name.
+	 *
+	 * @return whether the name was present
+	 */
+	public boolean remove(String name) {
+		int i = find(name);
+		if (i < 0) {
+			return false;
+		}
+		System.arraycopy(names, i + 1, names, i, size - i - 1);
+		names[--size] = null;
+		return true;
+	}
+
+	public boolean contains(String name) {
+		return find(name) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the name at a position in sorted order
+	 */
+	public String get(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException(Integer.toString(i));
+		}
+		return names[i];
+	}
+
+	/**
+	 * @return the position of the first name at or after {@code prefix}
+	 */
+	public int lowerBound(String prefix) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (comparePrefix(names[mid], prefix) < 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the position after the last name starting with {@code prefix}
+	 */
+	public int upperBound(String prefix) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (comparePrefix(names[mid], prefix) <= 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the number of names starting with {@code prefix}
+	 */
+	public int count(String prefix) {
+		return upperBound(prefix) - lowerBound(prefix);
+	}
+
+	/**
+	 * Get one page of the names starting with {@code prefix}, in order.
+	 *
+	 * @param offset
+	 *            how many matching names to skip
+	 * @param limit
+	 *            the most names to return
+	 */
+	public List<String> range(String prefix, int offset, int limit) {
+		int from = lowerBound(prefix) + Math.max(offset, 0);
+		int to = Math.min(upperBound(prefix), from + Math.max(limit, 0));
+		List<String> page = new ArrayList<String>(Math.max(to - from, 0));
+		for (int i = from; i < to; i++) {
+			page.add(names[i]);
+		}
+		return page;
+	}
+}
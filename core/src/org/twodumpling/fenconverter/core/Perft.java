@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth, the
+ * standard test of a {@link MoveGenerator} against published counts.
+ *
+ * @author Istvan Chung
+ */
+public final class Perft {
+	private Perft() {
+	}
+
+	/**
+	 * Count the nodes on one thread.
+	 *
+	 * @param position
+	 *            the root; it is left as it was
+	 */
+	public static long count(Position position, int depth) {
+		if (depth <= 0) {
+			return 1;
+		}
+		return count(position, depth, new int[depth + 1][MoveGenerator.MAX_MOVES]);
+	}
+
+	private static long count(Position position, int depth, int[][] buffers) {
+		int[] moves = buffers[depth];
+		int n = MoveGenerator.generate(position, moves);
+		if (depth == 1) {
+			return n;
+		}
+		long nodes = 0;
+		for (int i = 0; i < n; i++) {
+			long undo = MoveGenerator.makeMove(position, moves[i]);
+			nodes += count(position, depth - 1, buffers);
+			MoveGenerator.unmakeMove(position, moves[i], undo);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Count the nodes with the subtree of each root move counted as a
+	 * separate task.
+	 *
+	 * @param position
+	 *            the root; it is not changed
+	 * @param executor
+	 *            runs the subtree counts
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for the counts
+	 */
+	public static long count(Position position, int depth,
+			ExecutorService executor) throws InterruptedException {
+		if (depth <= 1) {
+			return count(new Position(position), depth);
+		}
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		Position root = new Position(position);
+		int n = MoveGenerator.generate(root, moves);
+		List<Subtree> subtrees = new ArrayList<Subtree>(n);
+		for (int i = 0; i < n; i++) {
+			Position child = new Position(root);
+			MoveGenerator.makeMove(child, moves[i]);
+			subtrees.add(new Subtree(child, depth - 1));
+		}
+		long nodes = 0;
+		for (Future<Long> subtree : executor.invokeAll(subtrees)) {
+			try {
+				nodes += subtree.get();
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return nodes;
+	}
+
+	private static final class Subtree implements Callable<Long> {
+		private final Position position;
+		private final int depth;
+
+		Subtree(Position position, int depth) {
+			this.position = position;
+			this.depth = depth;
+		}
+
+		@Override
+		public Long call() {
+			return count(position, depth);
+		}
+	}
+}
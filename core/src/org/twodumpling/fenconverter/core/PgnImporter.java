@@ -0,0 +1,303 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Saves positions from the games in a PGN file.
+ *
+ * Positions are read with a {@link PgnReader} and saved with
+ * {@link SavedPositions#saveAll(Map)} a batch at a time. The positions of a
+ * batch are copied into a fixed pool that is reused for the next batch, so
+ * the importer itself holds at most one batch however large the file is.
+ *
+ * Every position saved also adds its name to the in-memory indexes of
+ * {@link SavedPositions} (the name index, the material index and the table
+ * of names by hash), so the heap used by an import is bounded by the limit
+ * on the number of positions saved, passed to
+ * {@link #importGames(Reader, String, Selector, long)}. Once the limit is
+ * reached, the rest of the file is not read. {@link #EVERY_PLY} saves about
+ * 80 positions for a typical game; {@link #everyNthPly(int)} saves fewer.
+ *
+ * Each position is named after its game, as
+ * {@code "<prefix> #<game> <White>-<Black> ply <ply>"}, so importing the
+ * same file again replaces the positions saved the first time.
+ *
+ * @author Istvan Chung
+ */
+public final class PgnImporter {
+	/**
+	 * Default number of positions saved at a time.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	/**
+	 * Chooses which positions of each game to save.
+	 */
+	public interface Selector {
+		/**
+		 * @param reader
+		 *            positioned at a candidate, with its game's tags and ply
+		 *            available
+		 * @return whether to save the current position
+		 */
+		boolean select(PgnReader reader);
+	}
+
+	/**
+	 * Saves every position, including the starting position of each game.
+	 */
+	public static final Selector EVERY_PLY = new Selector() {
+		@Override
+		public boolean select(PgnReader reader) {
+			return true;
+		}
+	};
+
+	/**
+	 * Saves every {@code interval}th position of each game, leaving out the
+	 * starting position.
+	 *
+	 * @param interval
+	 *            the number of plies between the positions saved
+	 */
+	public static Selector everyNthPly(final int interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Interval must be positive");
+		}
+		return new Selector() {
+			@Override
+			public boolean select(PgnReader reader) {
+				int ply = reader.getPly();
+				return ply > 0 && ply % interval == 0;
+			}
+		};
+	}
+
+	/**
+	 * Counts of a finished import.
+	 */
+	public static final class Result {
+		private final int games;
+		private final int skippedGames;
+		private final long saved;
+		private final boolean limitReached;
+
+		Result(int games, int skippedGames, long saved, boolean limitReached) {
+			this.games = games;
+			this.skippedGames = skippedGames;
+			this.saved = saved;
+			this.limitReached = limitReached;
+		}
+
+		/**
+		 * @return the number of games read, including skipped games
+		 */
+		public int getGames() {
+			return games;
+		}
+
+		/**
+		 * @return the number of games given up because of a bad move or
+		 *         {@code FEN} tag; positions before the problem are saved
+		 */
+		public int getSkippedGames() {
+			return skippedGames;
+		}
+
+		public long getSaved() {
+			return saved;
+		}
+
+		/**
+		 * @return whether the import stopped at its limit, leaving the rest
+		 *         of the file unread
+		 */
+		public boolean isLimitReached() {
+			return limitReached;
+		}
+
+		@Override
+		public String toString() {
+			return saved + " positions from " + games + " games, "
+					+ skippedGames + " skipped"
+					+ (limitReached ? ", stopped at the limit" : "");
+		}
+	}
+
+	private final SavedPositions saved;
+	private final Position[] pool;
+	private final Map<String, Position> batch;
+
+	public PgnImporter(SavedPositions saved) {
+		this(saved, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the number of positions saved at a time
+	 */
+	public PgnImporter(SavedPositions saved, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.saved = saved;
+		pool = new Position[batchSize];
+		for (int i = 0; i < batchSize; i++) {
+			pool[i] = new Position();
+		}
+		batch = new LinkedHashMap<String, Position>(batchSize * 2);
+	}
+
+	/**
+	 * Import all the selected positions of the games read from {@code in},
+	 * which is closed afterwards.
+	 *
+	 * @param prefix
+	 *            starts the name of every position, such as the name of the
+	 *            file; may be empty
+	 * @param selector
+	 *            chooses the positions to save, for example
+	 *            {@link #EVERY_PLY}
+	 * @throws IOException
+	 */
+	public Result importGames(Reader in, String prefix, Selector selector)
+			throws IOException {
+		return importGames(in, prefix, selector, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Import the selected positions of the games read from {@code in},
+	 * which is closed afterwards, stopping after a number of positions.
+	 *
+	 * @param prefix
+	 *            starts the name of every position, such as the name of the
+	 *            file; may be empty
+	 * @param selector
+	 *            chooses the positions to save, for example
+	 *            {@link #EVERY_PLY}
+	 * @param limit
+	 *            the most positions to save
+	 * @throws IOException
+	 */
+	public Result importGames(Reader in, String prefix, Selector selector,
+			long limit) throws IOException {
+		PgnReader reader = new PgnReader(in);
+		long count = 0;
+		boolean limitReached = false;
+		try {
+			StringBuilder name = new StringBuilder(64);
+			while (reader.next()) {
+				if (!selector.select(reader)) {
+					continue;
+				}
+				if (count == limit) {
+					limitReached = true;
+					break;
+				}
+				name.setLength(0);
+				if (prefix.length() > 0) {
+					name.append(prefix).append(' ');
+				}
+				name.append('#').append(reader.getGame()).append(' ');
+				appendTag(name, reader, "White");
+				name.append('-');
+				appendTag(name, reader, "Black");
+				name.append(" ply ").append(reader.getPly());
+
+				// A name repeated within a batch keeps its pooled position,
+				// which is overwritten, as the store would overwrite it.
+				String key = name.toString();
+				Position position = batch.get(key);
+				if (position == null) {
+					position = pool[batch.size()];
+					batch.put(key, position);
+				}
+				position.copyFrom(reader.getPosition());
+				count++;
+				if (batch.size() == pool.length) {
+					flush();
+				}
+			}
+			flush();
+		}
+		finally {
+			batch.clear();
+			reader.close();
+		}
+		return new Result(reader.getGame(), reader.getSkippedGames(), count,
+				limitReached);
+	}
+
+	private static void appendTag(StringBuilder out, PgnReader reader,
+			String tag) {
+		String value = reader.getTag(tag);
+		out.append(value == null || value.length() == 0 ? "?" : value);
+	}
+
+	private void flush() throws IOException {
+		if (!batch.isEmpty()) {
+			saved.saveAll(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Import a PGN file from the command line.
+	 *
+	 * @param args
+	 *            the PGN file and the directory of the saved positions,
+	 *            optionally followed by the number of plies between the
+	 *            positions saved (1 for every position, the default) and
+	 *            the most positions to save
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 4) {
+			System.err.println("Usage: PgnImporter <games.pgn> <directory>"
+					+ " [<interval> [<limit>]]");
+			System.exit(2);
+		}
+		Selector selector = args.length > 2 ? everyNthPly(Integer
+				.parseInt(args[2])) : EVERY_PLY;
+		long limit = args.length > 3 ? Long.parseLong(args[3])
+				: Long.MAX_VALUE;
+		File input = new File(args[0]);
+		long start = System.nanoTime();
+		SavedPositions saved = new SavedPositions(new File(args[1]));
+		Result result;
+		try {
+			result = new PgnImporter(saved).importGames(new InputStreamReader(
+					new FileInputStream(input), "UTF-8"), input.getName(),
+					selector, limit);
+		}
+		finally {
+			saved.close();
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.err.println(result + " in " + millis + " ms");
+	}
+}
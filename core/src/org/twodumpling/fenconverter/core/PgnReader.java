@@ -0,0 +1,439 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the games in a PGN file one position at a time.
+ *
+ * Each call to {@link #next()} moves on to the next position: the starting
+ * position of a game, or the position after the next move of the main line.
+ * Input is read through a fixed buffer and a token at a time, comments and
+ * variations are skipped as they are read, and the position is updated in
+ * place, so memory use does not depend on the size of the file or of any
+ * one game.
+ *
+ * A game with a malformed {@code FEN} tag or an illegal or ambiguous move
+ * is skipped from that point on and counted by {@link #getSkippedGames()};
+ * reading continues with the next game.
+ *
+ * @author Istvan Chung
+ */
+public final class PgnReader implements Closeable {
+	/**
+	 * Tokens and tag values longer than this are cut short, so that a
+	 * corrupt file cannot make the reader buffer without limit.
+	 */
+	private static final int MAX_TOKEN_LENGTH = 255;
+	/**
+	 * Tags beyond this many in one game are ignored, for the same reason.
+	 */
+	private static final int MAX_TAGS = 64;
+
+	private static final String STANDARD_START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	private static final int EOF = 0;
+	private static final int TAG = 1;
+	private static final int MOVE = 2;
+	private static final int RESULT = 3;
+
+	private final Reader in;
+	private final char[] buffer = new char[8192];
+	private int bufferPosition, bufferLength;
+	/**
+	 * Whether the last character read started a line, for telling escaped
+	 * lines from {@code '%'} elsewhere.
+	 */
+	private boolean lineStart;
+	private int last = '\n';
+
+	private final StringBuilder token = new StringBuilder(32);
+	private final StringBuilder tagValue = new StringBuilder(32);
+	private final Map<String, String> tags = new HashMap<String, String>();
+	private final Position position = new Position();
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+	private int game, ply, skippedGames;
+	/**
+	 * Whether the starting position of the current game has been returned.
+	 */
+	private boolean started;
+	/**
+	 * Whether the rest of the current game is being ignored.
+	 */
+	private boolean skipping;
+	/**
+	 * Whether tags have been read for a game that has not started yet.
+	 */
+	private boolean tagsRead;
+	/**
+	 * A move read while starting a game, to be made on the next call.
+	 */
+	private boolean pendingMove;
+
+	/**
+	 * @param in
+	 *            the PGN text; it is read in large blocks, so it need not be
+	 *            buffered
+	 */
+	public PgnReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Move on to the next position.
+	 *
+	 * @return {@code false} at the end of the input
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (pendingMove) {
+			pendingMove = false;
+			if (makeMove()) {
+				return true;
+			}
+		}
+		while (true) {
+			switch (readToken()) {
+				case EOF:
+					if (tagsRead) {
+						// A game with tags but no moves or result.
+						tagsRead = false;
+						return startGame();
+					}
+					return false;
+
+				case TAG:
+					if (started) {
+						// The last game had no result.
+						started = false;
+						skipping = false;
+					}
+					if (!tagsRead) {
+						tags.clear();
+						tagsRead = true;
+					}
+					if (tags.size() < MAX_TAGS) {
+						tags.put(token.toString(), tagValue.toString());
+					}
+					break;
+
+				case MOVE:
+					if (!started) {
+						if (!tagsRead) {
+							tags.clear();
+						}
+						tagsRead = false;
+						if (startGame()) {
+							pendingMove = true;
+							return true;
+						}
+					}
+					else if (makeMove()) {
+						return true;
+					}
+					break;
+
+				case RESULT:
+					if (!started) {
+						if (!tagsRead) {
+							tags.clear();
+						}
+						tagsRead = false;
+						boolean ok = startGame();
+						started = false;
+						skipping = false;
+						if (ok) {
+							return true;
+						}
+					}
+					else {
+						started = false;
+						skipping = false;
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Set up the starting position of a new game.
+	 *
+	 * @return whether it can be read, or is skipped because of a bad
+	 *         {@code FEN} tag
+	 */
+	private boolean startGame() {
+		game++;
+		ply = 0;
+		started = true;
+		skipping = false;
+		String fen = tags.get("FEN");
+		try {
+			if (fen == null) {
+				FenCodec.parsePosition(STANDARD_START, 0,
+						STANDARD_START.length(), position);
+			}
+			else {
+				FenCodec.parsePosition(fen, 0, fen.length(), position);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			skip();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Make the move in {@link #token}, unless the game is being skipped.
+	 *
+	 * @return whether a move was made
+	 */
+	private boolean makeMove() {
+		if (skipping) {
+			return false;
+		}
+		try {
+			MoveGenerator.makeMove(position,
+					San.parse(position, token, 0, token.length(), moves));
+		}
+		catch (IllegalArgumentException e) {
+			skip();
+			return false;
+		}
+		ply++;
+		return true;
+	}
+
+	private void skip() {
+		skipping = true;
+		skippedGames++;
+	}
+
+	/**
+	 * @return the current position; it changes with each call to
+	 *         {@link #next()}, so copy it to keep it
+	 */
+	public Position getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the number of the current game, counting from 1 and including
+	 *         skipped games
+	 */
+	public int getGame() {
+		return game;
+	}
+
+	/**
+	 * @return the number of moves made in the current game, 0 for its
+	 *         starting position
+	 */
+	public int getPly() {
+		return ply;
+	}
+
+	/**
+	 * @return the value of a tag of the current game, such as
+	 *         {@code "White"}, or {@code null} if it has none
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+	/**
+	 * @return the number of games given up because of a bad {@code FEN} tag
+	 *         or move
+	 */
+	public int getSkippedGames() {
+		return skippedGames;
+	}
+
+	/**
+	 * Read the next token that matters: a tag, with its name in
+	 * {@link #token} and value in {@link #tagValue}, a move in {@link #token}
+	 * or a game result. Comments, variations, move numbers and annotation
+	 * glyphs are skipped.
+	 */
+	private int readToken() throws IOException {
+		int variationDepth = 0;
+		while (true) {
+			int c = read();
+			if (c < 0) {
+				return EOF;
+			}
+			if (c == '%' && lineStart) {
+				skipLine();
+			}
+			else if (c == ';') {
+				skipLine();
+			}
+			else if (c == '{') {
+				while ((c = read()) >= 0 && c != '}') {
+					// Skip the comment.
+				}
+			}
+			else if (c == '(') {
+				variationDepth++;
+			}
+			else if (c == ')') {
+				if (variationDepth > 0) {
+					variationDepth--;
+				}
+			}
+			else if (c == '[' && variationDepth == 0) {
+				readTag();
+				return TAG;
+			}
+			else if (c == '*' && variationDepth == 0) {
+				return RESULT;
+			}
+			else if (c == '$') {
+				readSymbol(-1);
+			}
+			else if (isSymbolStart(c)) {
+				readSymbol(c);
+				if (variationDepth > 0 || isMoveNumber()) {
+					continue;
+				}
+				return isResult() ? RESULT : MOVE;
+			}
+			// Anything else, such as whitespace, dots and stray characters,
+			// separates tokens.
+		}
+	}
+
+	private void readTag() throws IOException {
+		while (peek() == ' ' || peek() == '\t') {
+			read();
+		}
+		readSymbol(-1);
+		tagValue.setLength(0);
+		int c;
+		while ((c = read()) >= 0 && c != '"' && c != ']' && c != '\n') {
+			// Skip to the value.
+		}
+		if (c == '"') {
+			while ((c = read()) >= 0 && c != '"' && c != '\n') {
+				if (c == '\\') {
+					c = read();
+					if (c < 0) {
+						break;
+					}
+				}
+				if (tagValue.length() < MAX_TOKEN_LENGTH) {
+					tagValue.append((char) c);
+				}
+			}
+		}
+		while (c >= 0 && c != ']' && c != '\n') {
+			c = read();
+		}
+	}
+
+	/**
+	 * Read a symbol into {@link #token}.
+	 *
+	 * @param first
+	 *            its first character, already read, or -1 if none has been
+	 */
+	private void readSymbol(int first) throws IOException {
+		token.setLength(0);
+		if (first >= 0) {
+			token.append((char) first);
+		}
+		while (isSymbolPart(peek())) {
+			int c = read();
+			if (token.length() < MAX_TOKEN_LENGTH) {
+				token.append((char) c);
+			}
+		}
+	}
+
+	private boolean isMoveNumber() {
+		for (int i = 0; i < token.length(); i++) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isResult() {
+		String s = token.toString();
+		return s.equals("1-0") || s.equals("0-1") || s.equals("1/2-1/2");
+	}
+
+	private static boolean isSymbolStart(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9');
+	}
+
+	private static boolean isSymbolPart(int c) {
+		return isSymbolStart(c) || c == '_' || c == '+' || c == '#'
+				|| c == '=' || c == ':' || c == '-' || c == '/' || c == '!'
+				|| c == '?';
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		while ((c = read()) >= 0 && c != '\n') {
+			// Skip to the end of the line.
+		}
+	}
+
+	/**
+	 * @return the next character without consuming it, or -1 at the end of
+	 *         the input
+	 */
+	private int peek() throws IOException {
+		if (bufferPosition == bufferLength) {
+			bufferLength = in.read(buffer, 0, buffer.length);
+			bufferPosition = 0;
+			if (bufferLength <= 0) {
+				bufferLength = 0;
+				return -1;
+			}
+		}
+		return buffer[bufferPosition];
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		if (c >= 0) {
+			bufferPosition++;
+			lineStart = last == '\n';
+			last = c;
+		}
+		return c;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
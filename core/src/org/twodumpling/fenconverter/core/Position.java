@@ -0,0 +1,546 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.util.Arrays;
+
+/**
+ * A chess position stored as one 64-bit occupancy mask per piece type,
+ * together with the rest of the state recorded in FEN: side to move,
+ * castling rights, en passant square and the move clocks.
+ *
+ * Squares are numbered from a1 = 0 to h8 = 63, so bit {@code 8 * rank + file}
+ * of a bitboard is set if the piece stands on that square. Row 0 of the
+ * {@code char[][]} form described in {@link FenCodec} is the eighth rank;
+ * use {@link #square(int, int)} to convert between the two.
+ *
+ * @author Istvan Chung
+ */
+public final class Position {
+	/**
+	 * FEN piece letters, in the order of the piece indices below.
+	 */
+	public static final String PIECES = "KQRBNPkqrbnp";
+
+	public static final int WHITE_KING = 0;
+	public static final int WHITE_QUEEN = 1;
+	public static final int WHITE_ROOK = 2;
+	public static final int WHITE_BISHOP = 3;
+	public static final int WHITE_KNIGHT = 4;
+	public static final int WHITE_PAWN = 5;
+	public static final int BLACK_KING = 6;
+	public static final int BLACK_QUEEN = 7;
+	public static final int BLACK_ROOK = 8;
+	public static final int BLACK_BISHOP = 9;
+	public static final int BLACK_KNIGHT = 10;
+	public static final int BLACK_PAWN = 11;
+
+	/**
+	 * Piece index for an empty square.
+	 */
+	public static final int EMPTY = -1;
+
+	/**
+	 * Castling right flags, combined in {@link #getCastling()}.
+	 */
+	public static final int WHITE_KINGSIDE = 1;
+	public static final int WHITE_QUEENSIDE = 2;
+	public static final int BLACK_KINGSIDE = 4;
+	public static final int BLACK_QUEENSIDE = 8;
+	public static final int ALL_CASTLING = 15;
+
+	/**
+	 * En passant square when there is none.
+	 */
+	public static final int NO_SQUARE = -1;
+
+	/**
+	 * The largest halfmove clock or fullmove number: the most that can be
+	 * written in the nine digits FEN parsing accepts.
+	 */
+	public static final int MAX_CLOCK = 999999999;
+
+	private final long[] bitboards = new long[12];
+	/**
+	 * {@code true} iff white is to move
+	 */
+	private boolean whiteToMove = true;
+	private int castling = 0;
+	private int enPassant = NO_SQUARE;
+	private int halfmoveClock = 0;
+	private int fullmoveNumber = 1;
+	/**
+	 * {@link Zobrist} hash, kept up to date by every change
+	 */
+	private long key;
+
+	/**
+	 * Create an empty board with white to move.
+	 */
+	public Position() {
+	}
+
+	/**
+	 * Create a copy of another position.
+	 */
+	public Position(Position other) {
+		copyFrom(other);
+	}
+
+	/**
+	 * Make this position a copy of another, without allocating.
+	 */
+	public void copyFrom(Position other) {
+		System.arraycopy(other.bitboards, 0, bitboards, 0, bitboards.length);
+		whiteToMove = other.whiteToMove;
+		castling = other.castling;
+		enPassant = other.enPassant;
+		halfmoveClock = other.halfmoveClock;
+		fullmoveNumber = other.fullmoveNumber;
+		key = other.key;
+	}
+
+	/**
+	 * Decode an FEN string.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 */
+	public static Position fromFen(CharSequence fen) {
+		Position position = new Position();
+		FenCodec.parsePosition(fen, 0, fen.length(), position);
+		return position;
+	}
+
+	/**
+	 * Convert from the array representation.
+	 *
+	 * @param board
+	 *            an array representation, described in {@link FenCodec}
+	 * @param whiteToMove
+	 *            whether white is to move
+	 * @throws IllegalArgumentException
+	 *             if the array contains something other than FEN piece
+	 *             letters and {@code '0'}
+	 */
+	public static Position fromCharArray(char[][] board, boolean whiteToMove) {
+		Position position = new Position();
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				char c = board[row][column];
+				if (c != '0') {
+					int piece = pieceIndex(c);
+					if (piece == EMPTY) {
+						throw new IllegalArgumentException("Invalid character");
+					}
+					position.addPiece(piece, square(row, column));
+				}
+			}
+		}
+		position.setWhiteToMove(whiteToMove);
+		return position;
+	}
+
+	/**
+	 * Convert to the array representation described in {@link FenCodec}.
+	 */
+	public char[][] toCharArray() {
+		char[][] board = new char[8][8];
+		toCharArray(board);
+		return board;
+	}
+
+	/**
+	 * Fill an existing 8x8 array with this position.
+	 */
+	public void toCharArray(char[][] board) {
+		for (int row = 0; row < 8; row++) {
+			Arrays.fill(board[row], '0');
+		}
+		for (int piece = 0; piece < bitboards.length; piece++) {
+			char c = PIECES.charAt(piece);
+			for (long b = bitboards[piece]; b != 0; b &= b - 1) {
+				int square = Long.numberOfTrailingZeros(b);
+				board[7 - (square >>> 3)][square & 7] = c;
+			}
+		}
+	}
+
+	/**
+	 * Encode as an FEN string with all six fields. As in
+	 * {@link FenCodec#formatBoard(char[][], boolean, int, int, int, int)},
+	 * castling rights and an en passant square that the board no longer
+	 * allows are left out.
+	 */
+	public String toFen() {
+		StringBuilder fenBuilder = new StringBuilder(90);
+		appendFen(fenBuilder);
+		return fenBuilder.toString();
+	}
+
+	/**
+	 * Append the FEN encoding of this position to a buffer.
+	 */
+	public void appendFen(StringBuilder fenBuilder) {
+		long occupied = getOccupancy();
+		for (int rank = 7; rank >= 0; rank--) {
+			int rankBits = (int) (occupied >>> (rank << 3)) & 0xff;
+			int column = 0;
+			while (column < 8) {
+				int blank = Integer.numberOfTrailingZeros(rankBits >>> column
+						| 0x100);
+				if (blank > 8 - column) {
+					blank = 8 - column;
+				}
+				if (blank > 0) {
+					fenBuilder.append((char) ('0' + blank));
+					column += blank;
+				}
+				else {
+					fenBuilder.append(PIECES.charAt(getPieceIndex((rank << 3)
+							+ column)));
+					column++;
+				}
+			}
+			if (rank != 0) {
+				fenBuilder.append('/');
+			}
+		}
+		FenCodec.appendState(fenBuilder, whiteToMove, validCastling(),
+				validEnPassant(), halfmoveClock, fullmoveNumber);
+	}
+
+	/**
+	 * @return the castling rights whose king and rook are still on their
+	 *         starting squares, as {@link FenCodec#validCastling} does for
+	 *         boards
+	 */
+	private int validCastling() {
+		int valid = castling;
+		if (getPieceIndex(4) != WHITE_KING) {
+			valid &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+		}
+		if (getPieceIndex(7) != WHITE_ROOK) {
+			valid &= ~WHITE_KINGSIDE;
+		}
+		if (getPieceIndex(0) != WHITE_ROOK) {
+			valid &= ~WHITE_QUEENSIDE;
+		}
+		if (getPieceIndex(60) != BLACK_KING) {
+			valid &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+		}
+		if (getPieceIndex(63) != BLACK_ROOK) {
+			valid &= ~BLACK_KINGSIDE;
+		}
+		if (getPieceIndex(56) != BLACK_ROOK) {
+			valid &= ~BLACK_QUEENSIDE;
+		}
+		return valid;
+	}
+
+	/**
+	 * @return the en passant square if it is empty and the pawn that has
+	 *         just moved past it is in front of it, as
+	 *         {@link FenCodec#validEnPassant} does for boards, otherwise
+	 *         {@link #NO_SQUARE}
+	 */
+	private int validEnPassant() {
+		if (enPassant == NO_SQUARE) {
+			return NO_SQUARE;
+		}
+		// The pawn moved by the side not to move, one rank past the square
+		// in its direction of travel.
+		int pawnSquare = whiteToMove ? enPassant - 8 : enPassant + 8;
+		int pawn = whiteToMove ? BLACK_PAWN : WHITE_PAWN;
+		boolean rightRank = whiteToMove ? enPassant >= 40 : enPassant < 24;
+		if (!rightRank || getPieceIndex(enPassant) != EMPTY
+				|| getPieceIndex(pawnSquare) != pawn) {
+			return NO_SQUARE;
+		}
+		return enPassant;
+	}
+
+	/**
+	 * Convert an array row and column to a square number.
+	 */
+	public static int square(int row, int column) {
+		return ((7 - row) << 3) | column;
+	}
+
+	/**
+	 * @return the index of FEN piece letter {@code c}, or {@link #EMPTY}
+	 */
+	public static int pieceIndex(char c) {
+		switch (c) {
+			case 'K':
+				return WHITE_KING;
+			case 'Q':
+				return WHITE_QUEEN;
+			case 'R':
+				return WHITE_ROOK;
+			case 'B':
+				return WHITE_BISHOP;
+			case 'N':
+				return WHITE_KNIGHT;
+			case 'P':
+				return WHITE_PAWN;
+			case 'k':
+				return BLACK_KING;
+			case 'q':
+				return BLACK_QUEEN;
+			case 'r':
+				return BLACK_ROOK;
+			case 'b':
+				return BLACK_BISHOP;
+			case 'n':
+				return BLACK_KNIGHT;
+			case 'p':
+				return BLACK_PAWN;
+			default:
+				return EMPTY;
+		}
+	}
+
+	/**
+	 * @return the index of the piece on a square, or {@link #EMPTY}
+	 */
+	public int getPieceIndex(int square) {
+		long bit = 1L << square;
+		for (int piece = 0; piece < bitboards.length; piece++) {
+			if ((bitboards[piece] & bit) != 0) {
+				return piece;
+			}
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * @return the FEN letter of the piece on a square, or {@code '0'} if it
+	 *         is empty
+	 */
+	public char getPiece(int square) {
+		int piece = getPieceIndex(square);
+		return piece == EMPTY ? '0' : PIECES.charAt(piece);
+	}
+
+	/**
+	 * Place a piece on a square, replacing whatever stood there.
+	 *
+	 * @param piece
+	 *            an FEN piece letter, or {@code '0'} to empty the square
+	 */
+	public void setPiece(int square, char piece) {
+		int index = EMPTY;
+		if (piece != '0') {
+			index = pieceIndex(piece);
+			if (index == EMPTY) {
+				throw new IllegalArgumentException("Invalid character");
+			}
+		}
+		int old = getPieceIndex(square);
+		if (old != EMPTY) {
+			bitboards[old] &= ~(1L << square);
+			key ^= Zobrist.piece(old, square);
+		}
+		if (index != EMPTY) {
+			addPiece(index, square);
+		}
+	}
+
+	/**
+	 * Remove every piece from the board, and reset the castling rights, en
+	 * passant square and clocks. The side to move is kept.
+	 */
+	public void clear() {
+		Arrays.fill(bitboards, 0);
+		castling = 0;
+		enPassant = NO_SQUARE;
+		halfmoveClock = 0;
+		fullmoveNumber = 1;
+		key = whiteToMove ? 0 : Zobrist.BLACK_TO_MOVE;
+	}
+
+	/**
+	 * @return the squares occupied by the piece with the given index
+	 */
+	public long getBitboard(int piece) {
+		return bitboards[piece];
+	}
+
+	public long getWhiteOccupancy() {
+		return bitboards[WHITE_KING] | bitboards[WHITE_QUEEN]
+				| bitboards[WHITE_ROOK] | bitboards[WHITE_BISHOP]
+				| bitboards[WHITE_KNIGHT] | bitboards[WHITE_PAWN];
+	}
+
+	public long getBlackOccupancy() {
+		return bitboards[BLACK_KING] | bitboards[BLACK_QUEEN]
+				| bitboards[BLACK_ROOK] | bitboards[BLACK_BISHOP]
+				| bitboards[BLACK_KNIGHT] | bitboards[BLACK_PAWN];
+	}
+
+	public long getOccupancy() {
+		return getWhiteOccupancy() | getBlackOccupancy();
+	}
+
+	/**
+	 * @return the number of pieces with the given index
+	 */
+	public int count(int piece) {
+		return Long.bitCount(bitboards[piece]);
+	}
+
+	public boolean isWhiteToMove() {
+		return whiteToMove;
+	}
+
+	public void setWhiteToMove(boolean whiteToMove) {
+		if (this.whiteToMove != whiteToMove) {
+			key ^= Zobrist.BLACK_TO_MOVE;
+		}
+		this.whiteToMove = whiteToMove;
+	}
+
+	/**
+	 * @return the castling rights, a combination of {@link #WHITE_KINGSIDE},
+	 *         {@link #WHITE_QUEENSIDE}, {@link #BLACK_KINGSIDE} and
+	 *         {@link #BLACK_QUEENSIDE}
+	 */
+	public int getCastling() {
+		return castling;
+	}
+
+	public void setCastling(int castling) {
+		if ((castling & ~ALL_CASTLING) != 0) {
+			throw new IllegalArgumentException("Invalid castling rights");
+		}
+		this.castling = castling;
+	}
+
+	/**
+	 * @return the square a pawn may capture en passant onto, or
+	 *         {@link #NO_SQUARE}
+	 */
+	public int getEnPassant() {
+		return enPassant;
+	}
+
+	/**
+	 * @param square
+	 *            a square on the third or sixth rank, or {@link #NO_SQUARE}
+	 */
+	public void setEnPassant(int square) {
+		if (square != NO_SQUARE && (square < 16 || square > 23)
+				&& (square < 40 || square > 47)) {
+			throw new IllegalArgumentException("Invalid en passant square");
+		}
+		enPassant = square;
+	}
+
+	/**
+	 * @return the number of half-moves since the last capture or pawn move
+	 */
+	public int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+
+	public void setHalfmoveClock(int halfmoveClock) {
+		if (halfmoveClock < 0 || halfmoveClock > MAX_CLOCK) {
+			throw new IllegalArgumentException("Invalid halfmove clock");
+		}
+		this.halfmoveClock = halfmoveClock;
+	}
+
+	/**
+	 * @return the number of the current move, starting from 1
+	 */
+	public int getFullmoveNumber() {
+		return fullmoveNumber;
+	}
+
+	public void setFullmoveNumber(int fullmoveNumber) {
+		if (fullmoveNumber < 1 || fullmoveNumber > MAX_CLOCK) {
+			throw new IllegalArgumentException("Invalid fullmove number");
+		}
+		this.fullmoveNumber = fullmoveNumber;
+	}
+
+	/**
+	 * @return the {@link Zobrist} hash of the board and side to move; the
+	 *         castling rights, en passant square and clocks are not part of
+	 *         it
+	 */
+	public long getZobristKey() {
+		return key;
+	}
+
+	/**
+	 * Put a piece on an empty square. Used by {@link FenCodec} to fill in a
+	 * position while parsing, which computes the hash as it goes.
+	 */
+	void addPiece(int piece, int square) {
+		bitboards[piece] |= 1L << square;
+		key ^= Zobrist.piece(piece, square);
+	}
+
+	/**
+	 * Take a piece known to be on a square off the board. Used by
+	 * {@link MoveGenerator} to make and unmake moves.
+	 */
+	void removePiece(int piece, int square) {
+		bitboards[piece] &= ~(1L << square);
+		key ^= Zobrist.piece(piece, square);
+	}
+
+	/**
+	 * @return whether another position has the same pieces on the same
+	 *         squares and the same side to move, regardless of the rest of
+	 *         its state
+	 */
+	public boolean sameBoard(Position other) {
+		return whiteToMove == other.whiteToMove
+				&& Arrays.equals(bitboards, other.bitboards);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Position)) {
+			return false;
+		}
+		Position other = (Position) o;
+		return sameBoard(other) && castling == other.castling
+				&& enPassant == other.enPassant
+				&& halfmoveClock == other.halfmoveClock
+				&& fullmoveNumber == other.fullmoveNumber;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (key ^ (key >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return toFen();
+	}
+}
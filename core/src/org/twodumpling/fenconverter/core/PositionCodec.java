@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact binary encoding of a {@link Position}, holding everything FEN
+ * does.
+ *
+ * <pre>
+ * long   occupancy, bit per square as in {@link Position}
+ * nibble piece index for each occupied square, from a1 upwards, two per
+ *        byte with the first in the high nibble, padded to a whole byte
+ * byte   flags: bit 0 black to move, bits 1-4 castling rights,
+ *        bit 5 en passant square follows
+ * byte   en passant square, only if flagged
+ * varint halfmove clock
+ * varint fullmove number
+ * </pre>
+ *
+ * Varints are little-endian groups of seven bits, with the top bit set on
+ * all but the last byte. A position reached in a game, with at most 32
+ * pieces, takes at most 8 + 16 + 2 + 2 + 2 = 30 bytes unless its clocks
+ * pass 16383, against around 60 for FEN text or 128 for an 8x8
+ * {@code char[][]}.
+ *
+ * @author Istvan Chung
+ */
+public final class PositionCodec {
+	private PositionCodec() {
+	}
+
+	/**
+	 * Longest possible encoding: every square occupied and both clocks at
+	 * their largest.
+	 */
+	public static final int MAX_LENGTH = 8 + 32 + 2 + 5 + 5;
+
+	private static final int BLACK_TO_MOVE = 1;
+	private static final int CASTLING_SHIFT = 1;
+	private static final int HAS_EN_PASSANT = 1 << 5;
+
+	/**
+	 * Append the encoding of a position to a buffer at its position.
+	 *
+	 * @return the number of bytes written
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer fills up; {@link #MAX_LENGTH} bytes are
+	 *             always enough
+	 */
+	public static int encode(Position position, ByteBuffer out) {
+		int start = out.position();
+		long occupied = position.getOccupancy();
+		out.putLong(occupied);
+		int pending = -1;
+		for (long b = occupied; b != 0; b &= b - 1) {
+			int piece = position.getPieceIndex(Long.numberOfTrailingZeros(b));
+			if (pending < 0) {
+				pending = piece << 4;
+			}
+			else {
+				out.put((byte) (pending | piece));
+				pending = -1;
+			}
+		}
+		if (pending >= 0) {
+			out.put((byte) pending);
+		}
+
+		int flags = position.getCastling() << CASTLING_SHIFT;
+		if (!position.isWhiteToMove()) {
+			flags |= BLACK_TO_MOVE;
+		}
+		if (position.getEnPassant() != Position.NO_SQUARE) {
+			flags |= HAS_EN_PASSANT;
+		}
+		out.put((byte) flags);
+		if (position.getEnPassant() != Position.NO_SQUARE) {
+			out.put((byte) position.getEnPassant());
+		}
+		putVarint(out, position.getHalfmoveClock());
+		putVarint(out, position.getFullmoveNumber());
+		return out.position() - start;
+	}
+
+	/**
+	 * @return the encoding of a position in an array of exactly its length
+	 */
+	public static byte[] encode(Position position) {
+		ByteBuffer out = ByteBuffer.allocate(MAX_LENGTH);
+		encode(position, out);
+		return Arrays.copyOf(out.array(), out.position());
+	}
+
+	/**
+	 * Decode a position from part of a buffer, without changing the buffer's
+	 * position.
+	 *
+	 * @param position
+	 *            the position to fill in; its contents are undefined if
+	 *            decoding fails
+	 * @throws IllegalArgumentException
+	 *             if the bytes are not a valid encoding
+	 */
+	public static void decode(ByteBuffer in, int offset, int length,
+			Position position) {
+		int end = offset + length;
+		if (length < 9) {
+			throw new IllegalArgumentException("Truncated position");
+		}
+		position.setWhiteToMove(true);
+		position.clear();
+		long occupied = in.getLong(offset);
+		int i = offset + 8;
+		boolean high = true;
+		for (long b = occupied; b != 0; b &= b - 1) {
+			if (i >= end) {
+				throw new IllegalArgumentException("Truncated position");
+			}
+			int piece = high ? (in.get(i) >>> 4) & 0xf : in.get(i++) & 0xf;
+			high = !high;
+			if (piece >= Position.PIECES.length()) {
+				throw new IllegalArgumentException("Invalid piece");
+			}
+			position.addPiece(piece, Long.numberOfTrailingZeros(b));
+		}
+		if (!high) {
+			i++;
+		}
+
+		if (i >= end) {
+			throw new IllegalArgumentException("Truncated position");
+		}
+		int flags = in.get(i++);
+		if ((flags & ~(BLACK_TO_MOVE | HAS_EN_PASSANT
+				| Position.ALL_CASTLING << CASTLING_SHIFT)) != 0) {
+			throw new IllegalArgumentException("Invalid flags");
+		}
+		position.setWhiteToMove((flags & BLACK_TO_MOVE) == 0);
+		position.setCastling(flags >>> CASTLING_SHIFT & Position.ALL_CASTLING);
+		if ((flags & HAS_EN_PASSANT) != 0) {
+			if (i >= end) {
+				throw new IllegalArgumentException("Truncated position");
+			}
+			position.setEnPassant(in.get(i++) & 0x3f);
+		}
+
+		long clocks = getVarint(in, i, end);
+		position.setHalfmoveClock((int) clocks);
+		i += (int) (clocks >>> 32);
+		clocks = getVarint(in, i, end);
+		position.setFullmoveNumber((int) clocks);
+		i += (int) (clocks >>> 32);
+		if (i != end) {
+			throw new IllegalArgumentException("Trailing bytes");
+		}
+	}
+
+	/**
+	 * Decode a position from an array holding exactly its encoding.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the bytes are not a valid encoding
+	 */
+	public static void decode(byte[] data, Position position) {
+		decode(ByteBuffer.wrap(data), 0, data.length, position);
+	}
+
+	private static void putVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.put((byte) (value & 0x7f | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	/**
+	 * Read a varint without allocating.
+	 *
+	 * @return the value in the low 32 bits and the number of bytes read in
+	 *         the high 32 bits
+	 */
+	private static long getVarint(ByteBuffer in, int offset, int end) {
+		int value = 0;
+		for (int i = 0; i < 5; i++) {
+			if (offset + i >= end) {
+				throw new IllegalArgumentException("Truncated position");
+			}
+			int b = in.get(offset + i);
+			value |= (b & 0x7f) << (7 * i);
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new IllegalArgumentException("Invalid clock");
+				}
+				return (long) (i + 1) << 32 | value & 0xffffffffL;
+			}
+		}
+		throw new IllegalArgumentException("Invalid clock");
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The index of saved positions: a mapping from user-readable names to the
+ * place each position is stored.
+ *
+ * The mapping is loaded into memory once. Every change is appended to a
+ * binary log as a single checksummed record, so saving or deleting one
+ * position costs one small write however many positions there are. A
+ * record torn by a crash fails its checksum and is dropped the next time
+ * the log is opened. When most of the log is superseded records, it is
+ * compacted by rewriting the live entries to a new file and renaming it over
+ * the old one.
+ *
+ * Names and values are arbitrary strings; unlike the old
+ * {@code name:filename} text index, they may contain {@code ':'}.
+ *
+ * @author Istvan Chung
+ */
+public final class PositionIndex implements Closeable {
+	private static final int MAGIC = 0x43534958; // "CSIX"
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+
+	/**
+	 * Compact once the log holds at least this many superseded records and
+	 * they outnumber the live entries.
+	 */
+	private static final int COMPACT_MIN_GARBAGE = 256;
+
+	private static final Metrics.Timer readTimer = Metrics
+			.timer("index.read");
+	private static final Metrics.Timer writeTimer = Metrics
+			.timer("index.write");
+	private static final Metrics.Counter compactions = Metrics
+			.counter("index.compactions");
+
+	private final File file;
+	private final Map<String, String> entries = new LinkedHashMap<String, String>();
+	private final Map<String, String> view = Collections.unmodifiableMap(entries);
+	private RandomAccessFile log;
+	/**
+	 * Number of records in the log that no longer describe a live entry.
+	 */
+	private int garbage;
+
+	/**
+	 * Open an index, creating it if it does not exist.
+	 *
+	 * @param file
+	 *            the log file
+	 * @throws IOException
+	 */
+	public PositionIndex(File file) throws IOException {
+		this.file = file;
+		long start = readTimer.start();
+		long end;
+		try {
+			end = load();
+		}
+		finally {
+			readTimer.stop(start);
+		}
+		log = new RandomAccessFile(file, "rw");
+		if (end < 0) {
+			writeHeader(log);
+			end = HEADER_LENGTH;
+		}
+		else if (log.length() > end) {
+			// Drop a torn last record.
+			log.setLength(end);
+		}
+		log.seek(end);
+	}
+
+	/**
+	 * Replay the log into {@link #entries}.
+	 *
+	 * @return the offset just past the last intact record, or -1 if the file
+	 *         is missing or has no valid header
+	 */
+	private long load() throws IOException {
+		if (!file.exists()) {
+			return -1;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					throw new IOException("Not a position index: " + file);
+				}
+			}
+			catch (EOFException e) {
+				return -1;
+			}
+			long offset = HEADER_LENGTH;
+			CRC32 crc = new CRC32();
+			byte[] payload = new byte[64];
+			while (true) {
+				byte type;
+				int length;
+				try {
+					type = in.readByte();
+					length = in.readInt();
+					if (length < 0 || length > 1 << 20) {
+						return offset;
+					}
+					if (payload.length < length) {
+						payload = new byte[Math.max(length, payload.length * 2)];
+					}
+					in.readFully(payload, 0, length);
+					crc.reset();
+					crc.update(type);
+					crc.update(payload, 0, length);
+					if (in.readInt() != (int) crc.getValue()) {
+						return offset;
+					}
+				}
+				catch (EOFException e) {
+					return offset;
+				}
+				apply(type, new DataInputStream(new ByteArrayInputStream(
+						payload, 0, length)));
+				offset += 1 + 4 + length + 4;
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void apply(byte type, DataInputStream payload) throws IOException {
+		String name = payload.readUTF();
+		String old;
+		if (type == PUT) {
+			old = entries.put(name, payload.readUTF());
+		}
+		else if (type == REMOVE) {
+			old = entries.remove(name);
+			// The removal record itself is garbage too.
+			garbage++;
+		}
+		else {
+			throw new IOException("Unknown record type " + type);
+		}
+		if (old != null) {
+			garbage++;
+		}
+	}
+
+	private static void writeHeader(RandomAccessFile out) throws IOException {
+		out.setLength(0);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	private static byte[] record(byte type, String name, String value)
+			throws IOException {
+		ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+		DataOutputStream payload = new DataOutputStream(payloadBytes);
+		payload.writeUTF(name);
+		if (value != null) {
+			payload.writeUTF(value);
+		}
+		payload.close();
+
+		byte[] body = payloadBytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(body);
+
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(
+				body.length + 9);
+		DataOutputStream record = new DataOutputStream(recordBytes);
+		record.writeByte(type);
+		record.writeInt(body.length);
+		record.write(body);
+		record.writeInt((int) crc.getValue());
+		record.close();
+		return recordBytes.toByteArray();
+	}
+
+	/**
+	 * @return the value stored under {@code name}, or {@code null}
+	 */
+	public synchronized String get(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * @return a read-only view of the whole index, in the order entries were
+	 *         first added
+	 */
+	public synchronized Map<String, String> asMap() {
+		return view;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Add or replace an entry.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void put(String name, String value)
+			throws IOException {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		long start = writeTimer.start();
+		try {
+			log.write(record(PUT, name, value));
+			if (entries.put(name, value) != null) {
+				garbage++;
+			}
+			compactIfNeeded();
+		}
+		finally {
+			writeTimer.stop(start);
+		}
+	}
+
+	/**
+	 * Add or replace many entries with a single write to the log.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void putAll(Map<String, String> toPut)
+			throws IOException {
+		long start = writeTimer.start();
+		try {
+			ByteArrayOutputStream records = new ByteArrayOutputStream(
+					toPut.size() * 48);
+			for (Map.Entry<String, String> e : toPut.entrySet()) {
+				if (e.getValue() == null) {
+					throw new NullPointerException("value");
+				}
+				records.write(record(PUT, e.getKey(), e.getValue()));
+			}
+			log.write(records.toByteArray());
+			for (Map.Entry<String, String> e : toPut.entrySet()) {
+				if (entries.put(e.getKey(), e.getValue()) != null) {
+					garbage++;
+				}
+			}
+			compactIfNeeded();
+		}
+		finally {
+			writeTimer.stop(start);
+		}
+	}
+
+	/**
+	 * Remove an entry.
+	 *
+	 * @return the value that was stored under {@code name}, or {@code null}
+	 *         if there was none
+	 * @throws IOException
+	 */
+	public synchronized String remove(String name) throws IOException {
+		if (!entries.containsKey(name)) {
+			return null;
+		}
+		long start = writeTimer.start();
+		try {
+			log.write(record(REMOVE, name, null));
+			garbage += 2;
+			String old = entries.remove(name);
+			compactIfNeeded();
+			return old;
+		}
+		finally {
+			writeTimer.stop(start);
+		}
+	}
+
+	private void compactIfNeeded() throws IOException {
+		if (garbage >= COMPACT_MIN_GARBAGE
+				&& garbage > entries.size()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Rewrite the log so that it holds only the live entries.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		File compacted = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(compacted);
+		try {
+			DataOutputStream data = new DataOutputStream(
+					new BufferedOutputStream(out, 1 << 16));
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			for (Map.Entry<String, String> e : entries.entrySet()) {
+				data.write(record(PUT, e.getKey(), e.getValue()));
+			}
+			data.flush();
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+
+		log.close();
+		if (!compacted.renameTo(file)) {
+			log = new RandomAccessFile(file, "rw");
+			log.seek(log.length());
+			throw new IOException("Could not replace " + file);
+		}
+		log = new RandomAccessFile(file, "rw");
+		log.seek(log.length());
+		garbage = 0;
+		compactions.increment();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		log.close();
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * All saved positions packed into a single file of fixed-size records.
+ *
+ * Each record holds one position in the binary form of
+ * {@link PositionCodec}, and is addressed by its slot number, so
+ * reading, replacing or freeing a position is a single random access into
+ * the file. Reads go through a memory-mapped view of the whole file; writes
+ * are positional writes to the same file. Freed slots are reused before the
+ * file grows, and the file doubles in size when it is full.
+ *
+ * <pre>
+ * header: int magic, int version, int record size, int reserved
+ * record: byte state, byte length, encoded position
+ * </pre>
+ *
+ * Version 1 stores, which held FEN text and a {@link Zobrist} hash in
+ * 128-byte records, are converted when opened, keeping every position in
+ * its slot. Records whose FEN cannot be parsed are dropped.
+ *
+ * @author Istvan Chung
+ */
+public final class PositionStore implements Closeable {
+	private static final int MAGIC = 0x43535053; // "CSPS"
+	private static final int VERSION = 2;
+	private static final int HEADER_LENGTH = 16;
+
+	/**
+	 * Size of each record in bytes.
+	 */
+	public static final int RECORD_SIZE = 64;
+	private static final int DATA_OFFSET = 2;
+
+	private static final int V1_RECORD_SIZE = 128;
+	private static final int V1_FEN_OFFSET = 16;
+
+	private static final byte FREE = 0;
+	private static final byte USED = 1;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer map;
+	private int capacity;
+	/**
+	 * Free slots below {@link #high}, used as a stack.
+	 */
+	private int[] free = new int[16];
+	private int freeCount;
+	/**
+	 * Every slot at or above this one is free.
+	 */
+	private int high;
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+	/**
+	 * Open a store, creating it if it does not exist.
+	 *
+	 * @throws IOException
+	 */
+	public PositionStore(File path) throws IOException {
+		if (readVersion(path) == 1) {
+			upgrade(path);
+		}
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		if (file.length() < HEADER_LENGTH) {
+			file.setLength(0);
+			writeHeader(file);
+			file.setLength(HEADER_LENGTH + (long) INITIAL_CAPACITY
+					* RECORD_SIZE);
+		}
+		else {
+			file.seek(0);
+			if (file.readInt() != MAGIC || file.readInt() != VERSION
+					|| file.readInt() != RECORD_SIZE) {
+				file.close();
+				throw new IOException("Not a position store: " + path);
+			}
+		}
+		remap();
+
+		// Rebuild the free list from the record states.
+		for (int slot = 0; slot < capacity; slot++) {
+			if (map.get(offset(slot)) == USED) {
+				high = slot + 1;
+			}
+		}
+		for (int slot = 0; slot < high; slot++) {
+			if (map.get(offset(slot)) != USED) {
+				pushFree(slot);
+			}
+		}
+	}
+
+	private static void writeHeader(RandomAccessFile out) throws IOException {
+		out.seek(0);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(RECORD_SIZE);
+		out.writeInt(0);
+	}
+
+	/**
+	 * @return the version of an existing store, or -1 if there is none
+	 */
+	private static int readVersion(File path) throws IOException {
+		if (path.length() < HEADER_LENGTH) {
+			return -1;
+		}
+		RandomAccessFile in = new RandomAccessFile(path, "r");
+		try {
+			return in.readInt() == MAGIC ? in.readInt() : -1;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Convert a version 1 store, writing the new one beside it and renaming
+	 * it into place so that a crash leaves one or the other.
+	 */
+	private static void upgrade(File path) throws IOException {
+		File tmp = new File(path.getPath() + ".tmp");
+		RandomAccessFile in = new RandomAccessFile(path, "r");
+		try {
+			RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+			try {
+				out.setLength(0);
+				writeHeader(out);
+				int slots = (int) ((in.length() - HEADER_LENGTH) / V1_RECORD_SIZE);
+				out.setLength(HEADER_LENGTH
+						+ (long) Math.max(slots, INITIAL_CAPACITY) * RECORD_SIZE);
+				byte[] old = new byte[V1_RECORD_SIZE];
+				char[] fen = new char[V1_RECORD_SIZE - V1_FEN_OFFSET];
+				ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+				Position position = new Position();
+				for (int slot = 0; slot < slots; slot++) {
+					in.seek(HEADER_LENGTH + (long) slot * V1_RECORD_SIZE);
+					in.readFully(old);
+					int length = old[1] & 0xff;
+					if (old[0] != USED || length > fen.length) {
+						continue;
+					}
+					for (int i = 0; i < length; i++) {
+						fen[i] = (char) (old[V1_FEN_OFFSET + i] & 0xff);
+					}
+					try {
+						FenCodec.parsePosition(new String(fen, 0, length), 0,
+								length, position);
+					}
+					catch (IllegalArgumentException e) {
+						continue;
+					}
+					fill(record, position);
+					out.seek(offset(slot));
+					out.write(record.array(), 0, record.limit());
+				}
+				out.getFD().sync();
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+		}
+		if (!tmp.renameTo(path)) {
+			throw new IOException("Could not replace " + path);
+		}
+	}
+
+	private void remap() throws IOException {
+		long length = file.length();
+		capacity = (int) ((length - HEADER_LENGTH) / RECORD_SIZE);
+		map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_LENGTH + slot * RECORD_SIZE;
+	}
+
+	private void pushFree(int slot) {
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, freeCount * 2);
+		}
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * Store a position in a free slot.
+	 *
+	 * @return the slot the position was stored in
+	 * @throws IOException
+	 */
+	public synchronized int add(Position position) throws IOException {
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		}
+		else {
+			if (high == capacity) {
+				file.setLength(HEADER_LENGTH + (long) capacity * 2
+						* RECORD_SIZE);
+				remap();
+			}
+			slot = high++;
+		}
+		fill(record, position);
+		writeFully(slot, record);
+		return slot;
+	}
+
+	/**
+	 * Fill a record buffer with a used record holding a position, ready to
+	 * be written.
+	 */
+	private static void fill(ByteBuffer record, Position position) {
+		record.clear();
+		record.put(USED);
+		record.put((byte) 0);
+		int length = PositionCodec.encode(position, record);
+		record.put(1, (byte) length);
+		record.flip();
+	}
+
+	private void writeFully(int slot, ByteBuffer buffer) throws IOException {
+		long position = offset(slot);
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Read the position in a slot.
+	 *
+	 * @param position
+	 *            the position to fill in
+	 * @return {@code false} if the slot is free, in which case
+	 *         {@code position} is unchanged
+	 * @throws IllegalArgumentException
+	 *             if the record is corrupt
+	 */
+	public synchronized boolean get(int slot, Position position) {
+		if (!isUsed(slot)) {
+			return false;
+		}
+		int offset = offset(slot);
+		int length = map.get(offset + 1) & 0xff;
+		if (length > RECORD_SIZE - DATA_OFFSET) {
+			throw new IllegalArgumentException("Corrupt record " + slot);
+		}
+		PositionCodec.decode(map, offset + DATA_OFFSET, length, position);
+		return true;
+	}
+
+	/**
+	 * @return whether a slot holds a position
+	 */
+	public synchronized boolean isUsed(int slot) {
+		return slot >= 0 && slot < high && map.get(offset(slot)) == USED;
+	}
+
+	/**
+	 * Free a slot.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void remove(int slot) throws IOException {
+		if (!isUsed(slot)) {
+			return;
+		}
+		ByteBuffer state = ByteBuffer.allocate(1);
+		state.put(0, FREE);
+		writeFully(slot, state);
+		pushFree(slot);
+	}
+
+	/**
+	 * @return one more than the highest slot in use
+	 */
+	public synchronized int getHighWaterMark() {
+		return high;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Checks that a position could arise in a game, beyond the syntax checked by
+ * {@link FenCodec}: one king each, no pawns on the first or last rank, no
+ * more pieces than promotions allow, and the side not to move not in check.
+ *
+ * Every test is a few bitboard operations and one lookup in the
+ * {@link Attacks} tables, so a check takes well under a microsecond and
+ * allocates nothing.
+ *
+ * @author Istvan Chung
+ */
+public final class PositionValidator {
+	private PositionValidator() {
+	}
+
+	/**
+	 * The ways a position can be illegal, in the order they are checked.
+	 */
+	public enum Problem {
+		NO_WHITE_KING("No white king"),
+		NO_BLACK_KING("No black king"),
+		TOO_MANY_WHITE_KINGS("More than one white king"),
+		TOO_MANY_BLACK_KINGS("More than one black king"),
+		PAWN_ON_BACK_RANK("Pawn on the first or last rank"),
+		TOO_MANY_WHITE_PAWNS("More than eight white pawns"),
+		TOO_MANY_BLACK_PAWNS("More than eight black pawns"),
+		TOO_MANY_WHITE_PIECES("More white pieces than promotions allow"),
+		TOO_MANY_BLACK_PIECES("More black pieces than promotions allow"),
+		OPPONENT_IN_CHECK("Side not to move is in check");
+
+		private final String message;
+
+		private Problem(String message) {
+			this.message = message;
+		}
+
+		/**
+		 * @return a description in English, in the style of the messages of
+		 *         {@link FenCodec}
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private static final long BACK_RANKS = 0xff000000000000ffL;
+
+	/**
+	 * @return the first problem found with a position, or {@code null} if it
+	 *         is legal
+	 */
+	public static Problem check(Position position) {
+		long whiteKings = position.getBitboard(Position.WHITE_KING);
+		long blackKings = position.getBitboard(Position.BLACK_KING);
+		if (whiteKings == 0) {
+			return Problem.NO_WHITE_KING;
+		}
+		if (blackKings == 0) {
+			return Problem.NO_BLACK_KING;
+		}
+		if ((whiteKings & whiteKings - 1) != 0) {
+			return Problem.TOO_MANY_WHITE_KINGS;
+		}
+		if ((blackKings & blackKings - 1) != 0) {
+			return Problem.TOO_MANY_BLACK_KINGS;
+		}
+
+		long pawns = position.getBitboard(Position.WHITE_PAWN)
+				| position.getBitboard(Position.BLACK_PAWN);
+		if ((pawns & BACK_RANKS) != 0) {
+			return Problem.PAWN_ON_BACK_RANK;
+		}
+		if (position.count(Position.WHITE_PAWN) > 8) {
+			return Problem.TOO_MANY_WHITE_PAWNS;
+		}
+		if (position.count(Position.BLACK_PAWN) > 8) {
+			return Problem.TOO_MANY_BLACK_PAWNS;
+		}
+		if (promoted(position, Position.WHITE_KING) > 8 - position
+				.count(Position.WHITE_PAWN)) {
+			return Problem.TOO_MANY_WHITE_PIECES;
+		}
+		if (promoted(position, Position.BLACK_KING) > 8 - position
+				.count(Position.BLACK_PAWN)) {
+			return Problem.TOO_MANY_BLACK_PIECES;
+		}
+
+		boolean white = position.isWhiteToMove();
+		long opponentKing = white ? blackKings : whiteKings;
+		if (Attacks.isAttacked(position,
+				Long.numberOfTrailingZeros(opponentKing), white)) {
+			return Problem.OPPONENT_IN_CHECK;
+		}
+		return null;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             with the message of the first problem found, if the
+	 *             position is not legal
+	 */
+	public static void validate(Position position) {
+		Problem problem = check(position);
+		if (problem != null) {
+			throw new IllegalArgumentException(problem.getMessage());
+		}
+	}
+
+	/**
+	 * @param king
+	 *            the index of the king of the side to count
+	 * @return the number of pieces of one side beyond the queen, two rooks,
+	 *         two bishops and two knights it starts with, each of which must
+	 *         have been a pawn
+	 */
+	private static int promoted(Position position, int king) {
+		return Math.max(0, position.count(king + 1) - 1)
+				+ Math.max(0, position.count(king + 2) - 2)
+				+ Math.max(0, position.count(king + 3) - 2)
+				+ Math.max(0, position.count(king + 4) - 2);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Reads moves in Standard Algebraic Notation, as used in PGN, such as
+ * {@code "Nbd7"}, {@code "exd6"}, {@code "e8=Q+"} or {@code "O-O"}.
+ *
+ * A move is resolved by matching it against the legal moves of the position,
+ * so the result is always legal. Check and annotation suffixes are ignored,
+ * as are capture marks; castling may be written with zeros.
+ *
+ * @author Istvan Chung
+ */
+public final class San {
+	private San() {
+	}
+
+	/**
+	 * Find the legal move a SAN string stands for.
+	 *
+	 * @param moves
+	 *            scratch space of at least {@link MoveGenerator#MAX_MOVES}
+	 * @return the move, as in {@link Move}
+	 * @throws IllegalArgumentException
+	 *             if the string is malformed, or names no legal move or more
+	 *             than one
+	 */
+	public static int parse(Position position, CharSequence san, int start,
+			int end, int[] moves) {
+		while (end > start && isSuffix(san.charAt(end - 1))) {
+			end--;
+		}
+		if (end - start < 2) {
+			throw new IllegalArgumentException("Invalid move");
+		}
+
+		int type, fromFile = -1, fromRank = -1, promotion = 0, to;
+		boolean castling = false;
+		char first = san.charAt(start);
+		if (first == 'O' || first == '0') {
+			castling = true;
+			type = Position.WHITE_KING;
+			int length = end - start;
+			if (length != 3 && length != 5) {
+				throw new IllegalArgumentException("Invalid castling");
+			}
+			for (int i = start; i < end; i++) {
+				char expected = (i - start) % 2 == 0 ? first : '-';
+				if (san.charAt(i) != expected) {
+					throw new IllegalArgumentException("Invalid castling");
+				}
+			}
+			// The king's file after castling.
+			to = length == 3 ? 6 : 2;
+		}
+		else {
+			int i = start;
+			if (first >= 'A' && first <= 'Z') {
+				type = Position.pieceIndex(first);
+				if (type < 0 || type == Position.WHITE_PAWN) {
+					throw new IllegalArgumentException("Invalid piece");
+				}
+				i++;
+			}
+			else {
+				type = Position.WHITE_PAWN;
+			}
+
+			int last = end;
+			char c = san.charAt(last - 1);
+			if (c >= 'A' && c <= 'Z') {
+				promotion = Position.pieceIndex(c);
+				if (type != Position.WHITE_PAWN
+						|| promotion < Position.WHITE_QUEEN
+						|| promotion > Position.WHITE_KNIGHT) {
+					throw new IllegalArgumentException("Invalid promotion");
+				}
+				last--;
+				if (last > i && san.charAt(last - 1) == '=') {
+					last--;
+				}
+			}
+			if (last - i < 2) {
+				throw new IllegalArgumentException("Invalid move");
+			}
+			to = square(san.charAt(last - 2), san.charAt(last - 1));
+
+			// Whatever is left is disambiguation and a capture mark.
+			for (; i < last - 2; i++) {
+				c = san.charAt(i);
+				if (c >= 'a' && c <= 'h' && fromFile < 0) {
+					fromFile = c - 'a';
+				}
+				else if (c >= '1' && c <= '8' && fromRank < 0) {
+					fromRank = c - '1';
+				}
+				else if (c != 'x' && c != ':') {
+					throw new IllegalArgumentException("Invalid move");
+				}
+			}
+		}
+
+		int base = position.isWhiteToMove() ? Position.WHITE_KING
+				: Position.BLACK_KING;
+		int n = MoveGenerator.generate(position, moves);
+		int found = Move.NONE;
+		for (int j = 0; j < n; j++) {
+			int move = moves[j];
+			int from = Move.from(move);
+			if (castling) {
+				if (!Move.isCastling(move) || (Move.to(move) & 7) != to) {
+					continue;
+				}
+			}
+			else if (Move.to(move) != to
+					|| position.getPieceIndex(from) != base + type
+					|| Move.promotion(move) != promotion
+					|| Move.isCastling(move)
+					|| (fromFile >= 0 && (from & 7) != fromFile)
+					|| (fromRank >= 0 && from >>> 3 != fromRank)) {
+				continue;
+			}
+			if (found != Move.NONE) {
+				throw new IllegalArgumentException("Ambiguous move");
+			}
+			found = move;
+		}
+		if (found == Move.NONE) {
+			throw new IllegalArgumentException("Illegal move");
+		}
+		return found;
+	}
+
+	/**
+	 * Find the legal move a SAN string stands for.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the string is malformed, or names no legal move or more
+	 *             than one
+	 */
+	public static int parse(Position position, CharSequence san) {
+		return parse(position, san, 0, san.length(),
+				new int[MoveGenerator.MAX_MOVES]);
+	}
+
+	private static boolean isSuffix(char c) {
+		return c == '+' || c == '#' || c == '!' || c == '?';
+	}
+
+	private static int square(char file, char rank) {
+		if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+			throw new IllegalArgumentException("Invalid square");
+		}
+		return (rank - '1') * 8 + file - 'a';
+	}
+}
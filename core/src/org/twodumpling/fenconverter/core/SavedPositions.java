@@ -0,0 +1,426 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The user's saved positions: a {@link PositionIndex} of names over a
+ * {@link PositionStore} of positions, both kept in one directory.
+ *
+ * Index entries refer to store slots through values of the form
+ * {@code "@<slot>"}. Any other value is the name of a file from the time
+ * every position was saved in a separate file; such entries are listed by
+ * {@link #getLegacyFiles()} so that the caller can migrate them.
+ *
+ * The {@link Zobrist} hash of every position is loaded into a hash table
+ * when the positions are opened, so finding the saved copies of a position
+ * is a hash probe rather than a scan.
+ * The names are likewise kept sorted in a {@link NameIndex}, so that they
+ * can be searched by prefix and listed a page at a time, and the positions
+ * are indexed by material and piece placement in a {@link MaterialIndex}.
+ *
+ * @author Istvan Chung
+ */
+public final class SavedPositions implements Closeable {
+	/**
+	 * Name of the log file backing the index of saved positions.
+	 */
+	public static final String INDEX_FILE = "index.log";
+	/**
+	 * Name of the file holding the saved positions themselves.
+	 */
+	public static final String STORE_FILE = "positions.dat";
+
+	private final PositionIndex index;
+	private final PositionStore store;
+	/**
+	 * Names of the saved positions with each hash.
+	 */
+	private final Map<Long, List<String>> namesByKey = new HashMap<Long, List<String>>();
+	private final NameIndex names = new NameIndex();
+	private final MaterialIndex material = new MaterialIndex();
+	private final Position scratch = new Position();
+
+	/**
+	 * Open the saved positions in a directory, creating the files if needed.
+	 *
+	 * @throws IOException
+	 */
+	public SavedPositions(File directory) throws IOException {
+		index = new PositionIndex(new File(directory, INDEX_FILE));
+		store = new PositionStore(new File(directory, STORE_FILE));
+		releaseOrphans();
+		loadPositions();
+		names.addAll(index.asMap().keySet());
+	}
+
+	/**
+	 * Fill in {@link #namesByKey} and {@link #material}.
+	 */
+	private void loadPositions() {
+		for (Map.Entry<String, String> e : index.asMap().entrySet()) {
+			int slot = toSlot(e.getValue());
+			try {
+				if (slot < 0 || !store.get(slot, scratch)) {
+					continue;
+				}
+			}
+			catch (IllegalArgumentException ex) {
+				continue;
+			}
+			addKey(scratch.getZobristKey(), e.getKey());
+			material.add(e.getKey(), scratch);
+		}
+	}
+
+	private void addKey(long key, String name) {
+		List<String> names = namesByKey.get(key);
+		if (names == null) {
+			names = new ArrayList<String>(1);
+			namesByKey.put(key, names);
+		}
+		names.add(name);
+	}
+
+	private void removeKey(int slot, String name) {
+		try {
+			if (!store.get(slot, scratch)) {
+				return;
+			}
+		}
+		catch (IllegalArgumentException e) {
+			return;
+		}
+		Long key = scratch.getZobristKey();
+		List<String> names = namesByKey.get(key);
+		if (names != null) {
+			names.remove(name);
+			if (names.isEmpty()) {
+				namesByKey.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Free slots that no index entry refers to, left behind if the app was
+	 * killed between storing a position and indexing it, and drop index
+	 * entries whose slot is free, as happens when the store is upgraded
+	 * and a position could not be converted.
+	 */
+	private void releaseOrphans() throws IOException {
+		BitSet referenced = new BitSet(store.getHighWaterMark());
+		List<String> dangling = new ArrayList<String>();
+		for (Map.Entry<String, String> e : index.asMap().entrySet()) {
+			int slot = toSlot(e.getValue());
+			if (slot >= 0) {
+				if (store.isUsed(slot)) {
+					referenced.set(slot);
+				}
+				else {
+					dangling.add(e.getKey());
+				}
+			}
+		}
+		for (String name : dangling) {
+			index.remove(name);
+		}
+		for (int slot = 0; slot < store.getHighWaterMark(); slot++) {
+			if (!referenced.get(slot) && store.isUsed(slot)) {
+				store.remove(slot);
+			}
+		}
+	}
+
+	private static String toValue(int slot) {
+		return "@" + slot;
+	}
+
+	/**
+	 * @return the slot an index value refers to, or -1 if it is a legacy
+	 *         filename
+	 */
+	private static int toSlot(String value) {
+		if (value.length() < 2 || value.charAt(0) != '@') {
+			return -1;
+		}
+		int slot = 0;
+		for (int i = 1; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9' || slot > (Integer.MAX_VALUE - 9) / 10) {
+				return -1;
+			}
+			slot = slot * 10 + c - '0';
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the names of all saved positions, in the order they were
+	 *         first saved
+	 */
+	public synchronized Set<String> getNames() {
+		return index.asMap().keySet();
+	}
+
+	/**
+	 * @return the number of saved names starting with {@code prefix},
+	 *         ignoring case
+	 */
+	public synchronized int countNames(String prefix) {
+		return names.count(prefix);
+	}
+
+	/**
+	 * Get one page of the saved names starting with {@code prefix}, ignoring
+	 * case, in the order of {@link NameIndex#ORDER}.
+	 *
+	 * @param offset
+	 *            how many matching names to skip
+	 * @param limit
+	 *            the most names to return
+	 */
+	public synchronized List<String> getNames(String prefix, int offset,
+			int limit) {
+		return names.range(prefix, offset, limit);
+	}
+
+	public synchronized boolean isEmpty() {
+		return index.isEmpty();
+	}
+
+	public synchronized boolean contains(String name) {
+		return index.get(name) != null;
+	}
+
+	/**
+	 * @return the saved FEN string, or {@code null} if there is no position
+	 *         with that name in the store
+	 */
+	public synchronized String getFen(String name) {
+		Position position = getPosition(name);
+		return position == null ? null : position.toFen();
+	}
+
+	/**
+	 * @return the saved position, or {@code null} if there is no position
+	 *         with that name in the store
+	 */
+	public synchronized Position getPosition(String name) {
+		String value = index.get(name);
+		if (value == null) {
+			return null;
+		}
+		int slot = toSlot(value);
+		Position position = new Position();
+		try {
+			return slot >= 0 && store.get(slot, position) ? position : null;
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Save a position, replacing any position saved under the same name.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the FEN string is malformed
+	 * @throws IOException
+	 */
+	public synchronized void save(String name, String fen) throws IOException {
+		save(name, Position.fromFen(fen));
+	}
+
+	/**
+	 * Save a position, replacing any position saved under the same name.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save(String name, Position position)
+			throws IOException {
+		// Store first, so a crash leaves at worst an unreferenced slot.
+		int slot = store.add(position);
+		String old = index.get(name);
+		index.put(name, toValue(slot));
+		names.add(name);
+		if (old != null) {
+			int oldSlot = toSlot(old);
+			if (oldSlot >= 0) {
+				removeKey(oldSlot, name);
+				store.remove(oldSlot);
+			}
+		}
+		addKey(position.getZobristKey(), name);
+		material.add(name, position);
+	}
+
+	/**
+	 * Save many positions, replacing any saved under the same names. The
+	 * positions are stored one by one but indexed with a single write, so
+	 * this is much faster than saving each in turn.
+	 *
+	 * @param positions
+	 *            the positions by name; they are not kept, so the caller may
+	 *            reuse them afterwards
+	 * @throws IOException
+	 */
+	public synchronized void saveAll(Map<String, Position> positions)
+			throws IOException {
+		// Store first, so a crash leaves at worst unreferenced slots.
+		Map<String, String> values = new LinkedHashMap<String, String>(
+				positions.size() * 2);
+		for (Map.Entry<String, Position> e : positions.entrySet()) {
+			values.put(e.getKey(), toValue(store.add(e.getValue())));
+		}
+		List<String> replaced = new ArrayList<String>();
+		List<Integer> oldSlots = new ArrayList<Integer>();
+		for (String name : values.keySet()) {
+			String old = index.get(name);
+			if (old != null && toSlot(old) >= 0) {
+				replaced.add(name);
+				oldSlots.add(toSlot(old));
+			}
+		}
+		index.putAll(values);
+		names.addAll(values.keySet());
+		for (int i = 0; i < replaced.size(); i++) {
+			removeKey(oldSlots.get(i), replaced.get(i));
+			store.remove(oldSlots.get(i));
+		}
+		for (Map.Entry<String, Position> e : positions.entrySet()) {
+			addKey(e.getValue().getZobristKey(), e.getKey());
+			material.add(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Find the saved copies of a position.
+	 *
+	 * @return the names of all saved positions with the same board and side
+	 *         to move, in no particular order
+	 */
+	public synchronized List<String> findSame(Position position) {
+		List<String> names = namesByKey.get(position.getZobristKey());
+		if (names == null) {
+			return Collections.emptyList();
+		}
+		List<String> same = new ArrayList<String>(names.size());
+		for (String name : names) {
+			// Rule out hash collisions.
+			Position saved = getPosition(name);
+			if (saved != null && saved.sameBoard(position)) {
+				same.add(name);
+			}
+		}
+		return same;
+	}
+
+	/**
+	 * Find the saved positions with exactly the given material.
+	 *
+	 * @param signature
+	 *            as read by {@link MaterialIndex#parseSignature}, such as
+	 *            {@code "KRPvKR"}
+	 * @return the names of the matching positions, in sorted order
+	 * @throws IllegalArgumentException
+	 *             if the signature is malformed
+	 */
+	public synchronized List<String> findByMaterial(String signature) {
+		return material.withMaterial(MaterialIndex.parseSignature(signature));
+	}
+
+	/**
+	 * Find the saved positions with pieces on given squares, as described
+	 * in {@link MaterialIndex#matching(long[])}.
+	 *
+	 * @return the names of the matching positions, in sorted order
+	 */
+	public synchronized List<String> findByPattern(long[] masks) {
+		return material.matching(masks);
+	}
+
+	/**
+	 * Delete a saved position.
+	 *
+	 * @return whether there was a position with that name
+	 * @throws IOException
+	 */
+	public synchronized boolean delete(String name) throws IOException {
+		String old = index.remove(name);
+		if (old == null) {
+			return false;
+		}
+		names.remove(name);
+		material.remove(name);
+		int slot = toSlot(old);
+		if (slot >= 0) {
+			removeKey(slot, name);
+			store.remove(slot);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the entries that still refer to a separate file, mapping names
+	 *         to filenames
+	 */
+	public synchronized Map<String, String> getLegacyFiles() {
+		Map<String, String> legacy = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> e : index.asMap().entrySet()) {
+			if (toSlot(e.getValue()) < 0) {
+				legacy.put(e.getKey(), e.getValue());
+			}
+		}
+		return Collections.unmodifiableMap(legacy);
+	}
+
+	/**
+	 * Add an entry that refers to a separate file, as found in an old text
+	 * index; it can be migrated later through {@link #getLegacyFiles()}.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void putLegacyFile(String name, String filename)
+			throws IOException {
+		index.put(name, filename);
+		names.add(name);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			index.close();
+		}
+		finally {
+			store.close();
+		}
+	}
+}
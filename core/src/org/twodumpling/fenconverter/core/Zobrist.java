@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+/**
+ * Zobrist hashing of a board and side to move.
+ *
+ * Each piece on each square, and black being to move, has a fixed random
+ * 64-bit key; a position's hash is the exclusive or of the keys that apply
+ * to it. The keys are generated from a fixed seed, so hashes are stable
+ * across runs and can be stored.
+ *
+ * @author Istvan Chung
+ */
+public final class Zobrist {
+	private Zobrist() {
+	}
+
+	private static final long[] PIECE_KEYS = new long[12 * 64];
+
+	/**
+	 * Key for black being to move.
+	 */
+	public static final long BLACK_TO_MOVE;
+
+	static {
+		// SplitMix64
+		long seed = 0x43686573735361L;
+		for (int i = 0; i < PIECE_KEYS.length; i++) {
+			seed += 0x9e3779b97f4a7c15L;
+			PIECE_KEYS[i] = mix(seed);
+		}
+		seed += 0x9e3779b97f4a7c15L;
+		BLACK_TO_MOVE = mix(seed);
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param piece
+	 *            a piece index, as in {@link Position}
+	 * @param square
+	 *            a square number, as in {@link Position}
+	 * @return the key for that piece standing on that square
+	 */
+	public static long piece(int piece, int square) {
+		return PIECE_KEYS[(piece << 6) | square];
+	}
+
+	/**
+	 * Hash a board in the array representation described in
+	 * {@link FenCodec}.
+	 */
+	public static long hash(char[][] board, boolean whiteToMove) {
+		long key = whiteToMove ? 0 : BLACK_TO_MOVE;
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				int piece = Position.pieceIndex(board[row][column]);
+				if (piece != Position.EMPTY) {
+					key ^= piece(piece, Position.square(row, column));
+				}
+			}
+		}
+		return key;
+	}
+}
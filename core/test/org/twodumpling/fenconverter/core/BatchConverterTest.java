@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Istvan Chung
+ */
+public class BatchConverterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(File file, String text) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static String read(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) in.length()];
+			in.readFully(data);
+			return new String(data, "UTF-8");
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void convert() throws IOException, InterruptedException {
+		File input = folder.newFile("in.fen");
+		File output = new File(folder.getRoot(), "out.fen");
+		File rejects = new File(folder.getRoot(), "rejects.txt");
+		write(input, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -\r\n"
+				+ "\n"
+				+ "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 bm e5; id \"x\";\n"
+				+ "8/8/8/8/8/8/8/k6K w - - 0 1 hmvc 0; \n"
+				+ "8/8/8/8/8/8/8/k6K w KX - 0 1\n"
+				+ "8/8/8/8/8/8/8/kK6 w - - 0 1\n");
+
+		// A tiny window, so that lines cross window and chunk boundaries.
+		BatchConverter.Result result = new BatchConverter(2, 64).convert(
+				input, output, rejects);
+		assertEquals(3, result.getAccepted());
+		assertEquals(2, result.getRejected());
+		assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1\n"
+				+ "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1 bm e5; id \"x\";\n"
+				+ "8/8/8/8/8/8/8/k6K w - - 0 1 hmvc 0;\n", read(output));
+		String[] rejected = read(rejects).split("\n");
+		assertEquals(2, rejected.length);
+		assertEquals("5", rejected[0].split("\t")[0]);
+		assertEquals("6", rejected[1].split("\t")[0]);
+	}
+
+	@Test
+	public void copyRejectedBytes() throws IOException, InterruptedException {
+		File input = folder.newFile("in.fen");
+		File output = new File(folder.getRoot(), "out.fen");
+		File rejects = new File(folder.getRoot(), "rejects.txt");
+		write(input, "Stellung \u00e9\u00e8 \u2654\n");
+
+		new BatchConverter(1, 64).convert(input, output, rejects);
+		assertEquals("1\tWrong number of rows\tStellung \u00e9\u00e8 \u2654\n",
+				read(rejects));
+	}
+
+	@Test
+	public void rejectLongLines() throws IOException, InterruptedException {
+		StringBuilder longLine = new StringBuilder();
+		while (longLine.length() <= BatchConverter.MAX_LINE_LENGTH * 3) {
+			longLine.append("8/8/8/8/8/8/8/k6K w - - 0 1 ");
+		}
+		String fen = "8/8/8/8/8/8/8/k6K w - - 0 1\n";
+		File input = folder.newFile("in.fen");
+		File output = new File(folder.getRoot(), "out.fen");
+		File rejects = new File(folder.getRoot(), "rejects.txt");
+		write(input, fen + longLine + "\n" + fen + longLine);
+
+		// Once with a window that has to grow to the limit and stop there,
+		// and once with one that holds the whole file.
+		int[] windows = { 64, BatchConverter.DEFAULT_WINDOW_SIZE };
+		for (int window : windows) {
+			BatchConverter.Result result = new BatchConverter(2, window)
+					.convert(input, output, rejects);
+			assertEquals(2, result.getAccepted());
+			assertEquals(2, result.getRejected());
+			assertEquals(fen + fen, read(output));
+			String prefix = longLine.substring(0, BatchConverter.MAX_LINE_LENGTH);
+			assertEquals("2\tLine too long\t" + prefix + "\n"
+					+ "4\tLine too long\t" + prefix + "\n", read(rejects));
+		}
+	}
+}
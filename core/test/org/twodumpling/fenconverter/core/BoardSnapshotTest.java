@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class BoardSnapshotTest {
+	private static final String E4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b Kq e3 5 12";
+
+	@Test
+	public void fromFen() {
+		BoardSnapshot snapshot = BoardSnapshot.fromFen(E4);
+		assertEquals('r', snapshot.getPiece(0, 0));
+		assertEquals('P', snapshot.getPiece(4, 4));
+		assertEquals('0', snapshot.getPiece(6, 4));
+		assertFalse(snapshot.isWhiteToMove());
+		assertEquals(Position.WHITE_KINGSIDE | Position.BLACK_QUEENSIDE,
+				snapshot.getCastling());
+		assertEquals(20, snapshot.getEnPassant());
+		assertEquals(5, snapshot.getHalfmoveClock());
+		assertEquals(12, snapshot.getFullmoveNumber());
+	}
+
+	@Test
+	public void withPiece() {
+		BoardSnapshot snapshot = BoardSnapshot.fromFen(E4);
+		assertSame(snapshot, snapshot.withPiece(0, 0, 'r'));
+		BoardSnapshot edited = snapshot.withPiece(0, 0, '0');
+		assertEquals('0', edited.getPiece(0, 0));
+		assertEquals('r', snapshot.getPiece(0, 0));
+		// Only the edited row is copied.
+		assertTrue(snapshot.rows()[0] != edited.rows()[0]);
+		for (int row = 1; row < 8; row++) {
+			assertSame(snapshot.rows()[row], edited.rows()[row]);
+		}
+		assertEquals(snapshot.getCastling(), edited.getCastling());
+		assertEquals(snapshot.getFullmoveNumber(),
+				edited.getFullmoveNumber());
+	}
+
+	@Test
+	public void withWhiteToMove() {
+		BoardSnapshot snapshot = BoardSnapshot.fromFen(E4);
+		assertSame(snapshot, snapshot.withWhiteToMove(false));
+		BoardSnapshot white = snapshot.withWhiteToMove(true);
+		assertTrue(white.isWhiteToMove());
+		assertFalse(snapshot.isWhiteToMove());
+		assertSame(snapshot.rows(), white.rows());
+	}
+
+	@Test
+	public void toCharArray() {
+		BoardSnapshot snapshot = BoardSnapshot.fromFen(E4);
+		char[][] board = snapshot.toCharArray();
+		board[0][0] = '0';
+		assertEquals('r', snapshot.getPiece(0, 0));
+	}
+
+	@Test
+	public void toPosition() {
+		BoardSnapshot snapshot = BoardSnapshot.fromFen(E4).withPiece(7, 7,
+				'0');
+		Position position = snapshot.toPosition();
+		assertFalse(position.isWhiteToMove());
+		assertEquals(Position.EMPTY,
+				position.getPieceIndex(Position.square(7, 7)));
+		assertEquals(Position.WHITE_PAWN,
+				position.getPieceIndex(Position.square(4, 4)));
+		assertEquals(0, position.getCastling());
+		assertEquals(Position.NO_SQUARE, position.getEnPassant());
+	}
+
+	@Test
+	public void empty() {
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				assertEquals('0', BoardSnapshot.EMPTY.getPiece(row, column));
+			}
+		}
+		assertTrue(BoardSnapshot.EMPTY.isWhiteToMove());
+		assertEquals(1, BoardSnapshot.EMPTY.getFullmoveNumber());
+	}
+}
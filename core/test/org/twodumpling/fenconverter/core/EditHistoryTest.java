@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class EditHistoryTest {
+	/**
+	 * A board of piece indices and a side to move.
+	 */
+	private static final class Board implements EditHistory.Target {
+		final int[] pieces = new int[64];
+		boolean whiteToMove = true;
+
+		Board() {
+			Arrays.fill(pieces, Position.EMPTY);
+		}
+
+		void set(EditHistory history, int square, int piece) {
+			history.recordPiece(square, pieces[square], piece);
+			pieces[square] = piece;
+		}
+
+		@Override
+		public void setPiece(int square, int piece) {
+			pieces[square] = piece;
+		}
+
+		@Override
+		public void switchSideToMove() {
+			whiteToMove = !whiteToMove;
+		}
+	}
+
+	@Test
+	public void undoRedo() {
+		EditHistory history = new EditHistory();
+		Board board = new Board();
+		board.set(history, 0, Position.WHITE_ROOK);
+		board.set(history, 63, Position.BLACK_PAWN);
+		history.recordSideToMove();
+		board.switchSideToMove();
+
+		assertTrue(history.undo(board));
+		assertTrue(board.whiteToMove);
+		assertTrue(history.undo(board));
+		assertEquals(Position.EMPTY, board.pieces[63]);
+		assertEquals(Position.WHITE_ROOK, board.pieces[0]);
+		assertTrue(history.redo(board));
+		assertEquals(Position.BLACK_PAWN, board.pieces[63]);
+
+		// A new edit drops what could have been redone.
+		board.set(history, 1, Position.WHITE_KNIGHT);
+		assertFalse(history.canRedo());
+		assertFalse(history.redo(board));
+	}
+
+	@Test
+	public void group() {
+		EditHistory history = new EditHistory();
+		Board board = new Board();
+		board.set(history, 5, Position.WHITE_KING);
+		history.beginGroup();
+		for (int square = 0; square < 64; square++) {
+			board.set(history, square, Position.BLACK_QUEEN);
+		}
+		history.endGroup();
+
+		assertTrue(history.undo(board));
+		assertEquals(Position.WHITE_KING, board.pieces[5]);
+		assertEquals(Position.EMPTY, board.pieces[6]);
+		assertTrue(history.redo(board));
+		for (int square = 0; square < 64; square++) {
+			assertEquals(Position.BLACK_QUEEN, board.pieces[square]);
+		}
+		assertTrue(history.undo(board));
+		assertTrue(history.undo(board));
+		assertFalse(history.canUndo());
+		assertEquals(Position.EMPTY, board.pieces[5]);
+	}
+
+	@Test
+	public void saveAndRestore() {
+		EditHistory history = new EditHistory();
+		Board board = new Board();
+		for (int square = 0; square < 100; square++) {
+			board.set(history, square & 63, square % 12);
+		}
+		history.undo(board);
+		history.undo(board);
+		int[] saved = history.save();
+		// One int per change, plus the number of changes applied.
+		assertEquals(101, saved.length);
+
+		EditHistory restored = new EditHistory(saved);
+		assertArrayEquals(saved, restored.save());
+		assertTrue(restored.canRedo());
+		assertTrue(restored.redo(board));
+		assertEquals(98 % 12, board.pieces[98 & 63]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectBadSave() {
+		new EditHistory(new int[] { 0, 5 });
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class FenCacheTest {
+	private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	private static final String E4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1";
+	private static final String EMPTY = "4k3/8/8/8/8/8/8/4K3 w - - 0 1";
+
+	@After
+	public void tearDown() {
+		Metrics.setEnabled(false);
+		Metrics.reset();
+	}
+
+	@Test
+	public void hits() {
+		FenCache cache = new FenCache(2);
+		BoardSnapshot snapshot = cache.get(START);
+		assertSame(snapshot, cache.get(START));
+		assertEquals('r', snapshot.getPiece(0, 0));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void leastRecentlyUsed() {
+		FenCache cache = new FenCache(2);
+		BoardSnapshot start = cache.get(START);
+		BoardSnapshot e4 = cache.get(E4);
+		// Using the start position makes e4 the eldest.
+		cache.get(START);
+		cache.get(EMPTY);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertSame(start, cache.get(START));
+		assertNotSame(e4, cache.get(E4));
+		assertEquals(2, cache.getHits());
+		assertEquals(4, cache.getMisses());
+		assertEquals(2, cache.getEvictions());
+	}
+
+	@Test
+	public void malformed() {
+		FenCache cache = new FenCache(2);
+		try {
+			cache.get("rnbqkbnr/pppppppp/8/8 w");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void clear() {
+		FenCache cache = new FenCache(2);
+		cache.get(START);
+		cache.clear();
+		assertEquals(0, cache.size());
+		cache.get(START);
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void metrics() {
+		Metrics.setEnabled(true);
+		FenCache cache = new FenCache(1);
+		cache.get(START);
+		cache.get(START);
+		cache.get(E4);
+		String report = Metrics.report();
+		// Only the two misses are parsed.
+		assertTrue(report.matches("(?s).*fen\\.cache\\.parse +2 .*"));
+		assertTrue(report.matches("(?s).*fen\\.cache\\.hits +1\\n.*"));
+		assertTrue(report.matches("(?s).*fen\\.cache\\.evictions +1\\n.*"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void capacity() {
+		new FenCache(0);
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class FenCodecTest {
+	static final String[] FENS = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"8/8/8/8/8/8/8/k6K b - - 99 999999999" };
+
+	@Test
+	public void fenRoundTrip() {
+		for (String fen : FENS) {
+			assertEquals(fen, Position.fromFen(fen).toFen());
+		}
+	}
+
+	@Test
+	public void missingFieldsTakeDefaults() {
+		Position position = Position
+				.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w");
+		assertEquals(0, position.getCastling());
+		assertEquals(Position.NO_SQUARE, position.getEnPassant());
+		assertEquals(0, position.getHalfmoveClock());
+		assertEquals(1, position.getFullmoveNumber());
+	}
+
+	@Test
+	public void fullmoveZero() {
+		assertEquals(1, Position.fromFen("8/8/8/8/8/8/8/k6K w - - 0 0")
+				.getFullmoveNumber());
+	}
+
+	@Test
+	public void parseSlice() {
+		String fen = FENS[1];
+		String padded = "xx" + fen + "yy";
+		Position position = new Position();
+		int space = FenCodec.parsePosition(padded, 2, fen.length(), position);
+		assertEquals(padded.indexOf(' '), space);
+		assertEquals(fen, position.toFen());
+	}
+
+	@Test
+	public void boardRoundTrip() {
+		for (String fen : FENS) {
+			Position position = Position.fromFen(fen);
+			char[][] board = new char[8][8];
+			FenCodec.parseBoard(fen, board);
+			assertArrayEquals(board, position.toCharArray());
+			assertTrue(position.sameBoard(Position.fromCharArray(board,
+					position.isWhiteToMove())));
+		}
+	}
+
+	@Test
+	public void parseWhiteToMove() {
+		assertTrue(FenCodec.parseWhiteToMove(FENS[0]));
+		assertFalse(FenCodec.parseWhiteToMove(FENS[1]));
+	}
+
+	@Test
+	public void epdOperations() {
+		String epd = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 bm e5; id \"x\";";
+		Position position = new Position();
+		int operations = FenCodec.parseEpd(epd, 0, epd.length(), position);
+		assertEquals("bm e5; id \"x\";", epd.substring(operations));
+		assertEquals(FENS[1], position.toFen());
+	}
+
+	@Test
+	public void epdWithClocks() {
+		String epd = FENS[4] + " id \"x\";";
+		Position position = new Position();
+		int operations = FenCodec.parseEpd(epd, 0, epd.length(), position);
+		assertEquals(FENS[4].length() + 1, operations);
+		assertEquals(FENS[4], position.toFen());
+
+		operations = FenCodec.parseEpd(FENS[4], 0, FENS[4].length(),
+				position);
+		assertEquals(FENS[4].length(), operations);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectOperationsInFen() {
+		Position.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 bm e5;");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectShortRank() {
+		Position.fromFen("rnbqkbnr/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectBadPiece() {
+		Position.fromFen("rnbqkbnr/ppppxppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectBadCastling() {
+		Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KX - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectBadEnPassant() {
+		Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e4 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectBadSideToMove() {
+		Position.fromFen("8/8/8/8/8/8/8/k6K x - - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectLongSideToMove() {
+		Position.fromFen("8/8/8/8/8/8/8/k6K white - - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectLongClock() {
+		Position.fromFen("8/8/8/8/8/8/8/k6K w - - 1000000000 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectTooManyFields() {
+		Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 2");
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class IncrementalFenTest {
+	private static final String PIECES = "KQRBNPkqrbnp0000000";
+
+	@Test
+	public void emptyBoard() {
+		IncrementalFen fen = new IncrementalFen();
+		StringBuilder out = new StringBuilder();
+		fen.appendPlacement(out);
+		assertEquals("8/8/8/8/8/8/8/8", out.toString());
+	}
+
+	@Test
+	public void setBoard() {
+		String start = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1";
+		BoardSnapshot snapshot = BoardSnapshot.fromFen(start);
+		IncrementalFen fen = new IncrementalFen();
+		fen.setBoard(snapshot);
+		assertEquals(start, fen.format(snapshot));
+		snapshot = snapshot.withPiece(4, 4, '0').withPiece(6, 4, 'P');
+		fen.updateRow(snapshot, 4);
+		fen.updateRow(snapshot, 6);
+		// The en passant square no longer has a pawn to capture.
+		assertEquals(
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR b KQkq - 0 1",
+				fen.format(snapshot));
+	}
+
+	/**
+	 * Random edits, each followed by encoding only the row edited, give the
+	 * same string as formatting the whole board.
+	 */
+	@Test
+	public void randomEdits() {
+		Random random = new Random(21);
+		char[][] board = new char[8][8];
+		FenCodec.parseBoard("8/8/8/8/8/8/8/8 w - - 0 1", board);
+		IncrementalFen fen = new IncrementalFen();
+		fen.setBoard(board);
+		for (int i = 0; i < 200000; i++) {
+			int row = random.nextInt(8);
+			board[row][random.nextInt(8)] = PIECES.charAt(random
+					.nextInt(PIECES.length()));
+			fen.updateRow(board, row);
+			boolean whiteToMove = random.nextBoolean();
+			int castling = random.nextInt(Position.ALL_CASTLING + 1);
+			int enPassant = random.nextBoolean() ? Position.NO_SQUARE
+					: random.nextInt(64);
+			int halfmoveClock = random.nextInt(100);
+			int fullmoveNumber = 1 + random.nextInt(200);
+			assertEquals(FenCodec.formatBoard(board, whiteToMove, castling,
+					enPassant, halfmoveClock, fullmoveNumber), fen.format(
+					board, whiteToMove, castling, enPassant, halfmoveClock,
+					fullmoveNumber));
+		}
+	}
+
+	@Test
+	public void randomSnapshots() {
+		Random random = new Random(22);
+		BoardSnapshot snapshot = BoardSnapshot.EMPTY;
+		IncrementalFen fen = new IncrementalFen();
+		fen.setBoard(snapshot);
+		for (int i = 0; i < 20000; i++) {
+			int row = random.nextInt(8);
+			snapshot = snapshot.withPiece(row, random.nextInt(8), PIECES
+					.charAt(random.nextInt(PIECES.length())));
+			fen.updateRow(snapshot, row);
+			if (random.nextInt(16) == 0) {
+				snapshot = snapshot.withWhiteToMove(!snapshot.isWhiteToMove());
+			}
+			assertEquals(FenCodec.formatBoard(snapshot.rows(), snapshot
+					.isWhiteToMove(), snapshot.getCastling(), snapshot
+					.getEnPassant(), snapshot.getHalfmoveClock(), snapshot
+					.getFullmoveNumber()), fen.format(snapshot));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class MaterialIndexTest {
+	private static final String ROOK_ENDING = "4k3/8/8/8/8/8/P7/R3K2r w - - 0 1";
+	private static final String SEVENTH = "4k3/P7/8/8/8/8/8/R3K2r w - - 0 1";
+	private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	@Test
+	public void signatures() {
+		long signature = MaterialIndex.parseSignature("KRPvKR");
+		assertEquals(signature,
+				MaterialIndex.signature(Position.fromFen(ROOK_ENDING)));
+		assertEquals(signature, MaterialIndex.parseSignature("kprVkr"));
+		assertEquals("KRPvKR", MaterialIndex.formatSignature(signature));
+		assertEquals("KQRRBBNNPPPPPPPPvKQRRBBNNPPPPPPPP",
+				MaterialIndex.formatSignature(MaterialIndex.signature(Position
+						.fromFen(START))));
+		assertEquals("v", MaterialIndex.formatSignature(0));
+	}
+
+	@Test
+	public void malformedSignatures() {
+		String[] malformed = { "KRP", "KvKvK", "KXvK",
+				"KPPPPPPPPPPPPPPPPvK" };
+		for (String text : malformed) {
+			try {
+				MaterialIndex.parseSignature(text);
+				fail(text);
+			}
+			catch (IllegalArgumentException e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public void withMaterial() {
+		MaterialIndex index = new MaterialIndex();
+		index.add("b", Position.fromFen(ROOK_ENDING));
+		index.add("A", Position.fromFen(SEVENTH));
+		index.add("start", Position.fromFen(START));
+		assertEquals(3, index.size());
+		long signature = MaterialIndex.parseSignature("KRPvKR");
+		assertEquals(Arrays.asList("A", "b"), index.withMaterial(signature));
+		assertEquals(Collections.emptyList(),
+				index.withMaterial(MaterialIndex.parseSignature("KvK")));
+
+		// Replacing a position moves it to its new material.
+		index.add("b", Position.fromFen(START));
+		assertEquals(3, index.size());
+		assertEquals(Arrays.asList("A"), index.withMaterial(signature));
+		assertTrue(index.remove("A"));
+		assertFalse(index.remove("A"));
+		assertEquals(Collections.emptyList(), index.withMaterial(signature));
+	}
+
+	@Test
+	public void matching() {
+		MaterialIndex index = new MaterialIndex();
+		index.add("rook ending", Position.fromFen(ROOK_ENDING));
+		index.add("seventh", Position.fromFen(SEVENTH));
+		index.add("start", Position.fromFen(START));
+
+		long[] masks = new long[Position.PIECES.length()];
+		assertEquals(Arrays.asList("rook ending", "seventh", "start"),
+				index.matching(masks));
+		masks[Position.WHITE_PAWN] = MaterialIndex.RANKS[6];
+		assertEquals(Arrays.asList("seventh"), index.matching(masks));
+		masks[Position.WHITE_PAWN] = MaterialIndex.FILES[0];
+		assertEquals(Arrays.asList("rook ending", "seventh", "start"),
+				index.matching(masks));
+		// Every mask must match.
+		masks[Position.BLACK_ROOK] = 1L << 7;
+		assertEquals(Arrays.asList("rook ending", "seventh"),
+				index.matching(masks));
+
+		index.remove("seventh");
+		assertEquals(Arrays.asList("rook ending"), index.matching(masks));
+	}
+
+	@Test
+	public void reusesIds() {
+		MaterialIndex index = new MaterialIndex();
+		for (int i = 0; i < 40; i++) {
+			index.add("p" + i, Position.fromFen(i % 2 == 0 ? ROOK_ENDING
+					: SEVENTH));
+		}
+		for (int i = 0; i < 40; i += 2) {
+			index.remove("p" + i);
+		}
+		for (int i = 0; i < 20; i++) {
+			index.add("q" + i, Position.fromFen(START));
+		}
+		assertEquals(40, index.size());
+		long[] masks = new long[Position.PIECES.length()];
+		masks[Position.WHITE_PAWN] = MaterialIndex.RANKS[1];
+		// A removed position must not match through its reused id.
+		assertEquals(20, index.matching(masks).size());
+		assertEquals(20, index.withMaterial(
+				MaterialIndex.parseSignature("KRPvKR")).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maskCount() {
+		new MaterialIndex().matching(new long[3]);
+	}
+}
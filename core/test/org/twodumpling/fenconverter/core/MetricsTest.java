@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class MetricsTest {
+	@After
+	public void tearDown() {
+		Metrics.setEnabled(false);
+		Metrics.setAllocationCounter(null);
+		Metrics.reset();
+	}
+
+	@Test
+	public void disabled() {
+		Metrics.Counter counter = Metrics.counter("test.counter");
+		Metrics.Timer timer = Metrics.timer("test.timer");
+		counter.increment();
+		long start = timer.start();
+		assertEquals(0, start);
+		timer.stop(start);
+		timer.record(1000);
+		assertEquals(0, counter.get());
+		assertEquals(0, timer.getCount());
+		assertEquals(0, timer.getPercentileNanos(0.5));
+		assertEquals(-1, timer.getMeanAllocatedBytes());
+	}
+
+	@Test
+	public void counter() {
+		Metrics.setEnabled(true);
+		Metrics.Counter counter = Metrics.counter("test.counter");
+		counter.increment();
+		counter.add(4);
+		assertEquals(5, counter.get());
+		Metrics.reset();
+		assertEquals(0, counter.get());
+	}
+
+	@Test
+	public void timer() {
+		Metrics.setEnabled(true);
+		Metrics.Timer timer = Metrics.timer("test.timer");
+		for (int i = 0; i < 99; i++) {
+			timer.record(100);
+		}
+		timer.record(100000);
+		timer.record(-5);
+		assertEquals(101, timer.getCount());
+		assertEquals(100000, timer.getMaxNanos());
+		assertEquals((99 * 100 + 100000) / 101, timer.getMeanNanos());
+		// 100 ns falls in the bucket 64 to 127 ns.
+		assertEquals(127, timer.getPercentileNanos(0.5));
+		assertEquals(127, timer.getPercentileNanos(0.9));
+		assertEquals(100000, timer.getPercentileNanos(1));
+		assertEquals(0, timer.getPercentileNanos(0));
+	}
+
+	@Test
+	public void startStop() {
+		Metrics.setEnabled(true);
+		Metrics.Timer timer = Metrics.timer("test.timer");
+		long start = timer.start();
+		assertTrue(start != 0);
+		timer.stop(start);
+		assertEquals(1, timer.getCount());
+		assertTrue(timer.getMaxNanos() >= 0);
+	}
+
+	@Test
+	public void allocation() {
+		final long[] bytes = { 0 };
+		Metrics.setEnabled(true);
+		Metrics.setAllocationCounter(new Metrics.AllocationCounter() {
+			@Override
+			public long getAllocatedBytes() {
+				return bytes[0];
+			}
+		});
+		Metrics.Timer timer = Metrics.timer("test.timer");
+		long start = timer.start();
+		bytes[0] += 300;
+		timer.stop(start);
+		start = timer.start();
+		bytes[0] += 100;
+		timer.stop(start);
+		assertEquals(200, timer.getMeanAllocatedBytes());
+	}
+
+	@Test
+	public void report() {
+		Metrics.setEnabled(true);
+		Metrics.timer("test.report.timer").record(2000);
+		Metrics.counter("test.report.counter").add(7);
+		String report = Metrics.report();
+		assertTrue(report.startsWith("timer"));
+		assertTrue(report.contains("test.report.timer"));
+		assertTrue(report.indexOf("test.report.timer") < report
+				.indexOf("counter "));
+		assertTrue(report.matches("(?s).*test\\.report\\.counter +7\\n.*"));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class NameIndexTest {
+	@Test
+	public void order() {
+		NameIndex index = new NameIndex();
+		index.addAll(Arrays.asList("b", "A", "a", "c"));
+		assertTrue(index.add("B"));
+		assertFalse(index.add("b"));
+		assertEquals(5, index.size());
+		assertEquals("A", index.get(0));
+		assertEquals("a", index.get(1));
+		assertEquals("B", index.get(2));
+		assertEquals("b", index.get(3));
+		assertEquals("c", index.get(4));
+		assertTrue(index.remove("B"));
+		assertFalse(index.contains("B"));
+		assertTrue(index.contains("b"));
+	}
+
+	@Test
+	public void prefixSearch() {
+		NameIndex index = new NameIndex();
+		index.addAll(Arrays.asList("Game 1", "game 2", "Gambit", "Endgame",
+				"Opening"));
+		assertEquals(2, index.count("game"));
+		assertEquals(3, index.count("GAM"));
+		assertEquals(0, index.count("x"));
+		assertEquals(5, index.count(""));
+		assertEquals(Arrays.asList("Endgame"), index.range("end", 0, 10));
+	}
+
+	@Test
+	public void paging() {
+		NameIndex index = new NameIndex();
+		for (int i = 0; i < 250; i++) {
+			index.add(String.format("pos %03d", i));
+		}
+		index.add("other");
+		List<String> page = index.range("pos", 100, 50);
+		assertEquals(50, page.size());
+		assertEquals("pos 100", page.get(0));
+		assertEquals("pos 149", page.get(49));
+		assertEquals(Arrays.asList("pos 249"), index.range("pos", 249, 50));
+		assertTrue(index.range("pos", 250, 50).isEmpty());
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Move generator node counts for the standard perft positions, to a depth
+ * that keeps the build quick; the bench module's PerftSuite goes deeper.
+ *
+ * @author Istvan Chung
+ */
+public class PerftTest {
+	private static final String[] FENS = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10" };
+
+	private static final long[][] NODES = {
+			{ 20, 400, 8902 },
+			{ 48, 2039, 97862 },
+			{ 14, 191, 2812, 43238 },
+			{ 6, 264, 9467 },
+			{ 44, 1486, 62379 },
+			{ 46, 2079, 89890 } };
+
+	@Test
+	public void standardPositions() {
+		for (int i = 0; i < FENS.length; i++) {
+			Position position = Position.fromFen(FENS[i]);
+			for (int depth = 1; depth <= NODES[i].length; depth++) {
+				assertEquals(FENS[i] + " depth " + depth,
+						NODES[i][depth - 1], Perft.count(position, depth));
+			}
+			// Counting must leave the position as it was.
+			assertEquals(FENS[i], position.toFen());
+		}
+	}
+
+	@Test
+	public void parallel() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < FENS.length; i++) {
+				Position position = Position.fromFen(FENS[i]);
+				assertEquals(NODES[i][2], Perft.count(position, 3, executor));
+				assertEquals(FENS[i], position.toFen());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
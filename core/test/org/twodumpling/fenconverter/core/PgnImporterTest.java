@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Istvan Chung
+ */
+public class PgnImporterTest {
+	private static final String GAMES = "[White \"Anna\"]\n[Black \"Ben\"]\n\n"
+			+ "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 1-0\n\n"
+			+ "[White \"Cleo\"]\n\n"
+			+ "1. d4 d5 2. c4 *\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SavedPositions saved;
+
+	@Before
+	public void open() throws IOException {
+		saved = new SavedPositions(folder.getRoot());
+	}
+
+	@After
+	public void close() throws IOException {
+		saved.close();
+	}
+
+	@Test
+	public void everyPly() throws IOException {
+		// A batch smaller than the number of positions, so that several
+		// batches are saved.
+		PgnImporter.Result result = new PgnImporter(saved, 3).importGames(
+				new StringReader(GAMES), "games.pgn", PgnImporter.EVERY_PLY);
+		assertEquals(2, result.getGames());
+		assertEquals(0, result.getSkippedGames());
+		assertEquals(7 + 4, result.getSaved());
+		assertFalse(result.isLimitReached());
+		assertEquals(11, saved.getNames().size());
+		assertEquals("r1bqkbnr/1ppp1ppp/p1n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 4",
+				saved.getFen("games.pgn #1 Anna-Ben ply 6"));
+		assertEquals("rnbqkbnr/ppp1pppp/8/3p4/2PP4/8/PP2PPPP/RNBQKBNR b KQkq c3 0 2",
+				saved.getFen("games.pgn #2 Cleo-? ply 3"));
+
+		// Importing again replaces the same names.
+		new PgnImporter(saved).importGames(new StringReader(GAMES),
+				"games.pgn", PgnImporter.EVERY_PLY);
+		assertEquals(11, saved.getNames().size());
+	}
+
+	@Test
+	public void everyNthPly() throws IOException {
+		PgnImporter.Result result = new PgnImporter(saved).importGames(
+				new StringReader(GAMES), "", PgnImporter.everyNthPly(2));
+		assertEquals(3 + 1, result.getSaved());
+		assertTrue(saved.contains("#1 Anna-Ben ply 2"));
+		assertTrue(saved.contains("#1 Anna-Ben ply 6"));
+		assertTrue(saved.contains("#2 Cleo-? ply 2"));
+		assertFalse(saved.contains("#2 Cleo-? ply 0"));
+	}
+
+	@Test
+	public void limit() throws IOException {
+		PgnImporter.Result result = new PgnImporter(saved, 2).importGames(
+				new StringReader(GAMES), "", PgnImporter.EVERY_PLY, 5);
+		assertEquals(5, result.getSaved());
+		assertTrue(result.isLimitReached());
+		assertEquals(5, saved.getNames().size());
+		assertTrue(saved.contains("#1 Anna-Ben ply 4"));
+		assertFalse(saved.contains("#1 Anna-Ben ply 5"));
+
+		// Exactly as many positions as the limit is not cut short.
+		result = new PgnImporter(saved).importGames(new StringReader(GAMES),
+				"", PgnImporter.EVERY_PLY, 11);
+		assertFalse(result.isLimitReached());
+	}
+
+	@Test
+	public void findSaved() throws IOException {
+		new PgnImporter(saved).importGames(new StringReader(GAMES), "",
+				PgnImporter.EVERY_PLY);
+		// Both games start from the same position.
+		assertEquals(2, saved.findSame(Position.fromFen(
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"))
+				.size());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class PgnReaderTest {
+	private static List<String> read(PgnReader reader) throws IOException {
+		List<String> fens = new ArrayList<String>();
+		while (reader.next()) {
+			fens.add(reader.getGame() + " " + reader.getPly() + " "
+					+ reader.getPosition().toFen());
+		}
+		reader.close();
+		return fens;
+	}
+
+	@Test
+	public void commentsAndVariations() throws IOException {
+		PgnReader reader = new PgnReader(new StringReader(
+				"[Event \"Test\"]\n"
+				+ "[White \"A\"]\n"
+				+ "\n"
+				+ "1. e4 {a comment (not a variation)} e5 (1... c5 2. Nf3 (2. c3)"
+				+ " d6) 2. Nf3 ; to the end of the line 2... a6\n"
+				+ "% an escaped line\n"
+				+ "2... Nc6 $1 *\n"));
+		List<String> fens = read(reader);
+		assertEquals(5, fens.size());
+		assertEquals("1 0 rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+				fens.get(0));
+		assertEquals("1 4 r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+				fens.get(4));
+		assertEquals(0, reader.getSkippedGames());
+	}
+
+	@Test
+	public void fenTag() throws IOException {
+		PgnReader reader = new PgnReader(new StringReader(
+				"[Event \"Ending\"]\n"
+				+ "[SetUp \"1\"]\n"
+				+ "[FEN \"8/8/8/8/8/8/4P3/k3K3 w - - 0 40\"]\n"
+				+ "\n"
+				+ "40. e4 Kb1 41. e5 1-0\n"
+				+ "\n"
+				+ "[Event \"Next\"]\n"
+				+ "\n"
+				+ "1. d4 *\n"));
+		assertTrue(reader.next());
+		assertEquals("Ending", reader.getTag("Event"));
+		assertEquals("8/8/8/8/8/8/4P3/k3K3 w - - 0 40", reader.getPosition()
+				.toFen());
+		assertTrue(reader.next());
+		assertTrue(reader.next());
+		assertTrue(reader.next());
+		assertEquals(3, reader.getPly());
+		assertEquals("8/8/8/4P3/8/8/8/1k2K3 b - - 0 41", reader.getPosition()
+				.toFen());
+		assertTrue(reader.next());
+		assertEquals(2, reader.getGame());
+		assertEquals(0, reader.getPly());
+		assertEquals("Next", reader.getTag("Event"));
+		assertTrue(reader.next());
+		assertFalse(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void skipBadGame() throws IOException {
+		List<String> fens = read(new PgnReader(new StringReader(
+				"[FEN \"not a position\"]\n\n1. e4 *\n\n"
+				+ "1. e4 e4 2. d4 *\n\n"
+				+ "1. d4 *\n")));
+		// The first game is skipped at its tag, the second at its illegal
+		// second move.
+		assertEquals(4, fens.size());
+		assertTrue(fens.get(0).startsWith("2 0 "));
+		assertTrue(fens.get(1).startsWith("2 1 "));
+		assertTrue(fens.get(2).startsWith("3 0 "));
+		assertTrue(fens.get(3).startsWith("3 1 "));
+	}
+}
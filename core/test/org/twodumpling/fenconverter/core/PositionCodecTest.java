@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class PositionCodecTest {
+	@Test
+	public void roundTrip() {
+		for (String fen : FenCodecTest.FENS) {
+			Position position = Position.fromFen(fen);
+			byte[] data = PositionCodec.encode(position);
+			assertTrue(data.length <= PositionCodec.MAX_LENGTH);
+			Position decoded = new Position();
+			PositionCodec.decode(data, decoded);
+			assertEquals(position, decoded);
+			assertEquals(fen, decoded.toFen());
+			assertEquals(position.getZobristKey(), decoded.getZobristKey());
+		}
+	}
+
+	@Test
+	public void roundTripAtOffset() {
+		Position position = Position.fromFen(FenCodecTest.FENS[2]);
+		ByteBuffer buffer = ByteBuffer.allocate(PositionCodec.MAX_LENGTH + 8);
+		buffer.position(5);
+		int length = PositionCodec.encode(position, buffer);
+		Position decoded = new Position();
+		PositionCodec.decode(buffer, 5, length, decoded);
+		assertEquals(position, decoded);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectTruncated() {
+		byte[] data = PositionCodec.encode(Position
+				.fromFen(FenCodecTest.FENS[0]));
+		byte[] truncated = new byte[data.length - 1];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		PositionCodec.decode(truncated, new Position());
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Istvan Chung
+ */
+public class PositionIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reopen() throws IOException {
+		File file = folder.newFile("index");
+		PositionIndex index = new PositionIndex(file);
+		index.put("a", "1");
+		index.put("b:c", "2");
+		index.put("a", "3");
+		index.remove("b:c");
+		index.close();
+
+		index = new PositionIndex(file);
+		assertEquals(1, index.size());
+		assertEquals("3", index.get("a"));
+		assertNull(index.get("b:c"));
+		index.close();
+	}
+
+	@Test
+	public void dropTornRecord() throws IOException {
+		File file = folder.newFile("index");
+		PositionIndex index = new PositionIndex(file);
+		index.put("kept", "1");
+		index.close();
+		long intact = file.length();
+		index = new PositionIndex(file);
+		index.put("torn", "2");
+		index.close();
+
+		// Cut the last record short, as a crash in the middle of a write
+		// would.
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.setLength(file.length() - 3);
+		raw.close();
+
+		index = new PositionIndex(file);
+		assertEquals(1, index.size());
+		assertEquals("1", index.get("kept"));
+		assertEquals(intact, file.length());
+		// The log must still take new records after the torn one is cut off.
+		index.put("after", "3");
+		index.close();
+
+		index = new PositionIndex(file);
+		assertEquals(2, index.size());
+		assertEquals("3", index.get("after"));
+		index.close();
+	}
+
+	@Test
+	public void compact() throws IOException {
+		File file = folder.newFile("index");
+		PositionIndex index = new PositionIndex(file);
+		for (int i = 0; i < 1000; i++) {
+			index.put("name", Integer.toString(i));
+		}
+		index.put("other", "x");
+		long before = file.length();
+		index.compact();
+		index.close();
+		assertEquals(true, file.length() < before);
+
+		index = new PositionIndex(file);
+		assertEquals(2, index.size());
+		assertEquals("999", index.get("name"));
+		assertEquals("x", index.get("other"));
+		index.close();
+	}
+}
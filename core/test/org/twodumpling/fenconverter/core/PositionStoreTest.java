@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Istvan Chung
+ */
+public class PositionStoreTest {
+	private static final int HEADER_LENGTH = 16;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reopen() throws IOException {
+		File file = new File(folder.getRoot(), "store");
+		PositionStore store = new PositionStore(file);
+		int[] slots = new int[FenCodecTest.FENS.length];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = store.add(Position.fromFen(FenCodecTest.FENS[i]));
+		}
+		store.remove(slots[1]);
+		store.close();
+
+		store = new PositionStore(file);
+		Position position = new Position();
+		assertFalse(store.get(slots[1], position));
+		for (int i = 0; i < slots.length; i++) {
+			if (i != 1) {
+				assertTrue(store.get(slots[i], position));
+				assertEquals(FenCodecTest.FENS[i], position.toFen());
+			}
+		}
+		// The freed slot is reused before the store grows.
+		assertEquals(slots[1], store.add(position));
+		store.close();
+	}
+
+	@Test
+	public void grow() throws IOException {
+		File file = new File(folder.getRoot(), "store");
+		PositionStore store = new PositionStore(file);
+		Position position = Position.fromFen(FenCodecTest.FENS[0]);
+		for (int i = 0; i < 200; i++) {
+			assertEquals(i, store.add(position));
+		}
+		store.close();
+
+		store = new PositionStore(file);
+		assertEquals(200, store.getHighWaterMark());
+		store.close();
+	}
+
+	@Test
+	public void reopenAfterTruncation() throws IOException {
+		File file = new File(folder.getRoot(), "store");
+		PositionStore store = new PositionStore(file);
+		store.add(Position.fromFen(FenCodecTest.FENS[0]));
+		int lost = store.add(Position.fromFen(FenCodecTest.FENS[1]));
+		store.close();
+
+		// Cut the file off in the middle of the second record.
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.setLength(HEADER_LENGTH + PositionStore.RECORD_SIZE + 10);
+		raw.close();
+
+		store = new PositionStore(file);
+		assertEquals(1, store.getHighWaterMark());
+		assertFalse(store.isUsed(lost));
+		Position position = new Position();
+		assertTrue(store.get(0, position));
+		assertEquals(FenCodecTest.FENS[0], position.toFen());
+		assertEquals(lost, store.add(Position.fromFen(FenCodecTest.FENS[2])));
+		store.close();
+
+		store = new PositionStore(file);
+		assertTrue(store.get(lost, position));
+		assertEquals(FenCodecTest.FENS[2], position.toFen());
+		store.close();
+	}
+
+	@Test
+	public void upgradeVersion1() throws IOException {
+		File file = new File(folder.getRoot(), "store");
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.writeInt(0x43535053);
+		raw.writeInt(1);
+		raw.writeInt(128);
+		raw.writeInt(0);
+		String[] fens = { FenCodecTest.FENS[0], null, "not a position",
+				FenCodecTest.FENS[3] };
+		for (int slot = 0; slot < fens.length; slot++) {
+			byte[] record = new byte[128];
+			if (fens[slot] != null) {
+				record[0] = 1;
+				record[1] = (byte) fens[slot].length();
+				byte[] fen = fens[slot].getBytes("US-ASCII");
+				System.arraycopy(fen, 0, record, 16, fen.length);
+			}
+			raw.write(record);
+		}
+		raw.close();
+
+		PositionStore store = new PositionStore(file);
+		Position position = new Position();
+		assertTrue(store.get(0, position));
+		assertEquals(FenCodecTest.FENS[0], position.toFen());
+		assertFalse(store.isUsed(1));
+		assertFalse(store.isUsed(2));
+		assertTrue(store.get(3, position));
+		assertEquals(FenCodecTest.FENS[3], position.toFen());
+		store.close();
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+}
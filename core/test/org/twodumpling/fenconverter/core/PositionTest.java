@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class PositionTest {
+	@Test
+	public void enPassantRanks() {
+		Position position = new Position();
+		position.setEnPassant(Position.NO_SQUARE);
+		position.setEnPassant(16);
+		position.setEnPassant(23);
+		position.setEnPassant(40);
+		position.setEnPassant(47);
+		int[] invalid = { -2, 0, 15, 24, 39, 48, 63, 64 };
+		for (int square : invalid) {
+			try {
+				position.setEnPassant(square);
+				fail("Accepted en passant square " + square);
+			}
+			catch (IllegalArgumentException e) {
+				// Expected.
+			}
+		}
+		assertEquals(47, position.getEnPassant());
+	}
+
+	@Test
+	public void fenLeavesOutImpossibleRights() {
+		String[][] cases = {
+				{ "4k3/8/8/8/8/8/8/4K3 w KQkq - 0 1",
+						"4k3/8/8/8/8/8/8/4K3 w - - 0 1" },
+				{ "r3k2r/8/8/8/8/8/8/R3K1R1 w KQkq - 0 1",
+						"r3k2r/8/8/8/8/8/8/R3K1R1 w Qkq - 0 1" },
+				{ "r3k2r/8/8/8/8/8/8/R2K3R b KQkq - 0 1",
+						"r3k2r/8/8/8/8/8/8/R2K3R b kq - 0 1" },
+				// No pawn in front of the square.
+				{ "4k3/8/8/8/8/8/8/4K3 b - e3 0 1",
+						"4k3/8/8/8/8/8/8/4K3 b - - 0 1" },
+				// The square is on the wrong side for the side to move.
+				{ "4k3/8/8/8/4P3/8/8/4K3 w - e3 0 1",
+						"4k3/8/8/8/4P3/8/8/4K3 w - - 0 1" },
+				{ "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 2",
+						"4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 2" } };
+		for (String[] fens : cases) {
+			Position position = Position.fromFen(fens[0]);
+			assertEquals(fens[1], position.toFen());
+			// The same as formatting the board.
+			assertEquals(fens[1], FenCodec.formatBoard(
+					position.toCharArray(), position.isWhiteToMove(),
+					position.getCastling(), position.getEnPassant(),
+					position.getHalfmoveClock(), position.getFullmoveNumber()));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectLargeHalfmoveClock() {
+		new Position().setHalfmoveClock(Position.MAX_CLOCK + 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectLargeFullmoveNumber() {
+		new Position().setFullmoveNumber(Position.MAX_CLOCK + 1);
+	}
+
+	@Test
+	public void clocksStopAtLimit() {
+		String fen = "4k3/8/8/8/8/8/8/4K3 b - - 999999999 999999999";
+		Position position = Position.fromFen(fen);
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		MoveGenerator.generate(position, moves);
+		long undo = MoveGenerator.makeMove(position, moves[0]);
+		assertEquals(Position.MAX_CLOCK, position.getHalfmoveClock());
+		assertEquals(Position.MAX_CLOCK, position.getFullmoveNumber());
+		// The written position must read back.
+		assertEquals(position, Position.fromFen(position.toFen()));
+		MoveGenerator.unmakeMove(position, moves[0], undo);
+		assertEquals(fen, position.toFen());
+
+		fen = "4k3/8/8/8/8/8/8/4K3 b - - 0 999999998";
+		position = Position.fromFen(fen);
+		undo = MoveGenerator.makeMove(position, moves[0]);
+		assertEquals(Position.MAX_CLOCK, position.getFullmoveNumber());
+		MoveGenerator.unmakeMove(position, moves[0], undo);
+		assertEquals(fen, position.toFen());
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class PositionValidatorTest {
+	private static PositionValidator.Problem check(String fen) {
+		return PositionValidator.check(Position.fromFen(fen));
+	}
+
+	@Test
+	public void legal() {
+		for (String fen : FenCodecTest.FENS) {
+			assertNull(fen, check(fen));
+		}
+		// Promoted pieces are allowed in place of missing pawns.
+		assertNull(check("k7/8/8/8/8/8/8/1NNNNNNK w - - 0 1"));
+	}
+
+	@Test
+	public void kings() {
+		assertEquals(PositionValidator.Problem.NO_WHITE_KING,
+				check("8/8/8/8/8/8/8/k7 w - - 0 1"));
+		assertEquals(PositionValidator.Problem.NO_BLACK_KING,
+				check("8/8/8/8/8/8/8/7K w - - 0 1"));
+		assertEquals(PositionValidator.Problem.TOO_MANY_WHITE_KINGS,
+				check("8/8/8/8/8/8/K7/k6K w - - 0 1"));
+		assertEquals(PositionValidator.Problem.TOO_MANY_BLACK_KINGS,
+				check("8/8/8/8/8/8/k7/k6K w - - 0 1"));
+	}
+
+	@Test
+	public void pawns() {
+		assertEquals(PositionValidator.Problem.PAWN_ON_BACK_RANK,
+				check("P7/8/8/8/8/8/8/k6K w - - 0 1"));
+		assertEquals(PositionValidator.Problem.PAWN_ON_BACK_RANK,
+				check("8/8/8/8/8/8/8/k2p3K w - - 0 1"));
+		assertEquals(PositionValidator.Problem.TOO_MANY_WHITE_PAWNS,
+				check("8/8/8/8/8/P7/PPPPPPPP/k6K w - - 0 1"));
+		assertEquals(PositionValidator.Problem.TOO_MANY_BLACK_PAWNS,
+				check("8/pppppppp/p7/8/8/8/8/k6K w - - 0 1"));
+	}
+
+	@Test
+	public void promotions() {
+		assertEquals(PositionValidator.Problem.TOO_MANY_WHITE_PIECES,
+				check("QQ6/8/8/8/8/8/PPPPPPPP/k6K w - - 0 1"));
+		assertEquals(PositionValidator.Problem.TOO_MANY_BLACK_PIECES,
+				check("nnn5/pppppppp/8/8/8/8/8/k6K w - - 0 1"));
+	}
+
+	@Test
+	public void opponentInCheck() {
+		assertEquals(PositionValidator.Problem.OPPONENT_IN_CHECK,
+				check("k7/8/8/8/8/8/8/R6K w - - 0 1"));
+		// The side to move may be in check.
+		assertNull(check("k7/8/8/8/8/8/8/R6K b - - 0 1"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void validate() {
+		PositionValidator.validate(Position
+				.fromFen("8/8/8/8/8/8/8/k7 w - - 0 1"));
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class SanTest {
+	private static String play(String fen, String san) {
+		Position position = Position.fromFen(fen);
+		MoveGenerator.makeMove(position, San.parse(position, san));
+		return position.toFen();
+	}
+
+	@Test
+	public void moves() {
+		String start = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+		assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+				play(start, "e4"));
+		assertEquals("rnbqkbnr/pppppppp/8/8/8/5N2/PPPPPPPP/RNBQKB1R b KQkq - 1 1",
+				play(start, "Nf3!?"));
+	}
+
+	@Test
+	public void castling() {
+		String fen = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+		assertEquals("r3k2r/8/8/8/8/8/8/R4RK1 b kq - 1 1", play(fen, "O-O"));
+		assertEquals("r3k2r/8/8/8/8/8/8/2KR3R b kq - 1 1", play(fen, "0-0-0+"));
+	}
+
+	@Test
+	public void disambiguation() {
+		String fen = "4k3/8/8/8/8/8/4K3/R6R w - - 0 1";
+		assertEquals("4k3/8/8/8/8/8/4K3/3R3R b - - 1 1", play(fen, "Rad1"));
+		assertEquals("4k3/8/8/8/8/8/4K3/R2R4 b - - 1 1", play(fen, "Rhd1"));
+		fen = "4k3/8/8/R7/8/8/8/R3K3 w - - 0 1";
+		assertEquals("4k3/8/8/8/R7/8/8/R3K3 b - - 1 1", play(fen, "R5a4"));
+	}
+
+	@Test
+	public void captureAndPromotion() {
+		String fen = "3rk3/2P5/8/3pP3/8/8/8/4K3 w - d6 0 2";
+		assertEquals("3rk3/2P5/3P4/8/8/8/8/4K3 b - - 0 2", play(fen, "exd6"));
+		assertEquals("3Qk3/8/8/3pP3/8/8/8/4K3 b - - 0 2", play(fen, "cxd8=Q#"));
+		assertEquals("2Nrk3/8/8/3pP3/8/8/8/4K3 b - - 0 2", play(fen, "c8=N"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectAmbiguous() {
+		San.parse(Position.fromFen("4k3/8/8/8/8/8/4K3/R6R w - - 0 1"), "Rd1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectIllegal() {
+		San.parse(Position.fromFen(
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"),
+				"e5");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectMalformed() {
+		San.parse(Position.fromFen(
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"),
+				"Zz9");
+	}
+}
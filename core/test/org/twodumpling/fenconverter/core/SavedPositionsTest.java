@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Istvan Chung
+ */
+public class SavedPositionsTest {
+	private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<String> sorted(List<String> names) {
+		names = new ArrayList<String>(names);
+		Collections.sort(names);
+		return names;
+	}
+
+	@Test
+	public void findSame() throws IOException {
+		File directory = folder.getRoot();
+		SavedPositions saved = new SavedPositions(directory);
+		saved.save("start", START);
+		// Castling rights and clocks do not make a different position.
+		saved.save("start again",
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 12 30");
+		saved.save("black to move",
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR b KQkq - 0 1");
+		saved.save("other", FenCodecTest.FENS[2]);
+
+		Position start = Position.fromFen(START);
+		assertEquals(Arrays.asList("start", "start again"),
+				sorted(saved.findSame(start)));
+		start.setWhiteToMove(false);
+		assertEquals(Arrays.asList("black to move"), saved.findSame(start));
+		assertTrue(saved.findSame(new Position()).isEmpty());
+
+		// Saving over a name or deleting it updates the lookup.
+		saved.save("start again", FenCodecTest.FENS[3]);
+		assertTrue(saved.delete("black to move"));
+		assertTrue(saved.findSame(start).isEmpty());
+		start.setWhiteToMove(true);
+		assertEquals(Arrays.asList("start"), saved.findSame(start));
+		saved.close();
+
+		// The lookup is rebuilt when the positions are opened again.
+		saved = new SavedPositions(directory);
+		assertEquals(Arrays.asList("start"), saved.findSame(start));
+		assertEquals(Arrays.asList("start again"),
+				saved.findSame(Position.fromFen(FenCodecTest.FENS[3])));
+		saved.close();
+	}
+
+	@Test
+	public void findSameAfterSaveAll() throws IOException {
+		SavedPositions saved = new SavedPositions(folder.getRoot());
+		Map<String, Position> positions = new LinkedHashMap<String, Position>();
+		for (int i = 0; i < FenCodecTest.FENS.length; i++) {
+			positions.put("p" + i, Position.fromFen(FenCodecTest.FENS[i]));
+		}
+		saved.saveAll(positions);
+		for (int i = 0; i < FenCodecTest.FENS.length; i++) {
+			assertEquals(Arrays.asList("p" + i),
+					saved.findSame(Position.fromFen(FenCodecTest.FENS[i])));
+		}
+		saved.close();
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Istvan Chung
+ */
+public class ZobristTest {
+	private static long hash(Position position) {
+		return Zobrist.hash(position.toCharArray(), position.isWhiteToMove());
+	}
+
+	@Test
+	public void parsed() {
+		for (String fen : FenCodecTest.FENS) {
+			Position position = Position.fromFen(fen);
+			assertEquals(fen, hash(position), position.getZobristKey());
+		}
+		assertEquals(0, new Position().getZobristKey());
+	}
+
+	@Test
+	public void sideToMove() {
+		Position position = Position.fromFen(FenCodecTest.FENS[0]);
+		long white = position.getZobristKey();
+		position.setWhiteToMove(!position.isWhiteToMove());
+		assertEquals(white ^ Zobrist.BLACK_TO_MOVE, position.getZobristKey());
+		position.setWhiteToMove(!position.isWhiteToMove());
+		assertEquals(white, position.getZobristKey());
+	}
+
+	@Test
+	public void ignoresState() {
+		Position position = Position
+				.fromFen("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		Position other = Position
+				.fromFen("r3k2r/8/8/8/8/8/8/R3K2R w - - 17 40");
+		assertEquals(position.getZobristKey(), other.getZobristKey());
+	}
+
+	/**
+	 * Keys kept up to date by edits match hashing the board from scratch.
+	 */
+	@Test
+	public void randomEdits() {
+		Random random = new Random(10);
+		String pieces = "KQRBNPkqrbnp0";
+		Position position = new Position();
+		for (int i = 0; i < 20000; i++) {
+			position.setPiece(random.nextInt(64),
+					pieces.charAt(random.nextInt(pieces.length())));
+			if (random.nextInt(8) == 0) {
+				position.setWhiteToMove(random.nextBoolean());
+			}
+			assertEquals(hash(position), position.getZobristKey());
+		}
+		position.clear();
+		assertEquals(hash(position), position.getZobristKey());
+	}
+
+	@Test
+	public void moves() {
+		Random random = new Random(11);
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		for (String fen : FenCodecTest.FENS) {
+			Position position = Position.fromFen(fen);
+			for (int ply = 0; ply < 40; ply++) {
+				int count = MoveGenerator.generate(position, moves);
+				if (count == 0) {
+					break;
+				}
+				long before = position.getZobristKey();
+				int move = moves[random.nextInt(count)];
+				long undo = MoveGenerator.makeMove(position, move);
+				assertEquals(hash(position), position.getZobristKey());
+				MoveGenerator.unmakeMove(position, move, undo);
+				assertEquals(before, position.getZobristKey());
+				MoveGenerator.makeMove(position, move);
+			}
+		}
+	}
+
+	@Test
+	public void distinct() {
+		assertTrue(Zobrist.piece(Position.WHITE_KING, 0) != Zobrist.piece(
+				Position.WHITE_KING, 1));
+		assertTrue(Zobrist.piece(Position.WHITE_KING, 0) != Zobrist.piece(
+				Position.BLACK_KING, 0));
+	}
+}
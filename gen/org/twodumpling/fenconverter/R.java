@@ -42,17 +42,28 @@ public final class R {
         public static final int deleteFileButton=0x7f080012;
         public static final int delete_saved=0x7f080020;
         public static final int displayFEN=0x7f080013;
+        public static final int dragOverlay=0x7f08002b;
         public static final int editFilename=0x7f080015;
         public static final int exportButton=0x7f080010;
         public static final int exportFileButton=0x7f080016;
+        public static final int exportWarning=0x7f08002c;
+        public static final int export_diagrams=0x7f080027;
+        public static final int find_material=0x7f080025;
+        public static final int find_same=0x7f080022;
         public static final int importButton=0x7f08000f;
         public static final int importFileButton=0x7f08001a;
+        public static final int importPgnButton=0x7f080026;
         public static final int layout=0x7f080000;
+        public static final int metrics=0x7f08002a;
         public static final int pasteFEN=0x7f080017;
         public static final int pasteFENButton=0x7f080018;
+        public static final int redo=0x7f080029;
         public static final int removePiece=0x7f08000e;
+        public static final int searchDeleteFile=0x7f080023;
+        public static final int searchFile=0x7f080024;
         public static final int setup_board=0x7f08001f;
         public static final int tomove=0x7f08001d;
+        public static final int undo=0x7f080028;
         public static final int whiteBishop=0x7f080005;
         public static final int whiteKing=0x7f080002;
         public static final int whiteKnight=0x7f080006;
@@ -79,35 +90,61 @@ public final class R {
         public static final int black=0x7f050010;
         public static final int cancel=0x7f050005;
         public static final int cancelButtonText=0x7f050001;
+        public static final int choose_pgn=0x7f05002c;
         public static final int clear_board=0x7f050013;
         public static final int copy=0x7f050007;
         public static final int copy_fen=0x7f050019;
         public static final int delete=0x7f050015;
         public static final int delete_saved=0x7f050014;
+        public static final int diagrams_failed=0x7f050032;
         public static final int done=0x7f050009;
         public static final int enter=0x7f05000c;
         public static final int exportButton=0x7f050003;
+        public static final int export_diagrams=0x7f050030;
         public static final int export_position=0x7f050006;
+        public static final int find_material=0x7f050028;
+        public static final int find_same=0x7f050023;
         public static final int f_deleted=0x7f050017;
+        public static final int f_duplicate=0x7f050026;
+        public static final int f_exported_diagrams=0x7f050031;
+        public static final int f_illegal_position=0x7f05002b;
         public static final int f_imported=0x7f05000b;
+        public static final int f_imported_pgn=0x7f05002d;
+        public static final int f_imported_pgn_limit=0x7f05003b;
+        public static final int f_metrics_saved=0x7f050039;
+        public static final int f_no_same_material=0x7f05002a;
+        public static final int f_same_material=0x7f050029;
+        public static final int f_same_position=0x7f050024;
         public static final int f_saved=0x7f050016;
         public static final int importButton=0x7f050002;
+        public static final int import_pgn=0x7f05002e;
         public static final int import_position=0x7f050004;
         public static final int imported=0x7f05000a;
         public static final int invalid_fen=0x7f05001d;
         public static final int license=0x7f050020;
         public static final int load=0x7f05000e;
         public static final int load_file=0x7f05001c;
+        public static final int metrics=0x7f050035;
+        public static final int metrics_failed=0x7f05003a;
         public static final int name=0x7f050012;
+        public static final int no_same_position=0x7f050025;
         public static final int no_saved_files=0x7f050018;
         public static final int paste_fen=0x7f05001b;
+        public static final int pgn_failed=0x7f05002f;
         public static final int readme=0x7f050021;
+        public static final int redo=0x7f050034;
+        public static final int reset=0x7f050038;
         public static final int save=0x7f050011;
+        public static final int search=0x7f050027;
         public static final int save_to_file=0x7f05001a;
         public static final int setup_board=0x7f050022;
         public static final int show_license=0x7f05001f;
+        public static final int start_recording=0x7f050036;
+        public static final int stop_recording=0x7f050037;
+        public static final int storage_failed=0x7f05003c;
         public static final int text_copied_to_clipboard=0x7f050008;
         public static final int to_move=0x7f05000d;
+        public static final int undo=0x7f050033;
         public static final int white=0x7f05000f;
     }
     public static final class style {
@@ -19,56 +19,98 @@
 
 package org.twodumpling.fenconverter;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.twodumpling.fenconverter.core.Metrics;
+import org.twodumpling.fenconverter.core.Position;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.ViewConfiguration;
 import android.widget.ImageView;
 
 public class Chessboard extends ImageView {
-	private static final Map<Character, Character> PIECE_DISPLAY;
-
-	static {
-		PIECE_DISPLAY = new HashMap<Character, Character>(13);
-		PIECE_DISPLAY.put('0', ' ');
-		// Use "black" glyphs as they are filled; use Paint for color instead
-		PIECE_DISPLAY.put('K', '\u265A');
-		PIECE_DISPLAY.put('Q', '\u265B');
-		PIECE_DISPLAY.put('R', '\u265C');
-		PIECE_DISPLAY.put('B', '\u265D');
-		PIECE_DISPLAY.put('N', '\u265E');
-		PIECE_DISPLAY.put('P', '\u265F');
-		PIECE_DISPLAY.put('k', '\u265A');
-		PIECE_DISPLAY.put('q', '\u265B');
-		PIECE_DISPLAY.put('r', '\u265C');
-		PIECE_DISPLAY.put('b', '\u265D');
-		PIECE_DISPLAY.put('n', '\u265E');
-		PIECE_DISPLAY.put('p', '\u265F');
-	}
+	private static final Metrics.Timer drawTimer = Metrics
+			.timer("board.draw");
 
 	private MainActivity main = null;
-	private Paint whitePiece, blackPiece;
+	private Typeface typeface;
+	/**
+	 * Smooths glyphs when a square is a pixel narrower than the atlas cell.
+	 */
+	private final Paint glyphPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	/**
+	 * The piece glyphs at the size of one square.
+	 */
+	private GlyphAtlas glyphAtlas;
+	/**
+	 * Screen area of each square, indexed by {@code row * 8 + column}.
+	 */
+	private final Rect[] squareRects = new Rect[64];
+	private final RectF drawableRect = new RectF();
+	/**
+	 * Where the board image is, in view coordinates, so that touches are
+	 * mapped to squares without allocating.
+	 */
+	private float boardLeft, boardTop, squareWidth, squareHeight;
+	private boolean layoutValid = false;
+
+	/**
+	 * Distance a touch moves before it is a drag rather than a tap.
+	 */
+	private final int touchSlop;
+	/**
+	 * Square the current touch started on, as {@code row * 8 + column}, or
+	 * -1 if there is no touch or it is being ignored.
+	 */
+	private int touchSquare = -1;
+	private float touchX, touchY;
+	private boolean dragging = false;
+	/**
+	 * Piece index being dragged from {@link #touchSquare}.
+	 */
+	private int draggedPiece;
+	/**
+	 * Shows the dragged piece on its own layer, or {@code null} to draw it
+	 * on the board instead.
+	 */
+	private DragOverlay dragOverlay;
+	/**
+	 * Where the dragged piece is drawn when there is no overlay.
+	 */
+	private final Rect dragRect = new Rect();
+
+	private static final long ALL_SQUARES = -1L;
+
+	/**
+	 * The board image with the pieces drawn on it, updated one square at a
+	 * time as squares change.
+	 */
+	private Bitmap boardLayer;
+	private final Canvas boardLayerCanvas = new Canvas();
+	/**
+	 * Squares that have changed since {@link #boardLayer} was last updated,
+	 * one bit per {@code row * 8 + column}.
+	 */
+	private long dirtySquares = ALL_SQUARES;
 
 	{
-		Paint piecePaint = new Paint();
-		piecePaint.setTextAlign(Paint.Align.CENTER);
 		// Don't try to load font in eclipse's preview.
 		if (!isInEditMode()) {
-			piecePaint.setTypeface(Typeface.createFromAsset(getContext()
-					.getAssets(), "fonts/FreeSerif.ttf"));
+			typeface = TypefaceCache.getPieceTypeface(getContext());
 		}
-		piecePaint.setAntiAlias(true);
-		whitePiece = new Paint(piecePaint);
-		blackPiece = new Paint(piecePaint);
-		whitePiece.setColor(0xffffffff);
-		blackPiece.setColor(0xff000000);
+		for (int i = 0; i < squareRects.length; i++) {
+			squareRects[i] = new Rect();
+		}
+		touchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
 	}
 
 	public Chessboard(Context context) {
@@ -87,55 +129,317 @@ public class Chessboard extends ImageView {
 		this.main = main;
 	}
 
-	@SuppressLint("DrawAllocation")
+	/**
+	 * Draw dragged pieces on an overlay rather than on the board. The
+	 * overlay must have the same parent as the board.
+	 */
+	void setDragOverlay(DragOverlay dragOverlay) {
+		this.dragOverlay = dragOverlay;
+		dragOverlay.setGlyphAtlas(glyphAtlas);
+	}
+
 	@Override
-	protected void onDraw(Canvas canvas) {
-		super.onDraw(canvas);
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		// The image matrix is only updated after this, so the squares are
+		// laid out in onLayout.
+		layoutValid = false;
+	}
 
-		if (isInEditMode()) {
-			// Don't try to display pieces in eclipse's preview
-			return;
+	@Override
+	protected void onLayout(boolean changed, int left, int top, int right,
+			int bottom) {
+		super.onLayout(changed, left, top, right, bottom);
+		if (changed || !layoutValid) {
+			computeLayout();
 		}
+	}
 
-		char[][] pieces = main.getPieces();
+	/**
+	 * Work out where every square is drawn and render the glyph atlas for
+	 * that square size, so that {@link #onDraw(Canvas)} only has to copy
+	 * glyphs.
+	 */
+	private void computeLayout() {
+		if (getDrawable() == null || isInEditMode()) {
+			return;
+		}
 
 		// Get the bounds of the chessboard image
-		RectF drawableRect = new RectF(getDrawable().getBounds());
+		drawableRect.set(getDrawable().getBounds());
 		getImageMatrix().mapRect(drawableRect);
 		float w = drawableRect.width(), h = drawableRect.height();
+		boardLeft = drawableRect.left;
+		boardTop = drawableRect.top;
+		squareWidth = w / 8;
+		squareHeight = h / 8;
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				squareRects[row * 8 + column].set(
+						Math.round(drawableRect.left + column * w / 8),
+						Math.round(drawableRect.top + row * h / 8),
+						Math.round(drawableRect.left + (column + 1) * w / 8),
+						Math.round(drawableRect.top + (row + 1) * h / 8));
+			}
+		}
 
-		whitePiece.setTextSize(w / pieces[0].length);
-		blackPiece.setTextSize(w / pieces[0].length);
-
-		for (int row = 0; row < pieces.length; row++) {
-			for (int column = 0; column < pieces[row].length; column++) {
-				String text = Character.toString(PIECE_DISPLAY
-						.get(pieces[row][column]));
-				float x = column * w / pieces[row].length + w
-						/ pieces[row].length / 2 + drawableRect.left;
-				// Baseline 5/6 of the way down by trial and error
-				float y = row * h / pieces.length + h * 5 / 6 / pieces.length
-						+ drawableRect.top;
-				canvas.drawText(text, x, y, Character
-						.isUpperCase(pieces[row][column]) ? whitePiece
-						: blackPiece);
+		int squareSize = (int) Math.ceil(Math.max(w, h) / 8);
+		if (squareSize > 0
+				&& (glyphAtlas == null || squareSize != glyphAtlas
+						.getSquareSize())) {
+			if (glyphAtlas != null) {
+				glyphAtlas.recycle();
+			}
+			glyphAtlas = new GlyphAtlas(typeface, squareSize);
+			if (dragOverlay != null) {
+				dragOverlay.setGlyphAtlas(glyphAtlas);
 			}
 		}
+		layoutValid = true;
+		dirtySquares = ALL_SQUARES;
 	}
 
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		if (glyphAtlas != null) {
+			if (dragOverlay != null) {
+				dragOverlay.setGlyphAtlas(null);
+			}
+			glyphAtlas.recycle();
+			glyphAtlas = null;
+			layoutValid = false;
+		}
+		if (boardLayer != null) {
+			boardLayer.recycle();
+			boardLayer = null;
+		}
+	}
+
+	/**
+	 * Redraw one square the next time the board is drawn, leaving the others
+	 * as they are in the cached board layer.
+	 */
+	public void invalidateSquare(int row, int column) {
+		int square = row * 8 + column;
+		dirtySquares |= 1L << square;
+		if (layoutValid) {
+			invalidate(squareRects[square]);
+		}
+		else {
+			invalidate();
+		}
+	}
+
+	/**
+	 * Redraw every square the next time the board is drawn.
+	 */
+	public void invalidateBoard() {
+		dirtySquares = ALL_SQUARES;
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		if (isInEditMode()) {
+			// Don't try to display pieces in eclipse's preview
+			super.onDraw(canvas);
+			return;
+		}
+
+		long start = drawTimer.start();
+		try {
+			if (!layoutValid) {
+				computeLayout();
+			}
+			if (glyphAtlas == null || getWidth() == 0 || getHeight() == 0) {
+				super.onDraw(canvas);
+				return;
+			}
+
+			if (boardLayer == null || boardLayer.getWidth() != getWidth()
+					|| boardLayer.getHeight() != getHeight()) {
+				if (boardLayer != null) {
+					boardLayer.recycle();
+				}
+				boardLayer = Bitmap.createBitmap(getWidth(), getHeight(),
+						Bitmap.Config.ARGB_8888);
+				boardLayerCanvas.setBitmap(boardLayer);
+				dirtySquares = ALL_SQUARES;
+			}
+
+			if (dirtySquares == ALL_SQUARES) {
+				boardLayer.eraseColor(Color.TRANSPARENT);
+				super.onDraw(boardLayerCanvas);
+				for (int square = 0; square < 64; square++) {
+					drawPiece(boardLayerCanvas, square);
+				}
+			}
+			else {
+				for (long dirty = dirtySquares; dirty != 0; dirty &= dirty - 1) {
+					int square = Long.numberOfTrailingZeros(dirty);
+					boardLayerCanvas.save();
+					boardLayerCanvas.clipRect(squareRects[square]);
+					boardLayerCanvas.drawColor(Color.TRANSPARENT,
+							PorterDuff.Mode.CLEAR);
+					super.onDraw(boardLayerCanvas);
+					drawPiece(boardLayerCanvas, square);
+					boardLayerCanvas.restore();
+				}
+			}
+			dirtySquares = 0;
+
+			canvas.drawBitmap(boardLayer, 0, 0, null);
+			if (dragging && dragOverlay == null) {
+				glyphAtlas.draw(canvas, draggedPiece, dragRect, glyphPaint);
+			}
+		}
+		finally {
+			// Time the early return for an unready view as well.
+			drawTimer.stop(start);
+		}
+	}
+
+	private void drawPiece(Canvas canvas, int square) {
+		if (dragging && square == touchSquare) {
+			// Drawn where it is being dragged instead.
+			return;
+		}
+		int piece = Position.pieceIndex(main.getPiece(square >>> 3,
+				square & 7));
+		if (piece != Position.EMPTY) {
+			glyphAtlas.draw(canvas, piece, squareRects[square], glyphPaint);
+		}
+	}
+
+	/**
+	 * @return the square under a point in view coordinates, as
+	 *         {@code row * 8 + column}, or -1 if it is off the board
+	 */
+	private int squareAt(float x, float y) {
+		if (!layoutValid) {
+			return -1;
+		}
+		float column = (x - boardLeft) / squareWidth;
+		float row = (y - boardTop) / squareHeight;
+		if (column < 0 || column >= 8 || row < 0 || row >= 8) {
+			return -1;
+		}
+		return (int) row * 8 + (int) column;
+	}
+
+	/**
+	 * Place the selected piece when a square is tapped, and move a piece
+	 * when it is dragged to another square or remove it when it is dragged
+	 * off the board.
+	 */
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
-		if (main != null) {
-			int x = (int) event.getX(), y = (int) event.getY();
-			RectF drawableRect = new RectF(getDrawable().getBounds());
-			getImageMatrix().mapRect(drawableRect);
-			x -= drawableRect.left;
-			y -= drawableRect.top;
-			int w = (int) drawableRect.width(), h = (int) drawableRect.height();
-			int row = y * 8 / h, column = x * 8 / w;
-			main.boardClick(row, column);
-		}
-
-		return super.onTouchEvent(event);
+		if (main == null) {
+			return super.onTouchEvent(event);
+		}
+		float x = event.getX(), y = event.getY();
+		switch (event.getAction() & MotionEvent.ACTION_MASK) {
+			case MotionEvent.ACTION_DOWN:
+				touchSquare = squareAt(x, y);
+				touchX = x;
+				touchY = y;
+				return touchSquare >= 0;
+			case MotionEvent.ACTION_MOVE:
+				if (touchSquare < 0) {
+					return false;
+				}
+				if (!dragging) {
+					float dx = x - touchX, dy = y - touchY;
+					if (dx * dx + dy * dy < touchSlop * touchSlop) {
+						return true;
+					}
+					int piece = Position.pieceIndex(main.getPiece(
+							touchSquare >>> 3, touchSquare & 7));
+					if (piece == Position.EMPTY || glyphAtlas == null) {
+						// Nothing to drag, and too far to be a tap.
+						touchSquare = -1;
+						return false;
+					}
+					startDrag(piece, x, y);
+				}
+				else {
+					moveDrag(x, y);
+				}
+				return true;
+			case MotionEvent.ACTION_UP:
+				if (touchSquare >= 0) {
+					int from = touchSquare;
+					touchSquare = -1;
+					if (dragging) {
+						endDrag(from);
+						int to = squareAt(x, y);
+						if (to < 0) {
+							main.movePiece(from >>> 3, from & 7, -1, -1);
+						}
+						else {
+							main.movePiece(from >>> 3, from & 7, to >>> 3,
+									to & 7);
+						}
+					}
+					else {
+						main.boardClick(from >>> 3, from & 7);
+					}
+				}
+				return true;
+			case MotionEvent.ACTION_CANCEL:
+				if (dragging) {
+					endDrag(touchSquare);
+				}
+				touchSquare = -1;
+				return true;
+			default:
+				return true;
+		}
+	}
+
+	private void startDrag(int piece, float x, float y) {
+		dragging = true;
+		draggedPiece = piece;
+		// Take the piece off its square in the cached board layer.
+		invalidateSquare(touchSquare >>> 3, touchSquare & 7);
+		if (dragOverlay != null) {
+			dragOverlay.startDrag(piece, getLeft() + x, getTop() + y);
+		}
+		else {
+			setDragRect(x, y);
+			invalidate(dragRect);
+		}
+	}
+
+	private void moveDrag(float x, float y) {
+		if (dragOverlay != null) {
+			dragOverlay.moveTo(getLeft() + x, getTop() + y);
+		}
+		else {
+			invalidate(dragRect);
+			setDragRect(x, y);
+			invalidate(dragRect);
+		}
+	}
+
+	private void endDrag(int from) {
+		dragging = false;
+		if (dragOverlay != null) {
+			dragOverlay.endDrag();
+		}
+		else {
+			invalidate(dragRect);
+		}
+		invalidateSquare(from >>> 3, from & 7);
+	}
+
+	/**
+	 * Centre {@link #dragRect} on a point.
+	 */
+	private void setDragRect(float x, float y) {
+		int size = glyphAtlas.getSquareSize();
+		int left = Math.round(x - size / 2f), top = Math.round(y - size / 2f);
+		dragRect.set(left, top, left + size, top + size);
 	}
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.twodumpling.fenconverter.core.FenCodec;
+import org.twodumpling.fenconverter.core.Position;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * Draws board diagrams into bitmaps without a {@link Chessboard} view, with
+ * the same board image and piece glyphs.
+ *
+ * The board image is scaled and the glyphs rendered once, when the renderer
+ * is created; after that a diagram is one bitmap copy for the board and one
+ * for each piece. {@link #renderAll(List, Output)} spreads a list of
+ * positions over one thread per core, each drawing into a bitmap borrowed
+ * from a pool that is kept for the life of the renderer, so a run of any
+ * length allocates no bitmaps.
+ *
+ * @author Istvan Chung
+ */
+final class DiagramRenderer {
+	/**
+	 * Receives each diagram. Called on the rendering threads, so it must be
+	 * safe to call concurrently.
+	 */
+	interface Output {
+		/**
+		 * @param index
+		 *            the index of the position in the list being rendered
+		 * @param diagram
+		 *            only valid until this returns; it is then reused
+		 */
+		void write(int index, Bitmap diagram) throws IOException;
+	}
+
+	/**
+	 * Counts and timing of a finished run.
+	 */
+	static final class Result {
+		final int rendered;
+		/**
+		 * Positions that could not be rendered because their FEN string was
+		 * malformed.
+		 */
+		final int failed;
+		final long nanos;
+
+		Result(int rendered, int failed, long nanos) {
+			this.rendered = rendered;
+			this.failed = failed;
+			this.nanos = nanos;
+		}
+
+		double getDiagramsPerSecond() {
+			return nanos == 0 ? 0 : rendered * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return rendered + " diagrams in " + (nanos / 1000000) + " ms ("
+					+ Math.round(getDiagramsPerSecond()) + "/s), " + failed
+					+ " failed";
+		}
+	}
+
+	private final int size;
+	private final int threads;
+	private final Bitmap board;
+	private final GlyphAtlas glyphAtlas;
+	/**
+	 * Area of a diagram taken by each square, indexed by
+	 * {@code row * 8 + column}.
+	 */
+	private final Rect[] squareRects = new Rect[64];
+	private final BlockingQueue<Bitmap> pool;
+
+	/**
+	 * @param size
+	 *            the width and height of each diagram in pixels
+	 */
+	DiagramRenderer(Context context, int size) {
+		this.size = size;
+		threads = Runtime.getRuntime().availableProcessors();
+
+		Bitmap image = BitmapFactory.decodeResource(context.getResources(),
+				R.drawable.chessboard);
+		board = Bitmap.createScaledBitmap(image, size, size, true);
+		if (board != image) {
+			image.recycle();
+		}
+		glyphAtlas = new GlyphAtlas(TypefaceCache.getPieceTypeface(context),
+				(size + 7) / 8);
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				squareRects[row * 8 + column] = new Rect(column * size / 8,
+						row * size / 8, (column + 1) * size / 8, (row + 1)
+								* size / 8);
+			}
+		}
+
+		pool = new ArrayBlockingQueue<Bitmap>(threads);
+		for (int i = 0; i < threads; i++) {
+			pool.add(Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888));
+		}
+	}
+
+	/**
+	 * Draw a position into a bitmap of the renderer's size. May be called
+	 * from several threads at once, with different bitmaps and canvases.
+	 *
+	 * @param canvas
+	 *            a canvas drawing into the bitmap
+	 * @param paint
+	 *            a paint with {@link Paint#FILTER_BITMAP_FLAG} set, used by
+	 *            only this thread
+	 */
+	void render(Position position, Canvas canvas, Paint paint) {
+		canvas.drawBitmap(board, 0, 0, null);
+		for (long b = position.getOccupancy(); b != 0; b &= b - 1) {
+			int square = Long.numberOfTrailingZeros(b);
+			// Squares count from a1, rows of the diagram from the eighth
+			// rank.
+			int rect = (7 - (square >>> 3)) * 8 + (square & 7);
+			glyphAtlas.draw(canvas, position.getPieceIndex(square),
+					squareRects[rect], paint);
+		}
+	}
+
+	/**
+	 * Render a list of positions in parallel, one thread per core.
+	 *
+	 * @throws IOException
+	 *             if {@code output} failed; rendering stops at the first
+	 *             failure
+	 */
+	Result renderAll(final List<String> fens, final Output output)
+			throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] workers = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				workers[i] = executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException, InterruptedException {
+						Bitmap diagram = pool.take();
+						try {
+							Canvas canvas = new Canvas(diagram);
+							Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+							Position position = new Position();
+							int index;
+							while ((index = next.getAndIncrement()) < fens.size()) {
+								String fen = fens.get(index);
+								try {
+									FenCodec.parsePosition(fen, 0,
+											fen.length(), position);
+								}
+								catch (IllegalArgumentException e) {
+									failed.incrementAndGet();
+									continue;
+								}
+								render(position, canvas, paint);
+								try {
+									output.write(index, diagram);
+								}
+								catch (IOException e) {
+									// Stop the other workers too.
+									next.set(fens.size());
+									throw e;
+								}
+							}
+						}
+						finally {
+							pool.add(diagram);
+						}
+						return null;
+					}
+				});
+			}
+			Throwable failure = null;
+			for (Future<?> worker : workers) {
+				try {
+					worker.get();
+				}
+				catch (ExecutionException e) {
+					// Wait for the other workers to finish with their
+					// bitmaps before reporting the failure.
+					next.set(fens.size());
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			if (failure != null) {
+				throw new RuntimeException(failure);
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		Result result = new Result(fens.size() - failed.get(), failed.get(),
+				System.nanoTime() - start);
+		if (BuildConfig.DEBUG) {
+			Log.d("DiagramRenderer", "renderAll: " + result + " on "
+					+ threads + " threads");
+		}
+		return result;
+	}
+
+	/**
+	 * Free the bitmaps. The renderer may not be used afterwards.
+	 */
+	void recycle() {
+		board.recycle();
+		glyphAtlas.recycle();
+		Bitmap diagram;
+		while ((diagram = pool.poll()) != null) {
+			diagram.recycle();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter;
+
+import org.twodumpling.fenconverter.core.Position;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * The piece being dragged across a {@link Chessboard}, one square in size,
+ * laid out over the board.
+ *
+ * While a drag is in progress the view is drawn once into its own hardware
+ * layer, and following the finger only changes its translation. Neither
+ * the piece nor the board under it is redrawn for each touch event; the
+ * layer is just composited at its new place. Translation needs API 11, so
+ * the board draws the piece itself on earlier versions.
+ *
+ * @author Istvan Chung
+ */
+public class DragOverlay extends View {
+	private GlyphAtlas glyphAtlas;
+	private int piece = Position.EMPTY;
+	private final Paint glyphPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final Rect bounds = new Rect();
+
+	public DragOverlay(Context context) {
+		super(context);
+	}
+
+	public DragOverlay(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	public DragOverlay(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+	}
+
+	/**
+	 * Use the glyphs of the board, which also sets the size of this view.
+	 *
+	 * @param glyphAtlas
+	 *            the board's atlas, or {@code null} once it has been
+	 *            recycled
+	 */
+	void setGlyphAtlas(GlyphAtlas glyphAtlas) {
+		this.glyphAtlas = glyphAtlas;
+		requestLayout();
+		invalidate();
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		int size = glyphAtlas == null ? 0 : glyphAtlas.getSquareSize();
+		setMeasuredDimension(size, size);
+	}
+
+	/**
+	 * Show a piece, centred on a point in the coordinates of the parent.
+	 *
+	 * @param piece
+	 *            a piece index
+	 */
+	@SuppressLint("NewApi")
+	void startDrag(int piece, float x, float y) {
+		this.piece = piece;
+		setLayerType(LAYER_TYPE_HARDWARE, null);
+		moveTo(x, y);
+		setVisibility(VISIBLE);
+		invalidate();
+	}
+
+	/**
+	 * Centre the piece on a point in the coordinates of the parent.
+	 */
+	@SuppressLint("NewApi")
+	void moveTo(float x, float y) {
+		setTranslationX(x - getLeft() - getWidth() / 2f);
+		setTranslationY(y - getTop() - getHeight() / 2f);
+	}
+
+	@SuppressLint("NewApi")
+	void endDrag() {
+		setVisibility(INVISIBLE);
+		// Layers hold on to video memory, so only keep one while dragging.
+		setLayerType(LAYER_TYPE_NONE, null);
+		piece = Position.EMPTY;
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		if (glyphAtlas != null && piece != Position.EMPTY) {
+			bounds.set(0, 0, getWidth(), getHeight());
+			glyphAtlas.draw(canvas, piece, bounds, glyphPaint);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter;
+
+import org.twodumpling.fenconverter.core.Position;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * All twelve piece glyphs pre-rendered side by side at the size of one
+ * square, so that drawing a piece is a bitmap copy rather than text layout.
+ *
+ * Once created, an atlas is only read, so it may be drawn from several
+ * threads at once.
+ *
+ * @author Istvan Chung
+ */
+final class GlyphAtlas {
+	/**
+	 * Glyphs for the pieces in {@link Position#PIECES}, in the same order.
+	 * Use "black" glyphs as they are filled; use Paint for color instead.
+	 */
+	static final String PIECE_DISPLAY = "\u265A\u265B\u265C\u265D\u265E\u265F"
+			+ "\u265A\u265B\u265C\u265D\u265E\u265F";
+
+	private final Bitmap bitmap;
+	private final int squareSize;
+	/**
+	 * Area of {@link #bitmap} holding each piece, by piece index.
+	 */
+	private final Rect[] sources = new Rect[PIECE_DISPLAY.length()];
+
+	/**
+	 * @param typeface
+	 *            the piece font, or {@code null} for the default, as in
+	 *            layout previews
+	 */
+	GlyphAtlas(Typeface typeface, int squareSize) {
+		this.squareSize = squareSize;
+		Paint piecePaint = new Paint();
+		piecePaint.setTextAlign(Paint.Align.CENTER);
+		if (typeface != null) {
+			piecePaint.setTypeface(typeface);
+		}
+		piecePaint.setAntiAlias(true);
+		piecePaint.setTextSize(squareSize);
+		Paint whitePiece = new Paint(piecePaint);
+		Paint blackPiece = new Paint(piecePaint);
+		whitePiece.setColor(0xffffffff);
+		blackPiece.setColor(0xff000000);
+
+		bitmap = Bitmap.createBitmap(squareSize * sources.length, squareSize,
+				Bitmap.Config.ARGB_8888);
+		Canvas atlas = new Canvas(bitmap);
+		for (int i = 0; i < sources.length; i++) {
+			int left = i * squareSize;
+			sources[i] = new Rect(left, 0, left + squareSize, squareSize);
+			// Baseline 5/6 of the way down by trial and error
+			atlas.drawText(PIECE_DISPLAY, i, i + 1, left + squareSize / 2f,
+					squareSize * 5f / 6, Character.isUpperCase(Position.PIECES
+							.charAt(i)) ? whitePiece : blackPiece);
+		}
+	}
+
+	int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Draw a piece scaled to fill a square.
+	 *
+	 * @param paint
+	 *            should have {@link Paint#FILTER_BITMAP_FLAG} set, to smooth
+	 *            glyphs when the square is a pixel smaller than the atlas
+	 *            cell
+	 */
+	void draw(Canvas canvas, int piece, Rect square, Paint paint) {
+		canvas.drawBitmap(bitmap, sources[piece], square, paint);
+	}
+
+	void recycle() {
+		bitmap.recycle();
+	}
+}
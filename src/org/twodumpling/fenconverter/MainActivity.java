@@ -19,30 +19,40 @@
 
 package org.twodumpling.fenconverter;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import org.twodumpling.fenconverter.core.BoardSnapshot;
+import org.twodumpling.fenconverter.core.EditHistory;
+import org.twodumpling.fenconverter.core.FenCache;
+import org.twodumpling.fenconverter.core.FenCodec;
+import org.twodumpling.fenconverter.core.IncrementalFen;
+import org.twodumpling.fenconverter.core.MaterialIndex;
+import org.twodumpling.fenconverter.core.Metrics;
+import org.twodumpling.fenconverter.core.PgnImporter;
+import org.twodumpling.fenconverter.core.Position;
+import org.twodumpling.fenconverter.core.PositionValidator;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.content.res.ColorStateList;
+import android.database.DataSetObserver;
 import android.graphics.Typeface;
 import android.os.Bundle;
+import android.os.Debug;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -51,11 +61,12 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.WebView;
-import android.widget.ArrayAdapter;
+import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.RadioButton;
-import android.widget.Spinner;
+import android.widget.ScrollView;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -66,42 +77,34 @@ import android.widget.Toast;
  * @author Istvan Chung
  */
 public class MainActivity extends Activity {
+	private static final Metrics.Timer parseTimer = Metrics
+			.timer("fen.parse");
+	private static final Metrics.Timer formatTimer = Metrics
+			.timer("fen.format");
+	/**
+	 * Allocations by the current thread, counted by the runtime while
+	 * metrics are being recorded
+	 */
+	private static final Metrics.AllocationCounter threadAllocations = new Metrics.AllocationCounter() {
+		@SuppressWarnings("deprecation")
+		@Override
+		public long getAllocatedBytes() {
+			return Debug.getThreadAllocSize();
+		}
+	};
+
 	/**
 	 * Unpack an FEN string into an array.
 	 * 
 	 * @param fen
 	 *            the FEN string
-	 * @return See {@link #getPieces()}
+	 * @return an array representation, described in {@link FenCodec}
 	 */
 	public static char[][] fenToCharArr(String fen) {
+		long start = parseTimer.start();
 		char[][] board = new char[8][8];
-		String fenStringRows = fen.substring(0, fen.indexOf(" "));
-		String[] rows = fenStringRows.split("/");
-		if (rows.length != 8) {
-			throw new IllegalArgumentException("Wrong number of rows");
-		}
-		for (int i = 0; i < rows.length; i++) {
-			int column = 0;
-			for (int y = 0; y < rows[i].length(); y++) {
-				char c = rows[i].charAt(y);
-				if (c >= '0' && c <= '9') {
-					for (int z = 0; z < c - '0'; z++) {
-						board[i][column] = '0';
-						column++;
-					}
-				}
-				else if ("KQRBNPkqrbnp".indexOf(c) != -1) {
-					board[i][column] = rows[i].charAt(y);
-					column++;
-				}
-				else {
-					throw new IllegalArgumentException("Invalid character");
-				}
-			}
-			if (column != 8) {
-				throw new IllegalArgumentException("Row wrong length");
-			}
-		}
+		FenCodec.parseBoard(fen, board);
+		parseTimer.stop(start);
 		return board;
 	}
 
@@ -109,41 +112,39 @@ public class MainActivity extends Activity {
 	 * Create an FEN string.
 	 * 
 	 * @param board
-	 *            an array representation, described in {@link #getPieces()}
+	 *            an array representation, described in {@link FenCodec}
 	 * @param whiteToMove
 	 *            whether white is to move
 	 * @return an FEN string with the specified position and to-move color
 	 */
 	public static String charToFen(char[][] board, boolean whiteToMove) {
-		StringBuilder fenBuilder = new StringBuilder();
-		for (int i = 0; i < board.length; i++) {
-			int blank = 0;
-			for (int y = 0; y < board[0].length; y++) {
-				if (board[i][y] == '0') {
-					blank++;
-				}
-				else {
-					if (blank > 0) {
-						fenBuilder.append(blank);
-						fenBuilder.append(board[i][y]);
-					}
-					else {
-						fenBuilder.append(board[i][y]);
-					}
-					blank = 0;
-				}
-			}
-			if (blank > 0) {
-				fenBuilder.append(blank);
-			}
-			if (i != board.length - 1) {
-				fenBuilder.append("/");
-			}
-		}
-		fenBuilder.append(" ");
-		fenBuilder.append(whiteToMove ? "w" : "b");
-		fenBuilder.append(" - - 0 1");
-		return fenBuilder.toString();
+		long start = formatTimer.start();
+		String fen = FenCodec.formatBoard(board, whiteToMove);
+		formatTimer.stop(start);
+		return fen;
+	}
+
+	/**
+	 * Create an FEN string with all six fields. Castling rights and an en
+	 * passant square that no longer fit the board are left out.
+	 * 
+	 * @param board
+	 *            an array representation, described in {@link FenCodec}
+	 * @param whiteToMove
+	 *            whether white is to move
+	 * @param castling
+	 *            castling rights, as in {@link Position#getCastling()}
+	 * @param enPassant
+	 *            en passant square, or {@link Position#NO_SQUARE}
+	 * @return an FEN string with the specified position and state
+	 */
+	public static String charToFen(char[][] board, boolean whiteToMove,
+			int castling, int enPassant, int halfmoveClock, int fullmoveNumber) {
+		long start = formatTimer.start();
+		String fen = FenCodec.formatBoard(board, whiteToMove, castling,
+				enPassant, halfmoveClock, fullmoveNumber);
+		formatTimer.stop(start);
+		return fen;
 	}
 
 	/**
@@ -154,23 +155,66 @@ public class MainActivity extends Activity {
 	 * @return {@code true} if white is to move, {@code false} otherwise.
 	 */
 	public static boolean fenToMove(String fen) {
-		return (fen.substring(fen.indexOf(" "), fen.length() - 1)).substring(1,
-				2).equals("w");
+		return FenCodec.parseWhiteToMove(fen);
 	}
 
 	/**
-	 * {@code true} iff white is to move
+	 * Number of parsed FEN strings kept, so that loading the starting
+	 * position or a recently loaded string again does not parse it
+	 */
+	private static final int FEN_CACHE_SIZE = 32;
+	private static final FenCache fenCache = new FenCache(FEN_CACHE_SIZE);
+
+	/**
+	 * Request code for choosing a PGN file to import.
+	 */
+	private static final int REQUEST_PGN = 1;
+	/**
+	 * Width and height of exported diagrams, in pixels.
 	 */
-	private boolean whiteToMove;
+	private static final int DIAGRAM_SIZE = 400;
+
 	private Chessboard chessboard;
 	private Map<Button, Character> pieceButtons;
 	private char selectedPiece;
 	private Button selectedButton;
 	private ColorStateList oldColor;
 	/**
-	 * See {@link #getPieces()}
+	 * The board as it is now, with the side to move and the rest of the
+	 * state of the last imported FEN string. Edits replace it with a new
+	 * snapshot, so one that has been handed out never changes.
+	 */
+	private BoardSnapshot board;
+	/**
+	 * The FEN string of {@link #board}, kept up to date one row at a time
+	 */
+	private final IncrementalFen liveFen = new IncrementalFen();
+	private PositionRepository positions;
+	/**
+	 * Edits to {@link #board}, for undo and redo
 	 */
-	private char[][] pieces;
+	private EditHistory history = new EditHistory();
+	/**
+	 * Whether undo and redo were enabled when the menu was last prepared
+	 */
+	private boolean menuCanUndo, menuCanRedo;
+	private final EditHistory.Target historyTarget = new EditHistory.Target() {
+		@Override
+		public void setPiece(int square, int piece) {
+			int row = 7 - (square >>> 3), column = square & 7;
+			board = board.withPiece(row, column,
+					piece == Position.EMPTY ? '0' : Position.PIECES
+							.charAt(piece));
+			liveFen.updateRow(board, row);
+			chessboard.invalidateSquare(row, column);
+		}
+
+		@Override
+		public void switchSideToMove() {
+			board = board.withWhiteToMove(!board.isWhiteToMove());
+			showSideToMove();
+		}
+	};
 
 	@SuppressLint("NewApi")
 	@Override
@@ -180,6 +224,11 @@ public class MainActivity extends Activity {
 
 		chessboard = (Chessboard) findViewById(R.id.chessboard);
 		chessboard.registerMainActivity(this);
+		if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB) {
+			// Earlier versions cannot move a view without laying it out
+			// again, so the board draws dragged pieces itself.
+			chessboard.setDragOverlay((DragOverlay) findViewById(R.id.dragOverlay));
+		}
 
 		pieceButtons = new HashMap<Button, Character>(13);
 		pieceButtons.put((Button) findViewById(R.id.whiteKing), 'K');
@@ -195,19 +244,22 @@ public class MainActivity extends Activity {
 		pieceButtons.put((Button) findViewById(R.id.blackKnight), 'n');
 		pieceButtons.put((Button) findViewById(R.id.blackPawn), 'p');
 
-		Typeface typeface = Typeface.createFromAsset(getAssets(),
-				"fonts/FreeSerif.ttf");
+		Typeface typeface = TypefaceCache.getPieceTypeface(this);
 		for (Button b : pieceButtons.keySet()) {
 			b.setTypeface(typeface);
 			b.setTextSize(30);
 		}
 
-		// Avoid using FreeSerif for remove button.
+		// Avoid using the piece font for remove button.
 		pieceButtons.put((Button) findViewById(R.id.removePiece), '0');
 
+		// Opening the saved positions the first time migrates the files
+		// written by earlier versions, so start it before it is needed.
+		positions = PositionRepository.get(this);
+		positions.open();
+
 		if (savedInstanceState == null) {
 			clearBoard();
-			whiteToMove = true;
 			selectedButton = null;
 			selectedPiece = '0';
 		}
@@ -220,7 +272,16 @@ public class MainActivity extends Activity {
 			catch (IllegalArgumentException e) {
 				Log.d("MainActivity", "Load FEN failed", e);
 				clearBoard();
-				whiteToMove = true;
+			}
+
+			int[] savedHistory = savedInstanceState.getIntArray("history");
+			if (savedHistory != null) {
+				try {
+					history = new EditHistory(savedHistory);
+				}
+				catch (IllegalArgumentException e) {
+					Log.d("MainActivity", "Restore history failed", e);
+				}
 			}
 
 			Button oldSelectedButton = (Button) findViewById(savedInstanceState.getInt(
@@ -244,27 +305,65 @@ public class MainActivity extends Activity {
 	 */
 	@SuppressLint("NewApi")
 	private void loadFEN(String fen) {
-		char[][] oldPieces = pieces;
-		boolean oldWhiteToMove = whiteToMove;
+		BoardSnapshot snapshot;
+		// The cache times its own parsing, so hits are not counted as parses.
 		try {
-			pieces = fenToCharArr(fen);
-			whiteToMove = fenToMove(fen);
-			View toMoveSwitch = findViewById(R.id.tomove);
-			if (toMoveSwitch != null) {
-				((Switch) toMoveSwitch).setChecked(whiteToMove);
-			}
-			else {
-				RadioButton toMoveButton = (RadioButton) findViewById(whiteToMove ? R.id.whitemove
-						: R.id.blackmove);
-				toMoveButton.setChecked(true);
-			}
-			chessboard.invalidate();
+			snapshot = fenCache.get(fen);
 		}
 		catch (Exception e) {
-			pieces = oldPieces;
-			whiteToMove = oldWhiteToMove;
 			throw new IllegalArgumentException("Malformed FEN", e);
 		}
+		if (board != null) {
+			// Make loading a single edit that can be undone.
+			history.beginGroup();
+			for (int row = 0; row < 8; row++) {
+				for (int column = 0; column < 8; column++) {
+					char old = board.getPiece(row, column);
+					char loaded = snapshot.getPiece(row, column);
+					if (old != loaded) {
+						history.recordPiece(Position.square(row, column),
+								Position.pieceIndex(old),
+								Position.pieceIndex(loaded));
+					}
+				}
+			}
+			if (board.isWhiteToMove() != snapshot.isWhiteToMove()) {
+				history.recordSideToMove();
+			}
+			history.endGroup();
+			historyChanged();
+		}
+		// Snapshots are immutable, so the cached one can be used directly.
+		board = snapshot;
+		liveFen.setBoard(board);
+		showSideToMove();
+		chessboard.invalidateBoard();
+	}
+
+	/**
+	 * Show the side to move of {@link #board} on the side to move switch or buttons.
+	 */
+	@SuppressLint("NewApi")
+	private void showSideToMove() {
+		View toMoveSwitch = findViewById(R.id.tomove);
+		if (toMoveSwitch != null) {
+			((Switch) toMoveSwitch).setChecked(board.isWhiteToMove());
+		}
+		else {
+			RadioButton toMoveButton = (RadioButton) findViewById(board.isWhiteToMove() ? R.id.whitemove
+					: R.id.blackmove);
+			toMoveButton.setChecked(true);
+		}
+	}
+
+	/**
+	 * @return the FEN string of the board as it is now
+	 */
+	private String currentFen() {
+		long start = formatTimer.start();
+		String fen = liveFen.format(board);
+		formatTimer.stop(start);
+		return fen;
 	}
 
 	@Override
@@ -275,7 +374,8 @@ public class MainActivity extends Activity {
 			savedInstanceState.putInt("selectedButtonId",
 					selectedButton.getId());
 		}
-		savedInstanceState.putString("FEN", charToFen(pieces, whiteToMove));
+		savedInstanceState.putString("FEN", currentFen());
+		savedInstanceState.putIntArray("history", history.save());
 	}
 
 	@Override
@@ -285,47 +385,114 @@ public class MainActivity extends Activity {
 		return true;
 	}
 
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		menuCanUndo = history.canUndo();
+		menuCanRedo = history.canRedo();
+		menu.findItem(R.id.undo).setEnabled(menuCanUndo);
+		menu.findItem(R.id.redo).setEnabled(menuCanRedo);
+		return super.onPrepareOptionsMenu(menu);
+	}
+
 	protected void boardClick(int row, int column) {
-		if (selectedPiece != 0 && row >= 0 && row < pieces.length
-				&& column >= 0 && column < pieces[row].length) {
-			if (pieces[row][column] == selectedPiece) {
-				// Clear by clicking on the same piece
-				pieces[row][column] = '0';
+		if (selectedPiece != 0 && row >= 0 && row < 8 && column >= 0
+				&& column < 8) {
+			char old = board.getPiece(row, column);
+			// Clear by clicking on the same piece
+			char piece = old == selectedPiece ? '0' : selectedPiece;
+			if (piece != old) {
+				board = board.withPiece(row, column, piece);
+				liveFen.updateRow(board, row);
+				history.recordPiece(Position.square(row, column),
+						Position.pieceIndex(old), Position.pieceIndex(piece));
+				historyChanged();
 			}
-			else {
-				pieces[row][column] = selectedPiece;
-			}
-			chessboard.invalidate();
+			chessboard.invalidateSquare(row, column);
 		}
 	}
 
+	/**
+	 * Move a piece dragged from one square to another, capturing whatever
+	 * is there, as a single edit.
+	 *
+	 * @param toRow
+	 *            the row it was dropped on, or -1 if it was dropped off the
+	 *            board, which removes it
+	 */
+	protected void movePiece(int fromRow, int fromColumn, int toRow,
+			int toColumn) {
+		char piece = board.getPiece(fromRow, fromColumn);
+		if (piece == '0' || (toRow == fromRow && toColumn == fromColumn)) {
+			return;
+		}
+		history.beginGroup();
+		board = board.withPiece(fromRow, fromColumn, '0');
+		history.recordPiece(Position.square(fromRow, fromColumn),
+				Position.pieceIndex(piece), Position.EMPTY);
+		liveFen.updateRow(board, fromRow);
+		chessboard.invalidateSquare(fromRow, fromColumn);
+		if (toRow >= 0) {
+			char captured = board.getPiece(toRow, toColumn);
+			board = board.withPiece(toRow, toColumn, piece);
+			history.recordPiece(Position.square(toRow, toColumn),
+					Position.pieceIndex(captured), Position.pieceIndex(piece));
+			liveFen.updateRow(board, toRow);
+			chessboard.invalidateSquare(toRow, toColumn);
+		}
+		history.endGroup();
+		historyChanged();
+	}
+
 	public void onWhiteClicked(View v) {
-		whiteToMove = true;
+		setWhiteToMove(true);
 	}
 
 	public void onBlackClicked(View v) {
-		whiteToMove = false;
+		setWhiteToMove(false);
 	}
 
 	@SuppressLint("NewApi")
 	public void onToMoveSwitched(View v) {
-		whiteToMove = ((Switch) v).isChecked();
+		setWhiteToMove(((Switch) v).isChecked());
+	}
+
+	private void setWhiteToMove(boolean whiteToMove) {
+		if (whiteToMove != board.isWhiteToMove()) {
+			board = board.withWhiteToMove(whiteToMove);
+			history.recordSideToMove();
+			historyChanged();
+		}
 	}
 
 	/**
-	 * Get a clone of the pieces on the board.
-	 * 
-	 * @return A two-dimensional row-major order array of {@code char}s, using
-	 *         the same representation as FEN for pieces and {@code '0'} for a
-	 *         blank square.
+	 * Update the undo and redo menu items if they need to be enabled or
+	 * disabled.
 	 */
-	public char[][] getPieces() {
-		char[][] pieces = new char[this.pieces.length][];
-		for (int i = 0; i < pieces.length; i++) {
-			pieces[i] = this.pieces[i].clone();
+	@SuppressLint("NewApi")
+	private void historyChanged() {
+		if ((history.canUndo() != menuCanUndo || history.canRedo() != menuCanRedo)
+				&& android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB) {
+			// Earlier versions prepare the menu each time it is opened.
+			invalidateOptionsMenu();
 		}
+	}
 
-		return pieces;
+	/**
+	 * Get the board as it is now. Nothing is copied: the snapshot never
+	 * changes, so it can be kept or read on another thread while editing
+	 * goes on.
+	 */
+	public BoardSnapshot getBoard() {
+		return board;
+	}
+
+	/**
+	 * Get one square of the board without copying it.
+	 * 
+	 * @return the piece on the square, as in {@link FenCodec}
+	 */
+	char getPiece(int row, int column) {
+		return board.getPiece(row, column);
 	}
 
 	public void onPieceButtonClicked(View v) {
@@ -350,52 +517,53 @@ public class MainActivity extends Activity {
 		selectedButton.setTextColor(0xffcccc33);
 	}
 
-	private static final Pattern indexPattern = Pattern.compile("^(.*):(.*)$");
-
 	/**
-	 * Read the index file.
-	 * 
-	 * @return A {@code Map}ping from user-readable game names to filenames.
-	 * @throws IOException
+	 * Make a list show the saved names matching what is typed in a search
+	 * field, and enable a button only while a name is checked.
 	 */
-	private Map<String, String> readIndex() throws IOException {
-		try {
-			BufferedReader in = new BufferedReader(new InputStreamReader(
-					openFileInput("index")));
-			Map<String, String> acc = new HashMap<String, String>();
-			String line;
-			while ((line = in.readLine()) != null) {
-				Matcher matcher = indexPattern.matcher(line);
-				matcher.matches();
-				acc.put(matcher.group(1), matcher.group(2));
+	private SavedNamesAdapter bindNameBrowser(EditText search,
+			final ListView list, final Button action) {
+		final SavedNamesAdapter adapter = new SavedNamesAdapter(this,
+				positions, android.R.layout.simple_list_item_single_choice);
+		list.setAdapter(adapter);
+		list.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+			@Override
+			public void onItemClick(AdapterView<?> parent, View view,
+					int position, long id) {
+				action.setEnabled(adapter.getItem(position) != null);
 			}
-			in.close();
-			return acc;
-		}
-		catch (FileNotFoundException e) {
-			return new HashMap<String, String>(0);
-		}
+		});
+		search.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void onTextChanged(CharSequence s, int start, int before,
+					int count) {
+			}
+
+			@Override
+			public void beforeTextChanged(CharSequence s, int start,
+					int count, int after) {
+			}
+
+			@Override
+			public void afterTextChanged(Editable s) {
+				list.clearChoices();
+				action.setEnabled(false);
+				adapter.setPrefix(s.toString());
+			}
+		});
+		return adapter;
 	}
 
 	/**
-	 * Write the index file.
-	 * 
-	 * @param index
-	 *            a {@code Map}ping from game names to filenames
-	 * @throws IOException
+	 * @return the name checked in a list made by
+	 *         {@link #bindNameBrowser(EditText, ListView, Button)}, or
+	 *         {@code null} if there is none
 	 */
-	private void writeIndex(Map<String, String> index) throws IOException {
-		PrintWriter out = new PrintWriter(openFileOutput("index",
-				Context.MODE_PRIVATE));
-		for (Map.Entry<String, String> e : index.entrySet()) {
-			out.print(e.getKey());
-			out.print(':');
-			out.println(e.getValue());
-		}
-		out.close();
-		if (out.checkError()) {
-			throw new IOException();
-		}
+	private static String getCheckedName(ListView list,
+			SavedNamesAdapter adapter) {
+		int position = list.getCheckedItemPosition();
+		return position == ListView.INVALID_POSITION ? null : adapter
+				.getItem(position);
 	}
 
 	private class ImportDialog extends AlertDialog {
@@ -406,7 +574,7 @@ public class MainActivity extends Activity {
 
 			LayoutInflater layoutInflater = MainActivity.this
 					.getLayoutInflater();
-			ViewGroup view = (ViewGroup) layoutInflater.inflate(
+			final ViewGroup view = (ViewGroup) layoutInflater.inflate(
 					R.layout.import_alert, null);
 
 			final EditText input = (EditText) view.findViewById(R.id.pasteFEN);
@@ -447,85 +615,79 @@ public class MainActivity extends Activity {
 				}
 			});
 
-			try {
-				final Map<String, String> index = readIndex();
-				// Only show import file dialog if there are files to import
-				if (index != null && !index.isEmpty()) {
-					View fileView = layoutInflater.inflate(
-							R.layout.import_file, null);
-
-					final Spinner chooseFile = (Spinner) fileView
-							.findViewById(R.id.chooseFile);
-					ArrayAdapter<String> adapter = new ArrayAdapter<String>(
-							MainActivity.this,
-							android.R.layout.simple_spinner_item,
-							new ArrayList<String>(index.keySet()));
-					adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-					chooseFile.setAdapter(adapter);
-
-					Button importFileButton = (Button) fileView
-							.findViewById(R.id.importFileButton);
-					importFileButton
-							.setOnClickListener(new View.OnClickListener() {
-								@Override
-								public void onClick(View v) {
-									String name = chooseFile.getSelectedItem()
-											.toString();
-									try {
-										String filename = index.get(name);
-										if (filename == null) {
-											throw new FileNotFoundException(
-													name + ":" + filename);
-										}
-										BufferedReader in = new BufferedReader(
-												new InputStreamReader(
-														openFileInput(filename)));
-										String fen = in.readLine();
-										loadFEN(fen);
-										Toast.makeText(
-												MainActivity.this,
-												String.format(
-														getText(
-																R.string.f_imported)
-																.toString(),
-														name),
-												Toast.LENGTH_SHORT).show();
-										dismiss();
-									}
-									catch (FileNotFoundException e) {
-										if (index.remove(name) != null) {
-											try {
-												writeIndex(index);
-											}
-											catch (IOException e1) {
-												throw new RuntimeException(e1);
-											}
-										}
-										throw new RuntimeException(e);
-									}
-									catch (IOException e) {
-										throw new RuntimeException(e);
-									}
-									catch (IllegalArgumentException e) {
-										if (index.remove(name) != null) {
-											try {
-												writeIndex(index);
-											}
-											catch (IOException e1) {
-												throw new RuntimeException(e1);
-											}
-										}
-										throw e;
-									}
+			Button importPgnButton = (Button) view
+					.findViewById(R.id.importPgnButton);
+			importPgnButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+					// There is no standard MIME type for PGN files.
+					intent.setType("*/*");
+					intent.addCategory(Intent.CATEGORY_OPENABLE);
+					startActivityForResult(Intent.createChooser(intent,
+							getText(R.string.import_pgn)), REQUEST_PGN);
+					dismiss();
+				}
+			});
+
+			final View fileView = layoutInflater.inflate(R.layout.import_file,
+					null);
+			final ListView chooseFile = (ListView) fileView
+					.findViewById(R.id.chooseFile);
+			final Button importFileButton = (Button) fileView
+					.findViewById(R.id.importFileButton);
+			final SavedNamesAdapter adapter = bindNameBrowser(
+					(EditText) fileView.findViewById(R.id.searchFile),
+					chooseFile, importFileButton);
+
+			importFileButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					final String name = getCheckedName(chooseFile, adapter);
+					if (name == null) {
+						return;
+					}
+					positions.getFen(name, new PositionRepository.Callback<String>() {
+						@Override
+						void onResult(String fen) {
+							try {
+								if (fen == null) {
+									throw new IllegalArgumentException(
+											"Missing saved position " + name);
 								}
-							});
+								loadFEN(fen);
+								Toast.makeText(
+										MainActivity.this,
+										String.format(
+												getText(R.string.f_imported)
+														.toString(), name),
+										Toast.LENGTH_SHORT).show();
+								dismiss();
+							}
+							catch (IllegalArgumentException e) {
+								// Keep the saved position, so it is not lost.
+								Log.w("MainActivity", "Import failed", e);
+								Toast.makeText(MainActivity.this,
+										R.string.invalid_fen, Toast.LENGTH_SHORT)
+										.show();
+							}
+						}
+					});
+				}
+			});
+
+			// Only show import file section once there are files to import
+			adapter.registerDataSetObserver(new DataSetObserver() {
+				private boolean shown = false;
 
-					view.addView(fileView);
+				@Override
+				public void onChanged() {
+					if (!shown && !adapter.isEmpty()) {
+						view.addView(fileView);
+						shown = true;
+					}
 				}
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			});
 
 			setView(view);
 
@@ -545,7 +707,7 @@ public class MainActivity extends Activity {
 
 			setTitle(R.string.export_position);
 
-			final String fen = charToFen(pieces, whiteToMove);
+			final String fen = currentFen();
 			LayoutInflater layoutInflater = MainActivity.this
 					.getLayoutInflater();
 			View view = layoutInflater.inflate(R.layout.export_alert, null);
@@ -587,37 +749,39 @@ public class MainActivity extends Activity {
 
 			Button exportFile = (Button) view
 					.findViewById(R.id.exportFileButton);
+
+			// The FEN of any position may be copied, but only legal ones are
+			// saved.
+			PositionValidator.Problem problem = PositionValidator.check(board
+					.toPosition());
+			if (problem != null) {
+				TextView warning = (TextView) view
+						.findViewById(R.id.exportWarning);
+				warning.setText(String.format(
+						getText(R.string.f_illegal_position).toString(),
+						problem.getMessage()));
+				warning.setVisibility(View.VISIBLE);
+				editFilename.setEnabled(false);
+				exportFile.setEnabled(false);
+			}
 			exportFile.setOnClickListener(new View.OnClickListener() {
 				@Override
 				public void onClick(View v) {
-					try {
-						Map<String, String> index = readIndex();
-						String name = editFilename.getText().toString();
-						String filename = index.get(name);
-						if (filename == null) {
-							// Format for filename
-							DateFormat fileFormat = new SimpleDateFormat(
-									"yyyy mm dd  HH mm ss'.fen'", Locale.US);
-							// Use timestamp to (hopefully) create
-							// nonconflicting filenames.
-							filename = fileFormat.format(date);
-							index.put(name, filename);
-							writeIndex(index);
-						}
-						PrintWriter out = new PrintWriter(openFileOutput(
-								filename, Context.MODE_PRIVATE));
-						out.println(charToFen(pieces, whiteToMove));
-						out.close();
-						Toast.makeText(
-								MainActivity.this,
-								String.format(getText(R.string.f_saved)
-										.toString(), name), Toast.LENGTH_SHORT)
-								.show();
-						dismiss();
-					}
-					catch (IOException e) {
-						throw new RuntimeException(e);
-					}
+					final String name = editFilename.getText().toString();
+					positions.findSame(
+							board.toPosition(),
+							new PositionRepository.Callback<List<String>>() {
+								@Override
+								void onResult(List<String> same) {
+									same.remove(name);
+									if (same.isEmpty()) {
+										save(name);
+									}
+									else {
+										confirmDuplicate(name, same);
+									}
+								}
+							});
 				}
 			});
 
@@ -631,6 +795,108 @@ public class MainActivity extends Activity {
 						}
 					});
 		}
+
+		/**
+		 * Confirm before saving a duplicate under a new name.
+		 */
+		private void confirmDuplicate(final String name, List<String> same) {
+			AlertDialog.Builder confirm = new AlertDialog.Builder(
+					MainActivity.this);
+			confirm.setMessage(String.format(getText(R.string.f_duplicate)
+					.toString(), TextUtils.join(", ", same)));
+			confirm.setPositiveButton(R.string.save,
+					new DialogInterface.OnClickListener() {
+						@Override
+						public void onClick(DialogInterface dialog, int which) {
+							save(name);
+						}
+					});
+			confirm.setNegativeButton(R.string.cancel,
+					new DialogInterface.OnClickListener() {
+						@Override
+						public void onClick(DialogInterface dialog, int which) {
+							// No action required.
+						}
+					});
+			confirm.show();
+		}
+
+		/**
+		 * Save the current position under a name and close the dialog once it
+		 * has been written.
+		 */
+		private void save(final String name) {
+			positions.save(name, currentFen(),
+					new PositionRepository.Callback<Void>() {
+						@Override
+						void onResult(Void result) {
+							Toast.makeText(
+									MainActivity.this,
+									String.format(getText(R.string.f_saved)
+											.toString(), name),
+									Toast.LENGTH_SHORT).show();
+							dismiss();
+						}
+					});
+		}
+	}
+
+	/**
+	 * Tell the user under which names the current position is saved.
+	 */
+	private void findSamePosition() {
+		positions.findSame(board.toPosition(),
+				new PositionRepository.Callback<List<String>>() {
+					@Override
+					void onResult(List<String> same) {
+						if (same.isEmpty()) {
+							Toast.makeText(MainActivity.this,
+									R.string.no_same_position,
+									Toast.LENGTH_SHORT).show();
+						}
+						else {
+							Toast.makeText(
+									MainActivity.this,
+									String.format(
+											getText(R.string.f_same_position)
+													.toString(), TextUtils
+													.join(", ", same)),
+									Toast.LENGTH_LONG).show();
+						}
+					}
+				});
+	}
+
+	/**
+	 * Tell the user which saved positions have the same material as the
+	 * current one.
+	 */
+	private void findSameMaterial() {
+		final String signature = MaterialIndex.formatSignature(MaterialIndex
+				.signature(board.toPosition()));
+		positions.findByMaterial(signature,
+				new PositionRepository.Callback<List<String>>() {
+					@Override
+					void onResult(List<String> same) {
+						if (same.isEmpty()) {
+							Toast.makeText(
+									MainActivity.this,
+									String.format(
+											getText(R.string.f_no_same_material)
+													.toString(), signature),
+									Toast.LENGTH_SHORT).show();
+						}
+						else {
+							Toast.makeText(
+									MainActivity.this,
+									String.format(
+											getText(R.string.f_same_material)
+													.toString(), signature,
+											TextUtils.join(", ", same)),
+									Toast.LENGTH_LONG).show();
+						}
+					}
+				});
 	}
 
 	public void onImportClicked(View v) {
@@ -638,24 +904,68 @@ public class MainActivity extends Activity {
 		alert.show();
 	}
 
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode,
+			Intent data) {
+		if (requestCode != REQUEST_PGN) {
+			super.onActivityResult(requestCode, resultCode, data);
+			return;
+		}
+		if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+			return;
+		}
+		positions.importPgn(data.getData(),
+				new PositionRepository.Callback<PgnImporter.Result>() {
+					@Override
+					void onResult(PgnImporter.Result result) {
+						Toast.makeText(
+								MainActivity.this,
+								String.format(getText(result.isLimitReached()
+										? R.string.f_imported_pgn_limit
+										: R.string.f_imported_pgn).toString(),
+										result.getSaved(), result.getGames()),
+								Toast.LENGTH_LONG).show();
+					}
+
+					@Override
+					void onError(Context context, Exception e) {
+						Log.d("MainActivity", "PGN import failed", e);
+						Toast.makeText(MainActivity.this, R.string.pgn_failed,
+								Toast.LENGTH_SHORT).show();
+					}
+				});
+	}
+
 	public void onExportClicked(View v) {
 		AlertDialog alert = new ExportDialog();
 		alert.show();
 	}
 
 	private void clearBoard() {
-		pieces = new char[8][8];
-		for (int i = 0; i < pieces.length; i++) {
-			for (int j = 0; j < pieces[i].length; j++) {
-				pieces[i][j] = '0';
+		if (board == null) {
+			board = BoardSnapshot.EMPTY;
+		}
+		else {
+			// Make clearing a single edit that can be undone.
+			history.beginGroup();
+			for (int row = 0; row < 8; row++) {
+				for (int column = 0; column < 8; column++) {
+					char piece = board.getPiece(row, column);
+					if (piece != '0') {
+						history.recordPiece(Position.square(row, column),
+								Position.pieceIndex(piece), Position.EMPTY);
+					}
+				}
 			}
+			history.endGroup();
+			historyChanged();
+			board = BoardSnapshot.EMPTY.withWhiteToMove(board.isWhiteToMove());
 		}
-		chessboard.invalidate();
+		liveFen.setBoard(board);
+		chessboard.invalidateBoard();
 	}
 
 	private class DeleteFileDialog extends AlertDialog {
-		private boolean preventShow = false;
-
 		protected DeleteFileDialog() {
 			super(MainActivity.this);
 
@@ -666,61 +976,51 @@ public class MainActivity extends Activity {
 			ViewGroup view = (ViewGroup) layoutInflater.inflate(
 					R.layout.delete_file, null);
 
-			try {
-				final Map<String, String> index = readIndex();
-				if (!index.isEmpty()) {
-					final Spinner chooseFile = (Spinner) view
-							.findViewById(R.id.chooseDeleteFile);
-					ArrayAdapter<String> adapter = new ArrayAdapter<String>(
-							MainActivity.this,
-							android.R.layout.simple_spinner_item,
-							new ArrayList<String>(index.keySet()));
-					adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-					chooseFile.setAdapter(adapter);
-
-					Button deleteFileButton = (Button) view
-							.findViewById(R.id.deleteFileButton);
-					deleteFileButton
-							.setOnClickListener(new View.OnClickListener() {
-								@Override
-								public void onClick(View v) {
-									try {
-										String name = chooseFile
-												.getSelectedItem().toString();
-										String filename = index.get(name);
-										if (filename == null) {
-											throw new FileNotFoundException(
-													name + ":" + filename);
-										}
-										index.remove(name);
-										writeIndex(index);
-										deleteFile(filename);
-										Toast.makeText(
-												MainActivity.this,
-												String.format(
-														getText(
-																R.string.f_deleted)
-																.toString(),
-														name),
-												Toast.LENGTH_SHORT).show();
-										dismiss();
-									}
-									catch (IOException e) {
-										throw new RuntimeException(e);
-									}
-								}
-							});
+			final ListView chooseFile = (ListView) view
+					.findViewById(R.id.chooseDeleteFile);
+			final Button deleteFileButton = (Button) view
+					.findViewById(R.id.deleteFileButton);
+			final SavedNamesAdapter adapter = bindNameBrowser(
+					(EditText) view.findViewById(R.id.searchDeleteFile),
+					chooseFile, deleteFileButton);
+
+			deleteFileButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					final String name = getCheckedName(chooseFile, adapter);
+					if (name == null) {
+						return;
+					}
+					positions.delete(name, new PositionRepository.Callback<Boolean>() {
+						@Override
+						void onResult(Boolean deleted) {
+							if (!deleted) {
+								throw new RuntimeException(
+										new FileNotFoundException(name));
+							}
+							Toast.makeText(
+									MainActivity.this,
+									String.format(getText(R.string.f_deleted)
+											.toString(), name),
+									Toast.LENGTH_SHORT).show();
+							dismiss();
+						}
+					});
 				}
-				else {
-					// If there are no files to delete, notify user.
-					Toast.makeText(MainActivity.this, R.string.no_saved_files,
-							Toast.LENGTH_SHORT).show();
-					preventShow = true;
+			});
+
+			adapter.registerDataSetObserver(new DataSetObserver() {
+				@Override
+				public void onChanged() {
+					if (adapter.isEmpty() && adapter.getPrefix().length() == 0) {
+						// If there are no files to delete, notify user.
+						Toast.makeText(MainActivity.this,
+								R.string.no_saved_files, Toast.LENGTH_SHORT)
+								.show();
+						dismiss();
+					}
 				}
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			});
 
 			setView(view);
 
@@ -734,17 +1034,153 @@ public class MainActivity extends Activity {
 		}
 	}
 
+	/**
+	 * Save a diagram of every saved position to the app's external files.
+	 */
+	private void exportDiagrams() {
+		File directory = getExternalFilesDir("diagrams");
+		if (directory == null) {
+			// No external storage.
+			directory = new File(getFilesDir(), "diagrams");
+		}
+		final File target = directory;
+		positions.exportDiagrams(target, DIAGRAM_SIZE,
+				new PositionRepository.Callback<DiagramRenderer.Result>() {
+					@Override
+					void onResult(DiagramRenderer.Result result) {
+						Toast.makeText(
+								MainActivity.this,
+								String.format(
+										getText(R.string.f_exported_diagrams)
+												.toString(), result.rendered,
+										target.getPath(), Math.round(result
+												.getDiagramsPerSecond())),
+								Toast.LENGTH_LONG).show();
+					}
+
+					@Override
+					void onError(Context context, Exception e) {
+						Log.d("MainActivity", "Diagram export failed", e);
+						Toast.makeText(MainActivity.this,
+								R.string.diagrams_failed, Toast.LENGTH_SHORT)
+								.show();
+					}
+				});
+	}
+
+	/**
+	 * Start or stop recording metrics, counting allocations only while
+	 * recording since counting slows every allocation down.
+	 */
+	@SuppressWarnings("deprecation")
+	private static void setRecordingMetrics(boolean recording) {
+		if (recording) {
+			Debug.startAllocCounting();
+			Metrics.setAllocationCounter(threadAllocations);
+			Metrics.setEnabled(true);
+		}
+		else {
+			Metrics.setEnabled(false);
+			Metrics.setAllocationCounter(null);
+			Debug.stopAllocCounting();
+		}
+	}
+
+	/**
+	 * Show the metrics recorded so far, with buttons to start or stop
+	 * recording, save them to a file and clear them.
+	 */
+	private void showMetrics() {
+		AlertDialog.Builder metricsDialog = new AlertDialog.Builder(this);
+		metricsDialog.setTitle(R.string.metrics);
+		TextView report = new TextView(this);
+		report.setTypeface(Typeface.MONOSPACE);
+		report.setTextSize(10);
+		report.setHorizontallyScrolling(true);
+		report.setText(Metrics.report()
+				+ String.format(Locale.US,
+						"%nFEN cache: %d of %d, %d hits, %d misses, %d evictions%n",
+						fenCache.size(), fenCache.getCapacity(),
+						fenCache.getHits(), fenCache.getMisses(),
+						fenCache.getEvictions()));
+		ScrollView view = new ScrollView(this);
+		view.addView(report);
+		metricsDialog.setView(view);
+		final boolean recording = Metrics.isEnabled();
+		metricsDialog.setPositiveButton(recording ? R.string.stop_recording
+				: R.string.start_recording,
+				new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						setRecordingMetrics(!recording);
+					}
+				});
+		metricsDialog.setNeutralButton(R.string.save,
+				new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						saveMetrics();
+					}
+				});
+		metricsDialog.setNegativeButton(R.string.reset,
+				new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						Metrics.reset();
+					}
+				});
+		metricsDialog.show();
+	}
+
+	/**
+	 * Write the metrics recorded so far to the app's external files, where
+	 * they can be pulled off the device.
+	 */
+	private void saveMetrics() {
+		File directory = getExternalFilesDir(null);
+		if (directory == null) {
+			// No external storage.
+			directory = getFilesDir();
+		}
+		File file = new File(directory, "metrics.txt");
+		try {
+			Metrics.dump(file);
+			Toast.makeText(
+					this,
+					String.format(getText(R.string.f_metrics_saved)
+							.toString(), file.getPath()), Toast.LENGTH_LONG)
+					.show();
+		}
+		catch (IOException e) {
+			Log.d("MainActivity", "Saving metrics failed", e);
+			Toast.makeText(this, R.string.metrics_failed, Toast.LENGTH_SHORT)
+					.show();
+		}
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId()) {
 			case R.id.clear_board:
 				clearBoard();
 				return true;
+			case R.id.undo:
+				history.undo(historyTarget);
+				historyChanged();
+				return true;
+			case R.id.redo:
+				history.redo(historyTarget);
+				historyChanged();
+				return true;
+			case R.id.export_diagrams:
+				exportDiagrams();
+				return true;
+			case R.id.metrics:
+				showMetrics();
+				return true;
 			case R.id.delete_saved:
 				DeleteFileDialog alert = new DeleteFileDialog();
-				if (!alert.preventShow) {
-					alert.show();
-				}
+				alert.show();
 				return true;
 			case R.id.about:
 				// Show license and absence of warranty.
@@ -789,6 +1225,12 @@ public class MainActivity extends Activity {
 			case R.id.setup_board:
 				loadFEN("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
 				return true;
+			case R.id.find_same:
+				findSamePosition();
+				return true;
+			case R.id.find_material:
+				findSameMaterial();
+				return true;
 			default:
 				return super.onOptionsItemSelected(item);
 		}
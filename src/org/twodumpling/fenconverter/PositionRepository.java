@@ -0,0 +1,494 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.twodumpling.fenconverter.core.Metrics;
+import org.twodumpling.fenconverter.core.PgnImporter;
+import org.twodumpling.fenconverter.core.Position;
+import org.twodumpling.fenconverter.core.SavedPositions;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.Toast;
+
+/**
+ * Gives the UI access to the saved positions without touching the disk on
+ * the UI thread. All reads and writes run in order on one background
+ * thread, and their results are delivered on the main thread.
+ *
+ * @author Istvan Chung
+ */
+final class PositionRepository {
+	/**
+	 * Receives the result of an operation on the main thread.
+	 */
+	static abstract class Callback<T> {
+		abstract void onResult(T result);
+
+		/**
+		 * Called instead of {@link #onResult(Object)} if the operation failed.
+		 * By default the error is logged and reported in a toast.
+		 *
+		 * @param context
+		 *            the application context, for reporting the error
+		 */
+		void onError(Context context, Exception e) {
+			Log.e("PositionRepository", "Operation failed", e);
+			Toast.makeText(context, R.string.storage_failed,
+					Toast.LENGTH_SHORT).show();
+		}
+	}
+
+	/**
+	 * One page of the saved names matching a prefix.
+	 */
+	static final class NamePage {
+		final String prefix;
+		final int offset;
+		/**
+		 * Number of names matching the prefix in all pages.
+		 */
+		final int total;
+		final List<String> names;
+
+		NamePage(String prefix, int offset, int total, List<String> names) {
+			this.prefix = prefix;
+			this.offset = offset;
+			this.total = total;
+			this.names = names;
+		}
+	}
+
+	/**
+	 * Work done on the background thread.
+	 */
+	private interface Task<T> {
+		T run(SavedPositions saved) throws IOException;
+	}
+
+	/**
+	 * Plies between the positions saved from each imported game: one every
+	 * ten moves.
+	 */
+	static final int PGN_PLY_INTERVAL = 20;
+	/**
+	 * The most positions saved from one PGN document.
+	 */
+	static final int PGN_MAX_POSITIONS = 2000;
+
+	private static final Metrics.Timer importTimer = Metrics
+			.timer("import.pgn");
+	private static final Metrics.Timer exportTimer = Metrics
+			.timer("export.diagrams");
+
+	private static final Pattern indexPattern = Pattern.compile("^(.*):(.*)$");
+
+	/**
+	 * Name of the text index written by earlier versions.
+	 */
+	private static final String LEGACY_INDEX_FILE = "index";
+
+	private static PositionRepository instance;
+
+	/**
+	 * Get the repository shared by the whole process.
+	 */
+	static synchronized PositionRepository get(Context context) {
+		if (instance == null) {
+			instance = new PositionRepository(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	private final Context context;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final ExecutorService executor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "PositionRepository");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Only used on the background thread.
+	 */
+	private SavedPositions saved;
+
+	private PositionRepository(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * Start loading the saved positions, migrating the files written by
+	 * earlier versions the first time.
+	 */
+	void open() {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					getSaved();
+				}
+				catch (IOException e) {
+					Log.e("PositionRepository", "Could not open saved positions",
+							e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the FEN string saved under a name, or {@code null} if there is
+	 * none.
+	 */
+	void getFen(final String name, Callback<String> callback) {
+		submit(new Task<String>() {
+			@Override
+			public String run(SavedPositions saved) throws IOException {
+				return saved.getFen(name);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Save a position under a name, replacing any position saved under it.
+	 */
+	void save(final String name, final String fen, Callback<Void> callback) {
+		submit(new Task<Void>() {
+			@Override
+			public Void run(SavedPositions saved) throws IOException {
+				saved.save(name, fen);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Delete the position saved under a name. The result is {@code false} if
+	 * there was none.
+	 */
+	void delete(final String name, Callback<Boolean> callback) {
+		submit(new Task<Boolean>() {
+			@Override
+			public Boolean run(SavedPositions saved) throws IOException {
+				return saved.delete(name);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Find the names under which a position is saved.
+	 */
+	void findSame(final Position position, Callback<List<String>> callback) {
+		submit(new Task<List<String>>() {
+			@Override
+			public List<String> run(SavedPositions saved) throws IOException {
+				return saved.findSame(position);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Find the saved positions with exactly the given material, such as
+	 * {@code "KRPvKR"}.
+	 */
+	void findByMaterial(final String signature,
+			Callback<List<String>> callback) {
+		submit(new Task<List<String>>() {
+			@Override
+			public List<String> run(SavedPositions saved) throws IOException {
+				return saved.findByMaterial(signature);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Save positions from the games in a PGN document, naming them after the
+	 * document: one every {@link #PGN_PLY_INTERVAL} plies, up to
+	 * {@link #PGN_MAX_POSITIONS} in all. The file is streamed, but the
+	 * indexes of saved positions are held in memory, so the limit keeps a
+	 * large database from filling the heap or the list of saved positions.
+	 */
+	void importPgn(final Uri uri, Callback<PgnImporter.Result> callback) {
+		submit(new Task<PgnImporter.Result>() {
+			@Override
+			public PgnImporter.Result run(SavedPositions saved)
+					throws IOException {
+				InputStream in = context.getContentResolver().openInputStream(
+						uri);
+				if (in == null) {
+					throw new FileNotFoundException(uri.toString());
+				}
+				String prefix = uri.getLastPathSegment();
+				long start = importTimer.start();
+				try {
+					return new PgnImporter(saved).importGames(
+							new InputStreamReader(in, "UTF-8"),
+							prefix == null ? "" : prefix,
+							PgnImporter.everyNthPly(PGN_PLY_INTERVAL),
+							PGN_MAX_POSITIONS);
+				}
+				finally {
+					importTimer.stop(start);
+				}
+			}
+		}, callback);
+	}
+
+	/**
+	 * Draw a diagram of every saved position into a PNG file in a directory,
+	 * named after the position.
+	 *
+	 * @param size
+	 *            the width and height of each diagram in pixels
+	 */
+	void exportDiagrams(final File directory, final int size,
+			Callback<DiagramRenderer.Result> callback) {
+		submit(new Task<DiagramRenderer.Result>() {
+			@Override
+			public DiagramRenderer.Result run(SavedPositions saved)
+					throws IOException {
+				long start = exportTimer.start();
+				try {
+					final List<String> names = new ArrayList<String>(saved
+							.getNames());
+					List<String> fens = new ArrayList<String>(names.size());
+					for (String name : names) {
+						String fen = saved.getFen(name);
+						// Rendering skips an empty string as malformed.
+						fens.add(fen == null ? "" : fen);
+					}
+					if (!directory.isDirectory() && !directory.mkdirs()) {
+						throw new IOException("Could not create "
+								+ directory);
+					}
+
+					DiagramRenderer renderer = new DiagramRenderer(context,
+							size);
+					try {
+						return renderer.renderAll(fens,
+								new DiagramRenderer.Output() {
+									@Override
+									public void write(int index,
+											Bitmap diagram) throws IOException {
+										writePng(new File(directory,
+												diagramName(index,
+														names.get(index))),
+												diagram);
+									}
+								});
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted");
+					}
+					finally {
+						renderer.recycle();
+					}
+				}
+				finally {
+					exportTimer.stop(start);
+				}
+			}
+		}, callback);
+	}
+
+	/**
+	 * @return a file name for the diagram of a saved position, numbered so
+	 *         that names differing only in characters that are not allowed
+	 *         in file names stay apart
+	 */
+	private static String diagramName(int index, String name) {
+		return String.format("%05d %s.png", index + 1,
+				name.replaceAll("[^A-Za-z0-9 ._-]", "_"));
+	}
+
+	private static void writePng(File file, Bitmap diagram)
+			throws IOException {
+		OutputStream out = new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 14);
+		try {
+			if (!diagram.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+				throw new IOException("Could not write " + file);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Get one page of the saved names starting with {@code prefix}, ignoring
+	 * case, in sorted order.
+	 */
+	void getNames(final String prefix, final int offset, final int limit,
+			Callback<NamePage> callback) {
+		submit(new Task<NamePage>() {
+			@Override
+			public NamePage run(SavedPositions saved) throws IOException {
+				return new NamePage(prefix, offset, saved.countNames(prefix),
+						saved.getNames(prefix, offset, limit));
+			}
+		}, callback);
+	}
+
+	/**
+	 * Run a task on the background thread and deliver its result on the main
+	 * thread.
+	 */
+	private <T> void submit(final Task<T> task, final Callback<T> callback) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final T result = task.run(getSaved());
+					mainHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							callback.onResult(result);
+						}
+					});
+				}
+				catch (final Exception e) {
+					mainHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							callback.onError(context, e);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the saved positions, loading them on first use. Only called on the
+	 * background thread.
+	 *
+	 * @throws IOException
+	 */
+	private SavedPositions getSaved() throws IOException {
+		if (saved == null) {
+			SavedPositions loaded = new SavedPositions(context.getFilesDir());
+			migrateLegacyIndex(loaded);
+			migrateLegacyFiles(loaded);
+			saved = loaded;
+		}
+		return saved;
+	}
+
+	/**
+	 * Move the entries of an old {@code name:filename} text index into
+	 * {@code saved} and delete the old file.
+	 *
+	 * @throws IOException
+	 */
+	private void migrateLegacyIndex(SavedPositions saved) throws IOException {
+		BufferedReader in;
+		try {
+			in = new BufferedReader(new InputStreamReader(
+					context.openFileInput(LEGACY_INDEX_FILE)));
+		}
+		catch (FileNotFoundException e) {
+			return;
+		}
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				Matcher matcher = indexPattern.matcher(line);
+				if (matcher.matches()) {
+					saved.putLegacyFile(matcher.group(1), matcher.group(2));
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+		context.deleteFile(LEGACY_INDEX_FILE);
+	}
+
+	/**
+	 * Move positions saved one per file into the position store and delete
+	 * their files.
+	 *
+	 * @throws IOException
+	 */
+	private void migrateLegacyFiles(SavedPositions saved) throws IOException {
+		for (Map.Entry<String, String> e : saved.getLegacyFiles().entrySet()) {
+			String fen = null;
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						context.openFileInput(e.getValue())));
+				try {
+					fen = in.readLine();
+				}
+				finally {
+					in.close();
+				}
+			}
+			catch (FileNotFoundException ex) {
+				Log.d("PositionRepository", "Missing saved file " + e.getValue(),
+						ex);
+			}
+			try {
+				if (fen == null) {
+					throw new IllegalArgumentException("Empty saved file");
+				}
+				saved.save(e.getKey(), fen);
+			}
+			catch (IllegalArgumentException ex) {
+				saved.delete(e.getKey());
+			}
+			context.deleteFile(e.getValue());
+		}
+	}
+}
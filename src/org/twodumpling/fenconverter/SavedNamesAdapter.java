@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter;
+
+import java.util.List;
+
+import android.content.Context;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Lists the saved names starting with a search prefix, in sorted order.
+ * Names are fetched from the {@link PositionRepository} a page at a time as
+ * the rows showing them come into view, and only a few pages are kept.
+ *
+ * @author Istvan Chung
+ */
+final class SavedNamesAdapter extends BaseAdapter {
+	/**
+	 * Number of names fetched at a time.
+	 */
+	static final int PAGE_SIZE = 50;
+
+	/**
+	 * Number of pages kept before the one furthest from the latest is
+	 * dropped.
+	 */
+	private static final int MAX_CACHED_PAGES = 8;
+
+	private final PositionRepository positions;
+	private final LayoutInflater inflater;
+	private final int rowLayout;
+
+	private String prefix = "";
+	/**
+	 * Incremented whenever the pages are dropped, so that the answers to
+	 * earlier requests can be ignored.
+	 */
+	private int generation = 0;
+	private int count = 0;
+	private boolean loaded = false;
+	private final SparseArray<List<String>> pages = new SparseArray<List<String>>();
+	private final SparseArray<Boolean> requested = new SparseArray<Boolean>();
+
+	/**
+	 * @param rowLayout
+	 *            layout of a row, with a {@link TextView} as its root
+	 */
+	SavedNamesAdapter(Context context, PositionRepository positions,
+			int rowLayout) {
+		this.positions = positions;
+		this.inflater = LayoutInflater.from(context);
+		this.rowLayout = rowLayout;
+		requestPage(0);
+	}
+
+	/**
+	 * List only the names starting with {@code prefix}, ignoring case.
+	 */
+	void setPrefix(String prefix) {
+		this.prefix = prefix;
+		reload();
+	}
+
+	String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Fetch the names again, after they have changed.
+	 */
+	void reload() {
+		generation++;
+		pages.clear();
+		requested.clear();
+		loaded = false;
+		requestPage(0);
+	}
+
+	/**
+	 * @return whether the number of matching names is known yet
+	 */
+	boolean isLoaded() {
+		return loaded;
+	}
+
+	private void requestPage(final int page) {
+		if (requested.get(page) != null) {
+			return;
+		}
+		requested.put(page, Boolean.TRUE);
+		final int requestGeneration = generation;
+		positions.getNames(prefix, page * PAGE_SIZE, PAGE_SIZE,
+				new PositionRepository.Callback<PositionRepository.NamePage>() {
+					@Override
+					void onResult(PositionRepository.NamePage result) {
+						if (requestGeneration != generation) {
+							return;
+						}
+						evictFarFrom(page);
+						pages.put(page, result.names);
+						count = result.total;
+						loaded = true;
+						notifyDataSetChanged();
+					}
+				});
+	}
+
+	private void evictFarFrom(int page) {
+		if (pages.size() < MAX_CACHED_PAGES) {
+			return;
+		}
+		int furthest = 0;
+		for (int i = 1; i < pages.size(); i++) {
+			if (Math.abs(pages.keyAt(i) - page) > Math.abs(pages
+					.keyAt(furthest) - page)) {
+				furthest = i;
+			}
+		}
+		requested.remove(pages.keyAt(furthest));
+		pages.removeAt(furthest);
+	}
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the name in a row, or {@code null} if it has not been fetched
+	 *         yet, in which case it is requested
+	 */
+	@Override
+	public String getItem(int position) {
+		int page = position / PAGE_SIZE;
+		List<String> names = pages.get(page);
+		if (names == null) {
+			requestPage(page);
+			return null;
+		}
+		int i = position % PAGE_SIZE;
+		return i < names.size() ? names.get(i) : null;
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return position;
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		TextView row = (TextView) convertView;
+		if (row == null) {
+			row = (TextView) inflater.inflate(rowLayout, parent, false);
+		}
+		String name = getItem(position);
+		row.setText(name == null ? "" : name);
+		return row;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Istvan Chung and Husayn Karimi.
+ *
+ * This file is part of ChessSave.
+ *
+ * ChessSave is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ChessSave is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.twodumpling.fenconverter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.twodumpling.fenconverter.core.Metrics;
+
+import android.content.Context;
+import android.graphics.Typeface;
+
+/**
+ * Typefaces loaded from assets, each loaded once per process.
+ *
+ * Loading a font file parses it, and the board, the piece buttons and the
+ * diagram renderer all draw with the same font, so they share one
+ * {@link Typeface} that also outlives rotations.
+ *
+ * @author Istvan Chung
+ */
+final class TypefaceCache {
+	/**
+	 * The piece font: FreeSerif cut down to the chess symbols and printable
+	 * ASCII by {@code tools/subset-font.py}.
+	 */
+	static final String PIECE_FONT = "fonts/FreeSerifChess.ttf";
+
+	private static final Metrics.Timer loadTimer = Metrics
+			.timer("font.load");
+	private static final Map<String, Typeface> typefaces = new HashMap<String, Typeface>();
+
+	private TypefaceCache() {
+	}
+
+	/**
+	 * Get a typeface from the assets, loading it the first time.
+	 *
+	 * @param path
+	 *            the path of the font file within the assets
+	 */
+	static synchronized Typeface get(Context context, String path) {
+		Typeface typeface = typefaces.get(path);
+		if (typeface == null) {
+			long start = loadTimer.start();
+			typeface = Typeface.createFromAsset(context.getApplicationContext()
+					.getAssets(), path);
+			loadTimer.stop(start);
+			typefaces.put(path, typeface);
+		}
+		return typeface;
+	}
+
+	/**
+	 * @return the typeface the pieces are drawn in
+	 */
+	static Typeface getPieceTypeface(Context context) {
+		return get(context, PIECE_FONT);
+	}
+}
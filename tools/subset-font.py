@@ -0,0 +1,250 @@
+#!/usr/bin/env python3
+#
+# Copyright 2013 Istvan Chung and Husayn Karimi.
+#
+# This file is part of ChessSave.
+#
+# ChessSave is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+#
+# ChessSave is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License
+# along with ChessSave.  If not, see <http://www.gnu.org/licenses/>.
+
+"""Cut a TrueType font down to the characters ChessSave draws with it.
+
+    tools/subset-font.py tools/FreeSerif.ttf assets/fonts/FreeSerifChess.ttf
+
+Only the glyphs mapped from the kept characters, the components of those
+glyphs and .notdef are kept. The layout tables (GSUB, GPOS, GDEF) and the
+glyph names are dropped; the name table, with the copyright and licence, is
+kept. Needs nothing beyond the standard library.
+"""
+
+import struct
+import sys
+
+# The chess symbols, and printable ASCII for any label drawn in the font.
+KEEP = list(range(0x20, 0x7F)) + list(range(0x2654, 0x2660))
+
+KEEP_TABLES = (b'OS/2', b'cmap', b'gasp', b'glyf', b'head', b'hhea',
+               b'hmtx', b'loca', b'maxp', b'name', b'post')
+
+# Composite glyph flags
+ARG_1_AND_2_ARE_WORDS = 0x0001
+WE_HAVE_A_SCALE = 0x0008
+MORE_COMPONENTS = 0x0020
+WE_HAVE_AN_X_AND_Y_SCALE = 0x0040
+WE_HAVE_A_TWO_BY_TWO = 0x0080
+
+
+def read_tables(data):
+    count, = struct.unpack('>H', data[4:6])
+    tables = {}
+    for i in range(count):
+        tag, _, offset, length = struct.unpack(
+            '>4sIII', data[12 + 16 * i:28 + 16 * i])
+        tables[tag] = data[offset:offset + length]
+    return tables
+
+
+def read_cmap(cmap):
+    """Map characters to glyphs through the Windows Unicode subtable."""
+    count, = struct.unpack('>H', cmap[2:4])
+    for i in range(count):
+        platform, encoding, offset = struct.unpack(
+            '>HHI', cmap[4 + 8 * i:12 + 8 * i])
+        if (platform, encoding) == (3, 1):
+            break
+    else:
+        raise ValueError('No Windows Unicode cmap subtable')
+    table = cmap[offset:]
+    fmt, = struct.unpack('>H', table[:2])
+    if fmt != 4:
+        raise ValueError('cmap subtable format %d not supported' % fmt)
+    segments = struct.unpack('>H', table[6:8])[0] // 2
+    ends = struct.unpack('>%dH' % segments, table[14:14 + 2 * segments])
+    base = 16 + 2 * segments
+    starts = struct.unpack('>%dH' % segments, table[base:base + 2 * segments])
+    base += 2 * segments
+    deltas = struct.unpack('>%dh' % segments, table[base:base + 2 * segments])
+    range_base = base + 2 * segments
+    range_offsets = struct.unpack(
+        '>%dH' % segments, table[range_base:range_base + 2 * segments])
+    mapping = {}
+    for i in range(segments):
+        for code in range(starts[i], ends[i] + 1):
+            if code == 0xFFFF:
+                continue
+            if range_offsets[i] == 0:
+                glyph = (code + deltas[i]) & 0xFFFF
+            else:
+                at = (range_base + 2 * i + range_offsets[i]
+                      + 2 * (code - starts[i]))
+                glyph, = struct.unpack('>H', table[at:at + 2])
+                if glyph:
+                    glyph = (glyph + deltas[i]) & 0xFFFF
+            if glyph:
+                mapping[code] = glyph
+    return mapping
+
+
+def glyph_data(glyf, loca, glyph):
+    return glyf[loca[glyph]:loca[glyph + 1]]
+
+
+def components(data):
+    """Yield the offset of each component glyph index in a composite."""
+    if len(data) < 10 or struct.unpack('>h', data[:2])[0] >= 0:
+        return
+    at = 10
+    while True:
+        flags, = struct.unpack('>H', data[at:at + 2])
+        yield at + 2
+        at += 4 + (4 if flags & ARG_1_AND_2_ARE_WORDS else 2)
+        if flags & WE_HAVE_A_SCALE:
+            at += 2
+        elif flags & WE_HAVE_AN_X_AND_Y_SCALE:
+            at += 4
+        elif flags & WE_HAVE_A_TWO_BY_TWO:
+            at += 8
+        if not flags & MORE_COMPONENTS:
+            return
+
+
+def build_cmap(mapping):
+    """A format 4 subtable with one segment per character."""
+    codes = sorted(mapping) + [0xFFFF]
+    segments = len(codes)
+    power = 1
+    while power * 2 <= segments:
+        power *= 2
+    ends = codes
+    starts = codes
+    deltas = [(mapping.get(c, 1) - c) & 0xFFFF for c in codes]
+    body = struct.pack('>HHHH', segments * 2, power * 2,
+                       power.bit_length() - 1, segments * 2 - power * 2)
+    body += struct.pack('>%dH' % segments, *ends) + b'\0\0'
+    body += struct.pack('>%dH' % segments, *starts)
+    body += struct.pack('>%dH' % segments, *deltas)
+    body += struct.pack('>%dH' % segments, *([0] * segments))
+    subtable = struct.pack('>HHH', 4, 6 + len(body), 0) + body
+    return struct.pack('>HHHHI', 0, 1, 3, 1, 12) + subtable
+
+
+def checksum(data):
+    data += b'\0' * (-len(data) % 4)
+    return sum(struct.unpack('>%dI' % (len(data) // 4), data)) & 0xFFFFFFFF
+
+
+def write_font(tables):
+    """Lay out a font file, with the whole-font checksum in head."""
+    tags = sorted(tables)
+    power = 1
+    while power * 2 <= len(tags):
+        power *= 2
+    header = struct.pack('>IHHHH', 0x00010000, len(tags), power * 16,
+                         power.bit_length() - 1, len(tags) * 16 - power * 16)
+    offset = 12 + 16 * len(tags)
+    directory = b''
+    body = b''
+    for tag in tags:
+        data = tables[tag]
+        if tag == b'head':
+            head = offset + len(body)
+        directory += struct.pack('>4sIII', tag, checksum(data),
+                                 offset + len(body), len(data))
+        body += data + b'\0' * (-len(data) % 4)
+    font = bytearray(header + directory + body)
+    # checkSumAdjustment was zeroed, so the checksums above are unaffected.
+    font[head + 8:head + 12] = struct.pack(
+        '>I', (0xB1B0AFBA - checksum(bytes(font))) & 0xFFFFFFFF)
+    return bytes(font)
+
+
+def main(source, target):
+    data = open(source, 'rb').read()
+    tables = read_tables(data)
+    head = bytearray(tables[b'head'])
+    long_loca = struct.unpack('>h', head[50:52])[0] == 1
+    glyph_count, = struct.unpack('>H', tables[b'maxp'][4:6])
+    if long_loca:
+        loca = struct.unpack('>%dI' % (glyph_count + 1), tables[b'loca'])
+    else:
+        loca = [2 * x for x in struct.unpack(
+            '>%dH' % (glyph_count + 1), tables[b'loca'])]
+    glyf = tables[b'glyf']
+
+    mapping = dict((code, glyph) for code, glyph
+                   in read_cmap(tables[b'cmap']).items() if code in KEEP)
+    kept = set([0]) | set(mapping.values())
+    pending = list(kept)
+    while pending:
+        glyph = glyph_data(glyf, loca, pending.pop())
+        for at in components(glyph):
+            component, = struct.unpack('>H', glyph[at:at + 2])
+            if component not in kept:
+                kept.add(component)
+                pending.append(component)
+    order = sorted(kept)
+    renumber = dict((old, new) for new, old in enumerate(order))
+
+    new_glyf = b''
+    new_loca = [0]
+    for old in order:
+        glyph = bytearray(glyph_data(glyf, loca, old))
+        for at in list(components(bytes(glyph))):
+            component, = struct.unpack('>H', glyph[at:at + 2])
+            glyph[at:at + 2] = struct.pack('>H', renumber[component])
+        glyph += b'\0' * (-len(glyph) % 4)
+        new_glyf += bytes(glyph)
+        new_loca.append(len(new_glyf))
+
+    metric_count, = struct.unpack('>H', tables[b'hhea'][34:36])
+    hmtx = tables[b'hmtx']
+
+    def metric(glyph):
+        if glyph < metric_count:
+            return hmtx[4 * glyph:4 * glyph + 4]
+        advance = hmtx[4 * (metric_count - 1):4 * metric_count - 2]
+        at = 4 * metric_count + 2 * (glyph - metric_count)
+        return advance + hmtx[at:at + 2]
+
+    hhea = bytearray(tables[b'hhea'])
+    hhea[34:36] = struct.pack('>H', len(order))
+    maxp = bytearray(tables[b'maxp'])
+    maxp[4:6] = struct.pack('>H', len(order))
+    post = bytearray(tables[b'post'][:32])
+    post[0:4] = struct.pack('>I', 0x00030000)
+    os2 = bytearray(tables[b'OS/2'])
+    os2[64:68] = struct.pack('>HH', min(mapping), max(mapping))
+    head[50:52] = struct.pack('>h', 1)
+    head[8:12] = b'\0\0\0\0'
+
+    out = dict((tag, tables[tag]) for tag in KEEP_TABLES if tag in tables)
+    out[b'glyf'] = new_glyf
+    out[b'loca'] = struct.pack('>%dI' % len(new_loca), *new_loca)
+    out[b'hmtx'] = b''.join(metric(old) for old in order)
+    out[b'hhea'] = bytes(hhea)
+    out[b'maxp'] = bytes(maxp)
+    out[b'post'] = bytes(post)
+    out[b'OS/2'] = bytes(os2)
+    out[b'head'] = bytes(head)
+    out[b'cmap'] = build_cmap(dict(
+        (code, renumber[glyph]) for code, glyph in mapping.items()))
+
+    font = write_font(out)
+    open(target, 'wb').write(font)
+    print('%d glyphs, %d bytes' % (len(order), len(font)))
+
+
+if __name__ == '__main__':
+    if len(sys.argv) != 3:
+        sys.exit('usage: subset-font.py source.ttf target.ttf')
+    main(sys.argv[1], sys.argv[2])